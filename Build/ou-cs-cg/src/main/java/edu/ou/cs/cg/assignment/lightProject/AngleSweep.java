@@ -0,0 +1,273 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Sweeps the rotation of one element of a scene over a range of angles, and
+// traces the whole scene at each angle, without a view or any animation. For
+// each angle it reports where every beam ended: the end of each ray that
+// didn't split, with how it ended, its path length from the lightbox, and
+// the direction it was going if it left the world.
+//
+// The scene is copied once, out of any assemblies, and the copy is shared
+// by every angle, except for the swept element: each angle traces its own
+// copy of it, as the tracer's extra (moved) element. So the element grid is
+// built once, and no two traces share anything they change.
+//
+// The angles are traced in parallel on the common ForkJoinPool, each tree in
+// order on one thread (see RayTree.traceInOrder()), in chunks of CHUNK
+// angles. The samples are returned in order of angle either way.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.util.*;
+import java.util.concurrent.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>AngleSweep</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class AngleSweep
+{
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final int		CHUNK = 16;		// Angles per task
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final List<LightElement>	scene;		// Copied out of assemblies
+	private final int					index;		// Of the swept element
+	private final ElementGrid			grid;		// Without the swept element
+	private final double				factor;
+	private final boolean				paraxial;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Sweeps the element at an index in the scene, traced with a travel
+	// factor (the step length in units of Tracer.SPEED). The scene must not
+	// change while the sweep is being set up, but may afterwards.
+	public AngleSweep(List<LightElement> scene, int index, double factor,
+					  boolean paraxial)
+	{
+		if (index < 0 || index >= scene.size())
+			throw new IndexOutOfBoundsException("No element " + index +
+												" in a scene of " + scene.size());
+
+		List<LightElement>	copy = new ArrayList<LightElement>(scene.size());
+		List<LightElement>	others = new ArrayList<LightElement>(scene.size());
+
+		for (int i = 0; i < scene.size(); i++)
+		{
+			LightElement	le = scene.get(i).copyInWorld();
+
+			copy.add(le);
+
+			if (i != index)
+				others.add(le);
+		}
+
+		this.scene = copy;
+		this.index = index;
+		this.factor = factor;
+		this.paraxial = paraxial;
+
+		grid = new ElementGrid(others);
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Traces the scene with the element at each angle from one to another
+	// (inclusive, if a whole number of steps away), in degrees.
+	public List<Sample>	run(double from, double to, double step)
+	{
+		if (!(step > 0.0))
+			throw new IllegalArgumentException("Step must be positive: " + step);
+
+		// Count the steps, allowing for rounding in the last one
+		int					n = (int)Math.floor((to - from) / step + 1.0e-9) + 1;
+		final Sample[]		samples = new Sample[Math.max(0, n)];
+		final List<Trace>	tasks = new ArrayList<Trace>();
+
+		for (int i = 0; i < samples.length; i += CHUNK)
+			tasks.add(new Trace(samples, i, Math.min(samples.length, i + CHUNK),
+								from, step));
+
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+				protected void	compute() {
+					invokeAll(tasks);
+				}
+			});
+
+		return Arrays.asList(samples);
+	}
+
+	// Traces the scene with the element at one angle, in degrees.
+	public Sample	trace(double angle)
+	{
+		LightElement		swept = new LightElement(scene.get(index));
+		List<LightElement>	posed = new ArrayList<LightElement>(scene);
+
+		swept.setRotation(angle - swept.getRotation());
+		posed.set(index, swept);
+
+		RayTree	tree = new RayTree(posed);
+		Tracer	tracer = new Tracer(grid, swept, factor);
+
+		tracer.setParaxial(paraxial);
+		tree.traceInOrder(tracer);
+
+		return new Sample(angle, tree);
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// Traces a range of the angles.
+	private final class Trace extends RecursiveAction
+	{
+		private static final long	serialVersionUID = 1L;
+
+		private final Sample[]		samples;
+		private final int			start;
+		private final int			end;
+		private final double		from;
+		private final double		step;
+
+		public Trace(Sample[] samples, int start, int end, double from,
+					 double step)
+		{
+			this.samples = samples;
+			this.start = start;
+			this.end = end;
+			this.from = from;
+			this.step = step;
+		}
+
+		protected void	compute()
+		{
+			for (int i = start; i < end; i++)
+				samples[i] = trace(from + i * step);
+		}
+	}
+
+	// The beams of the scene traced with the element at one angle.
+	public static final class Sample
+	{
+		private final double			angle;
+		private final List<Beam>		beams;
+		private final int				nodes;
+
+		private Sample(double angle, RayTree tree)
+		{
+			this.angle = angle;
+
+			beams = new ArrayList<Beam>();
+			nodes = tree.getNodeCount();
+
+			for (Ray ray : tree.getRays())
+				if (ray.getChildren().isEmpty())
+					beams.add(new Beam(ray));
+		}
+
+		// Gets the angle of the element, in degrees.
+		public double	getAngle()
+		{
+			return angle;
+		}
+
+		// Gets the end of every ray that didn't split, in tree order.
+		public List<Beam>	getBeams()
+		{
+			return Collections.unmodifiableList(beams);
+		}
+
+		// Gets the number of rays traced, split ones included.
+		public int	getNodeCount()
+		{
+			return nodes;
+		}
+
+		// Gets the summed weight of the beams that ended in a way.
+		public double	getWeight(Ray.Termination termination)
+		{
+			double	sum = 0.0;
+
+			for (Beam beam : beams)
+				if (beam.termination == termination)
+					sum += beam.weight;
+
+			return sum;
+		}
+	}
+
+	// Where and how one ray ended.
+	public static final class Beam
+	{
+		private final Ray.Termination	termination;
+		private final Point2D.Double	end;
+		private final double			length;
+		private final double			direction;
+		private final double			weight;
+
+		private Beam(Ray ray)
+		{
+			Point2D.Double	v = ray.getVector();
+
+			termination = ray.getTermination();
+			end = new Point2D.Double(ray.getPoint().x, ray.getPoint().y);
+			length = ray.getLength();
+			direction = ((termination == Ray.Termination.EXITED) ?
+						 Math.toDegrees(Math.atan2(v.y, v.x)) : Double.NaN);
+			weight = ray.getWeight();
+		}
+
+		public Ray.Termination	getTermination()
+		{
+			return termination;
+		}
+
+		// Gets the point where the ray ended.
+		public Point2D.Double	getEnd()
+		{
+			return new Point2D.Double(end.x, end.y);
+		}
+
+		// Gets the path length from the lightbox to the end.
+		public double	getLength()
+		{
+			return length;
+		}
+
+		// Gets the direction the ray left the world in, in degrees from the
+		// x axis, or NaN if it ended in some other way.
+		public double	getDirection()
+		{
+			return direction;
+		}
+
+		// Gets the ray's share of the light.
+		public double	getWeight()
+		{
+			return weight;
+		}
+	}
+}
+
+//******************************************************************************
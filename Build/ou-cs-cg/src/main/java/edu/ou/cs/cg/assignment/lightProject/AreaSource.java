@@ -0,0 +1,287 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Treats the first lightbox of a scene as an area source. Instead of the few
+// fixed rays of Tracer.emit(), it emits rays from random points across the
+// lightbox's right face, in random directions around the face's normal. The
+// directions follow a cosine (Lambertian) distribution cut off at MAX_ANGLE.
+//
+// Sampling is progressive: rays are emitted and traced in small batches, and
+// each call to poll() schedules as many batches as should fit in a time
+// budget on the common ForkJoinPool, then returns the finished ones. The
+// light fills in over a few frames without holding up any of them.
+//
+// Each batch gets its own SplittableRandom, split off the source's seeded
+// generator in batch order on the calling thread, and traces its rays one
+// after another. So batch k is the same on every run with the same seed and
+// scene, whichever thread traces it and however many threads there are.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.util.*;
+import java.util.concurrent.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>AreaSource</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class AreaSource
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		BATCH = 16;				// Rays per batch
+	public static final int		MAX_RAYS = 4096;		// Then sampling stops
+	public static final double		MAX_ANGLE = 15.0;		// Degrees off normal
+	public static final long		BUDGET = 8000000L;		// Tracing per poll, ns
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final LightElement			lightbox;	// Null if there is none
+	private final ElementGrid			grid;
+	private final double				factor;
+	private final boolean				paraxial;
+	private final SplittableRandom		random;		// Splits off batch streams
+
+	private int							batches;	// Batches scheduled
+	private long						nanos;		// Tracing time so far
+	private int							timed;		// Batches in that time
+	private List<Batch>					round;		// Batches being traced
+	private ForkJoinTask<?>				task;		// Traces the round
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Samples the first lightbox of a scene. The scene must not change while
+	// it is being sampled (e.g. a snapshot).
+	public AreaSource(Collection<LightElement> scene, double factor,
+					  boolean paraxial, long seed)
+	{
+		LightElement	source = null;
+
+		for (LightElement le : scene)
+		{
+			if (le.getType().equals("Lightbox"))
+			{
+				source = le;
+				break;
+			}
+		}
+
+		lightbox = source;
+		grid = new ElementGrid(scene);
+		this.factor = factor;
+		this.paraxial = paraxial;
+		random = new SplittableRandom(seed);
+
+		batches = 0;
+		nanos = 0L;
+		timed = 0;
+		round = null;
+		task = null;
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Emits n rays from random points on the right face of the lightbox.
+	public static Ray[]	emit(LightElement lightbox, SplittableRandom random,
+							 int n)
+	{
+		ElementShape	shape = lightbox.getShape();
+		double			face = shape.getTr().x;
+		double			bottom = shape.getBr().y;
+		double			top = shape.getTr().y;
+		double			limit = Math.sin(Math.toRadians(MAX_ANGLE));
+		double			rotation = Math.toRadians(lightbox.getRotation());
+		double[]		packet = Spectrum.sample(Spectrum.SAMPLES);
+		Ray[]			rays = new Ray[n];
+
+		for (int i = 0; i < n; i++)
+		{
+			// A point on the face, and an angle whose sine is uniform, which
+			// makes the angles cosine distributed
+			double			h = bottom + (top - bottom) * random.nextDouble();
+			double			angle = Math.asin(limit *
+											  (2.0 * random.nextDouble() - 1.0));
+			Point2D.Double	p = lightbox.toWorld(new Point2D.Double(face, h));
+
+			rays[i] = new Ray(p.x, p.y,
+							  Math.cos(rotation + angle) * Tracer.SPEED,
+							  Math.sin(rotation + angle) * Tracer.SPEED, packet);
+		}
+
+		return rays;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the number of rays scheduled so far.
+	public int	getRayCount()
+	{
+		return batches * BATCH;
+	}
+
+	// True once every ray has been scheduled, or if there is no lightbox.
+	public boolean	isDone()
+	{
+		return ((lightbox == null) || (batches * BATCH >= MAX_RAYS));
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Collects the batches traced since the last poll, in batch order, and
+	// schedules the next round if there is none running. Each tree holds the
+	// rays of one batch. Call this from one thread only.
+	public List<RayTree>	poll(long budget)
+	{
+		List<RayTree>	trees = new ArrayList<RayTree>();
+
+		if (task != null)
+		{
+			if (!task.isDone())
+				return trees;
+
+			for (Batch batch : round)
+			{
+				trees.add(batch.tree);
+				nanos += batch.nanos;
+				timed++;
+			}
+
+			task = null;
+			round = null;
+		}
+
+		if (!isDone())
+			schedule(getRoundSize(budget));
+
+		return trees;
+	}
+
+	// Emits and traces the next batches before returning them, for use
+	// without a view. The batches are the same as from poll().
+	public List<RayTree>	sample(int count)
+	{
+		final List<Batch>	next = createBatches(count);
+		List<RayTree>		trees = new ArrayList<RayTree>(next.size());
+
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+				protected void	compute() {
+					invokeAll(next);
+				}
+			});
+
+		for (Batch batch : next)
+			trees.add(batch.tree);
+
+		return trees;
+	}
+
+	// Stops the round being traced. Its batches are dropped, so the source
+	// shouldn't be used any more.
+	public void	cancel()
+	{
+		if (round != null)
+			for (Batch batch : round)
+				batch.tree.cancel();
+
+		round = null;
+		task = null;
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	// Estimates how many batches the pool can trace within the budget, from
+	// the time taken by the ones traced so far.
+	private int	getRoundSize(long budget)
+	{
+		int	threads = ForkJoinPool.getCommonPoolParallelism();
+
+		if (timed == 0)
+			return threads;
+
+		long	each = Math.max(1L, nanos / timed);
+
+		return (int)Math.max(1L, Math.min(budget * threads / each,
+										  (MAX_RAYS / BATCH) - batches));
+	}
+
+	// Emits the next batches, each from its own split of the generator.
+	private List<Batch>	createBatches(int count)
+	{
+		List<Batch>	next = new ArrayList<Batch>(count);
+
+		for (int i = 0; i < count && !isDone(); i++)
+		{
+			next.add(new Batch(emit(lightbox, random.split(), BATCH)));
+			batches++;
+		}
+
+		return next;
+	}
+
+	private void	schedule(int count)
+	{
+		final List<Batch>	next = createBatches(count);
+
+		round = next;
+		task = ForkJoinPool.commonPool().submit(new RecursiveAction() {
+				protected void	compute() {
+					invokeAll(next);
+				}
+			});
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// Traces one batch of rays, and the rays they split into, in order.
+	private final class Batch extends RecursiveAction
+	{
+		private static final long	serialVersionUID = 1L;
+
+		private final RayTree		tree;
+		private long				nanos;
+
+		public Batch(Ray[] roots)
+		{
+			tree = new RayTree(roots, RayTree.THRESHOLD, RayTree.MAX_NODES);
+		}
+
+		protected void	compute()
+		{
+			long	start = System.nanoTime();
+			Tracer	tracer = new Tracer(grid, null, factor);
+
+			tracer.setParaxial(paraxial);
+			tree.traceInOrder(tracer);
+
+			nanos = System.nanoTime() - start;
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,443 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// An assembly groups elements, and other assemblies, so that they can be
+// moved and rotated as a unit (e.g. the two lenses of a beam expander). An
+// assembly has a position and rotation relative to its parent (or the world,
+// at the top); the centers and rotations of its members are relative to it.
+//
+// Each assembly caches its composite (world) frame and its bounding box.
+// Moving or rotating an assembly changes only its own position or rotation,
+// then drops the cached frames of the assemblies below it and the cached
+// boxes above and below it. Its elements aren't touched: they find their
+// world positions through the frame when asked. Caches are rebuilt lazily.
+//
+// The caches are immutable values in volatile fields, so an assembly that
+// isn't changing may be read by several threads at once (e.g. a background
+// trace). An assembly that is being changed must be copied first.
+//
+// Searches skip every part of an assembly whose box the search area misses,
+// so the tracer passes by whole assemblies at the cost of one box test.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Assembly</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Assembly implements SceneNode
+{
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private Assembly							parent;
+	private final List<Assembly>				assemblies;	// Sub-assemblies
+	private final List<LightElement>			elements;	// Direct members
+
+	private double								x;			// Origin in parent
+	private double								y;
+	private double								rotation;	// Degrees
+
+	private volatile Frame						frame;		// Cached, or null
+	private volatile Rectangle2D.Double		bounds;		// Cached, or null
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	private Assembly(double x, double y)
+	{
+		assemblies = new ArrayList<Assembly>();
+		elements = new ArrayList<LightElement>();
+
+		this.x = x;
+		this.y = y;
+		rotation = 0.0;
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Groups top-level nodes (elements not in an assembly, or top assemblies)
+	// into a new assembly, with its origin at the center of their bounds. The
+	// members keep their places in the world.
+	public static Assembly	group(Collection<SceneNode> nodes)
+	{
+		Rectangle2D.Double	box = null;
+
+		for (SceneNode node : nodes)
+		{
+			if (box == null)
+				box = node.getBounds();
+			else
+				box.add(node.getBounds());
+		}
+
+		Assembly	assembly = new Assembly(((box != null) ? box.getCenterX() : 0.0),
+											((box != null) ? box.getCenterY() : 0.0));
+
+		for (SceneNode node : nodes)
+		{
+			if (node instanceof LightElement)
+			{
+				LightElement	le = (LightElement)node;
+
+				le.center = new Point2D.Double(le.center.x - assembly.x,
+											   le.center.y - assembly.y);
+				le.assembly = assembly;
+				assembly.elements.add(le);
+			}
+			else
+			{
+				Assembly	a = (Assembly)node;
+
+				a.x -= assembly.x;
+				a.y -= assembly.y;
+				a.parent = assembly;
+				a.invalidate();
+				assembly.assemblies.add(a);
+			}
+		}
+
+		return assembly;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public Assembly	getParent()
+	{
+		return parent;
+	}
+
+	// Gets the topmost assembly that this one belongs to (maybe itself).
+	public Assembly	getRoot()
+	{
+		Assembly	a = this;
+
+		while (a.parent != null)
+			a = a.parent;
+
+		return a;
+	}
+
+	// Gets the origin of the assembly in world space.
+	public Point2D.Double	getPosition()
+	{
+		Frame	f = getFrame();
+
+		return new Point2D.Double(f.x, f.y);
+	}
+
+	// Gets the rotation of the assembly in world space, in degrees.
+	public double	getRotation()
+	{
+		return getFrame().rotation;
+	}
+
+	// Lists every element in the assembly, including those of sub-assemblies.
+	public List<LightElement>	getElements()
+	{
+		List<LightElement>	all = new ArrayList<LightElement>(elements);
+
+		for (Assembly a : assemblies)
+			all.addAll(a.getElements());
+
+		return all;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Moves the origin of the assembly to a point in world space.
+	public void	moveTo(double wx, double wy)
+	{
+		if (parent == null)
+		{
+			x = wx;
+			y = wy;
+		}
+		else
+		{
+			Point2D.Double	p = parent.toLocal(wx, wy);
+
+			x = p.x;
+			y = p.y;
+		}
+
+		invalidate();
+	}
+
+	// Rotates the assembly about its origin by a number of degrees.
+	public void	rotate(double degrees)
+	{
+		rotation += degrees;
+		invalidate();
+	}
+
+	// Breaks up the assembly. Its members go to its parent (or to the top),
+	// keeping their places in the world.
+	public void	ungroup()
+	{
+		for (LightElement le : elements)
+		{
+			Point2D.Double	c = le.getCenter();
+			double			r = le.getRotation();
+
+			le.assembly = null;
+			le.center = c;
+			le.rotation = r;
+
+			if (parent != null)
+				parent.adopt(le);
+		}
+
+		for (Assembly a : assemblies)
+		{
+			Frame	f = a.getFrame();
+
+			a.parent = null;
+			a.x = f.x;
+			a.y = f.y;
+			a.rotation = f.rotation;
+
+			if (parent != null)
+				parent.adopt(a);
+
+			a.invalidate();
+		}
+
+		if (parent != null)
+		{
+			parent.assemblies.remove(this);
+			parent.invalidateBounds();
+		}
+
+		elements.clear();
+		assemblies.clear();
+		parent = null;
+	}
+
+	// Takes an element out of the assembly, keeping its place in the world.
+	// Assemblies that are left empty are removed from their parents.
+	public void	remove(LightElement le)
+	{
+		if (!elements.remove(le))
+			return;
+
+		Point2D.Double	c = le.getCenter();
+		double			r = le.getRotation();
+
+		le.assembly = null;
+		le.center = c;
+		le.rotation = r;
+
+		invalidateBounds();
+
+		for (Assembly a = this; a.parent != null && a.isEmpty(); a = a.parent)
+			a.parent.assemblies.remove(a);
+	}
+
+	// Maps a point from the assembly's space to world space.
+	public Point2D.Double	toWorld(double lx, double ly)
+	{
+		Frame	f = getFrame();
+
+		return new Point2D.Double(f.x + f.cos * lx - f.sin * ly,
+								  f.y + f.sin * lx + f.cos * ly);
+	}
+
+	// Maps a point from world space to the assembly's space.
+	public Point2D.Double	toLocal(double wx, double wy)
+	{
+		Frame	f = getFrame();
+		double	dx = wx - f.x;
+		double	dy = wy - f.y;
+
+		return new Point2D.Double(f.cos * dx + f.sin * dy,
+								  -f.sin * dx + f.cos * dy);
+	}
+
+	//**********************************************************************
+	// Override Methods (SceneNode)
+	//**********************************************************************
+
+	public Rectangle2D.Double	getBounds()
+	{
+		Rectangle2D.Double	box = bounds;
+
+		if (box == null)
+		{
+			for (LightElement le : elements)
+			{
+				if (box == null)
+					box = le.getBounds();
+				else
+					box.add(le.getBounds());
+			}
+
+			for (Assembly a : assemblies)
+			{
+				if (box == null)
+					box = a.getBounds();
+				else
+					box.add(a.getBounds());
+			}
+
+			if (box == null)
+			{
+				Frame	f = getFrame();
+
+				box = new Rectangle2D.Double(f.x, f.y, 0.0, 0.0);
+			}
+
+			bounds = box;
+		}
+
+		return new Rectangle2D.Double(box.x, box.y, box.width, box.height);
+	}
+
+	public void	collect(double minX, double minY, double maxX, double maxY,
+						List<LightElement> out)
+	{
+		Rectangle2D.Double	box = getBounds();
+
+		if (box.x > maxX || box.y > maxY ||
+			box.x + box.width < minX || box.y + box.height < minY)
+			return;
+
+		for (LightElement le : elements)
+			le.collect(minX, minY, maxX, maxY, out);
+
+		for (Assembly a : assemblies)
+			a.collect(minX, minY, maxX, maxY, out);
+	}
+
+	//**********************************************************************
+	// Package Methods
+	//**********************************************************************
+
+	// Drops the cached boxes of this assembly and the ones above it, after a
+	// member has moved.
+	void	invalidateBounds()
+	{
+		for (Assembly a = this; a != null; a = a.parent)
+			a.bounds = null;
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	// Gets the composite frame, building it from the parent's if needed.
+	private Frame	getFrame()
+	{
+		Frame	f = frame;
+
+		if (f == null)
+		{
+			if (parent == null)
+			{
+				f = new Frame(x, y, rotation);
+			}
+			else
+			{
+				Frame	p = parent.getFrame();
+
+				f = new Frame(p.x + p.cos * x - p.sin * y,
+							  p.y + p.sin * x + p.cos * y,
+							  p.rotation + rotation);
+			}
+
+			frame = f;
+		}
+
+		return f;
+	}
+
+	// Drops the cached frames and boxes below this assembly, and the boxes
+	// above it, after it moved.
+	private void	invalidate()
+	{
+		invalidateSubtree();
+		invalidateBounds();
+	}
+
+	private void	invalidateSubtree()
+	{
+		frame = null;
+		bounds = null;
+
+		for (Assembly a : assemblies)
+			a.invalidateSubtree();
+	}
+
+	// Adds a node that is in world space to this assembly.
+	private void	adopt(LightElement le)
+	{
+		Point2D.Double	c = toLocal(le.center.x, le.center.y);
+
+		le.center = c;
+		le.rotation -= getFrame().rotation;
+		le.assembly = this;
+		elements.add(le);
+	}
+
+	private void	adopt(Assembly a)
+	{
+		Point2D.Double	c = toLocal(a.x, a.y);
+
+		a.x = c.x;
+		a.y = c.y;
+		a.rotation -= getFrame().rotation;
+		a.parent = this;
+		assemblies.add(a);
+	}
+
+	private boolean	isEmpty()
+	{
+		return elements.isEmpty() && assemblies.isEmpty();
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// A world space position and rotation, with the rotation's sine and cosine.
+	private static final class Frame
+	{
+		public final double	x;
+		public final double	y;
+		public final double	rotation;
+		public final double	cos;
+		public final double	sin;
+
+		public Frame(double x, double y, double rotation)
+		{
+			this.x = x;
+			this.y = y;
+			this.rotation = rotation;
+			cos = Math.cos(Math.toRadians(rotation));
+			sin = Math.sin(Math.toRadians(rotation));
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,527 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Saves the scene in the background as it changes, so that a crash loses at
+// most the last few seconds of work. The save is a journal file laid out as
+// follows (all values big-endian):
+//
+//     header      int magic ("LPJN"), int version
+//     frames      int payload length, int CRC32 of the payload, payload
+//
+// A payload is a list of changes: CLEAR (byte 0), PUT (byte 1, int element
+// id, byte type id, three doubles x, y and rotation in degrees, in world
+// space), or REMOVE (byte 2, int element id). Type ids are the positions in
+// SceneArchive.TYPES.
+//
+// The thread that changes the scene (the JOGL thread) only tells the journal
+// which elements it changed, as it changes them. Each call copies the poses
+// of those elements into immutable changes and queues them, so the cost is
+// in step with the change itself; nothing is done per frame and nothing
+// waits on the disk. A daemon thread drains the queue every INTERVAL, keeps
+// its own copy of the scene up to date, and appends only what changed since
+// the last frame (the last pose of each element) through an
+// AsynchronousFileChannel.
+//
+// Once the journal has grown to twice the size of its last full snapshot
+// (and at least COMPACT_MIN), the thread writes a new journal holding just
+// one frame with the whole scene, then moves it over the old one. A fresh
+// journal starts the same way, so the file always begins with a snapshot.
+//
+// recover() replays a journal up to its last whole frame; a frame cut short
+// by a crash, or one that fails its checksum, ends the replay.
+//
+// An autosave without a journal (a null path) saves nothing and starts no
+// thread, for runs that mustn't touch the user's journal, e.g. a replay.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Autosave</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Autosave
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final String		FILE = "lightProject.journal";	// Default
+	public static final long		INTERVAL = 2000L;		// Between saves, ms
+	public static final long		COMPACT_MIN = 1L << 20;	// Bytes
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final int		MAGIC = 0x4C504A4E;		// "LPJN"
+	private static final int		VERSION = 1;
+	private static final int		HEADER = 8;			// Bytes
+	private static final int		FRAME = 8;			// Bytes before a payload
+	private static final int		POSE = 30;			// Bytes per PUT
+
+	// Kinds of change
+	private static final byte		CLEAR = 0;
+	private static final byte		PUT = 1;
+	private static final byte		REMOVE = 2;
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final Path								path;
+	private final ConcurrentLinkedQueue<Change>	queue;
+	private final ScheduledExecutorService			executor;
+
+	// Used by the thread that changes the scene only
+	private final Map<LightElement, Integer>		ids;
+	private int										nextId;
+
+	// Used by the autosave thread only (or on close)
+	private final Map<Integer, Change>				scene;		// In id order
+	private AsynchronousFileChannel				channel;	// Null to compact
+	private long									size;		// Of the journal
+	private long									compacted;	// Size after it
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Starts saving a scene to a journal, beginning with a full snapshot of
+	// its elements. The journal is replaced, so recover it first. Nothing is
+	// saved if the path is null.
+	public Autosave(Path path, Collection<LightElement> elements)
+	{
+		this.path = path;
+
+		queue = new ConcurrentLinkedQueue<Change>();
+		ids = new IdentityHashMap<LightElement, Integer>();
+		nextId = 0;
+		scene = new LinkedHashMap<Integer, Change>();
+		channel = null;
+		size = 0L;
+		compacted = 0L;
+
+		reset(elements);
+
+		if (path == null)
+		{
+			executor = null;
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				public Thread	newThread(Runnable r) {
+					Thread	thread = new Thread(r, "Autosave");
+
+					thread.setDaemon(true);
+
+					return thread;
+				}
+			});
+
+		executor.scheduleWithFixedDelay(new Runnable() {
+				public void	run() {
+					flush();
+				}
+			}, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+
+		// Save the last changes when the application exits
+		Runtime.getRuntime().addShutdownHook(new Thread("Autosave") {
+				public void	run() {
+					close();
+				}
+			});
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Rebuilds the scene saved in a journal, in world space. The elements are
+	// in the order they were first saved in. Gives an empty scene if there is
+	// no journal.
+	public static List<LightElement>	recover(Path path) throws IOException
+	{
+		List<LightElement>	elements = new ArrayList<LightElement>();
+
+		if (!Files.exists(path))
+			return elements;
+
+		ByteBuffer	in = ByteBuffer.wrap(Files.readAllBytes(path));
+
+		if (in.remaining() < HEADER || in.getInt() != MAGIC)
+			throw new IOException(path + " is not an autosave journal");
+
+		int	version = in.getInt();
+
+		if (version > VERSION)
+			throw new IOException(path + " has version " + version +
+								  ", newer than " + VERSION);
+
+		Map<Integer, Change>	saved = new LinkedHashMap<Integer, Change>();
+		CRC32					crc = new CRC32();
+
+		while (in.remaining() >= FRAME)
+		{
+			int	length = in.getInt();
+			int	sum = in.getInt();
+
+			if (length < 0 || length > in.remaining())
+				break;
+
+			ByteBuffer	payload = (ByteBuffer)in.slice().limit(length);
+
+			crc.reset();
+			crc.update(payload.duplicate());
+
+			if ((int)crc.getValue() != sum)
+				break;
+
+			apply(payload, saved);
+			in.position(in.position() + length);
+		}
+
+		for (Change c : saved.values())
+		{
+			if (c.type < 0 || c.type >= SceneArchive.TYPES.size())
+				throw new IOException("Unknown type id " + c.type + " in " + path);
+
+			LightElement	le = LightElement.create(
+				SceneArchive.TYPES.get(c.type), c.x, c.y);
+
+			le.setRotation(c.rotation);
+			elements.add(le);
+		}
+
+		return elements;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Notes that an element was added, moved or rotated. These methods copy
+	// the poses right away; call them from the thread that changes the scene.
+	public void	put(LightElement le)
+	{
+		if (path == null)
+			return;
+
+		Integer	id = ids.get(le);
+
+		if (id == null)
+		{
+			id = nextId++;
+			ids.put(le, id);
+		}
+
+		queue.add(new Change(PUT, id, SceneArchive.TYPES.indexOf(le.getType()),
+							 le.getCenter().x, le.getCenter().y,
+							 le.getRotation()));
+	}
+
+	public void	putAll(Collection<LightElement> elements)
+	{
+		for (LightElement le : elements)
+			put(le);
+	}
+
+	// Notes that an element was taken out of the scene.
+	public void	remove(LightElement le)
+	{
+		if (path == null)
+			return;
+
+		Integer	id = ids.remove(le);
+
+		if (id != null)
+			queue.add(new Change(REMOVE, id, -1, 0.0, 0.0, 0.0));
+	}
+
+	// Notes that the scene was replaced by these elements.
+	public void	reset(Collection<LightElement> elements)
+	{
+		if (path == null)
+			return;
+
+		ids.clear();
+		queue.add(new Change(CLEAR, -1, -1, 0.0, 0.0, 0.0));
+		putAll(elements);
+	}
+
+	// Stops the autosave thread and saves what is left in the queue.
+	public void	close()
+	{
+		if (executor == null)
+			return;
+
+		executor.shutdown();
+
+		synchronized (this)
+		{
+			flush();
+
+			if (channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (IOException ex)
+				{
+				}
+
+				channel = null;
+			}
+		}
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// Applies the changes in a payload to a scene.
+	private static void	apply(ByteBuffer payload, Map<Integer, Change> to)
+		throws IOException
+	{
+		while (payload.hasRemaining())
+		{
+			byte	kind = payload.get();
+
+			if (kind == CLEAR)
+			{
+				to.clear();
+			}
+			else if (kind == PUT)
+			{
+				int		id = payload.getInt();
+				byte	type = payload.get();
+				double	x = payload.getDouble();
+				double	y = payload.getDouble();
+				double	rotation = payload.getDouble();
+
+				to.put(id, new Change(PUT, id, type, x, y, rotation));
+			}
+			else if (kind == REMOVE)
+			{
+				to.remove(payload.getInt());
+			}
+			else
+			{
+				throw new IOException("Unknown change " + kind);
+			}
+		}
+	}
+
+	// Packs changes into a frame, preceded by a CLEAR if asked.
+	private static ByteBuffer	encode(boolean clear, Collection<Change> changes)
+	{
+		int	length = (clear ? 1 : 0);
+
+		for (Change c : changes)
+			length += ((c.kind == PUT) ? POSE : 5);
+
+		ByteBuffer	out = ByteBuffer.allocate(FRAME + length);
+
+		out.position(FRAME);
+
+		if (clear)
+			out.put(CLEAR);
+
+		for (Change c : changes)
+		{
+			out.put(c.kind);
+			out.putInt(c.id);
+
+			if (c.kind == PUT)
+			{
+				out.put((byte)c.type);
+				out.putDouble(c.x);
+				out.putDouble(c.y);
+				out.putDouble(c.rotation);
+			}
+		}
+
+		CRC32	crc = new CRC32();
+
+		out.flip();
+		out.position(FRAME);
+		crc.update(out);
+		out.putInt(0, length);
+		out.putInt(4, (int)crc.getValue());
+		out.rewind();
+
+		return out;
+	}
+
+	// Writes all of a buffer at a position, waiting for the channel to finish.
+	private static void	write(AsynchronousFileChannel to, ByteBuffer buffer,
+							  long position) throws IOException
+	{
+		try
+		{
+			while (buffer.hasRemaining())
+				position += to.write(buffer, position).get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing " + to, ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	// Applies the queued changes to the saved scene and writes the ones that
+	// are still current as one frame, or a new snapshot when it's time.
+	private synchronized void	flush()
+	{
+		Map<Integer, Change>	changed = new LinkedHashMap<Integer, Change>();
+		boolean				clear = false;
+		Change					c;
+
+		while ((c = queue.poll()) != null)
+		{
+			if (c.kind == CLEAR)
+			{
+				scene.clear();
+				changed.clear();
+				clear = true;
+				continue;
+			}
+
+			if (c.kind == PUT)
+				scene.put(c.id, c);
+			else
+				scene.remove(c.id);
+
+			changed.put(c.id, c);
+		}
+
+		if (!clear && changed.isEmpty() && channel != null)
+			return;
+
+		try
+		{
+			if (channel == null ||
+				size > Math.max(COMPACT_MIN, 2L * compacted))
+			{
+				compact();
+			}
+			else
+			{
+				ByteBuffer	frame = encode(clear, changed.values());
+
+				write(channel, frame, size);
+				channel.force(false);
+				size += frame.limit();
+			}
+		}
+		catch (IOException ex)
+		{
+			System.err.println("Couldn't autosave the scene: " + ex.getMessage());
+
+			// Start over with a snapshot next time
+			try
+			{
+				if (channel != null)
+					channel.close();
+			}
+			catch (IOException ex2)
+			{
+			}
+
+			channel = null;
+		}
+	}
+
+	// Replaces the journal with one holding a snapshot of the saved scene.
+	private void	compact() throws IOException
+	{
+		Path		temp = path.resolveSibling(path.getFileName() + ".tmp");
+		ByteBuffer	header = ByteBuffer.allocate(HEADER);
+		ByteBuffer	frame = encode(true, scene.values());
+
+		header.putInt(MAGIC).putInt(VERSION).flip();
+
+		try (AsynchronousFileChannel out = AsynchronousFileChannel.open(temp,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			write(out, header, 0L);
+			write(out, frame, HEADER);
+			out.force(true);
+		}
+
+		if (channel != null)
+			channel.close();
+
+		channel = null;
+
+		try
+		{
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+					   StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException ex)
+		{
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		channel = AsynchronousFileChannel.open(path, StandardOpenOption.WRITE);
+		size = HEADER + frame.limit();
+		compacted = size;
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// A change to one element, or a CLEAR of the whole scene.
+	private static final class Change
+	{
+		private final byte		kind;
+		private final int		id;
+		private final int		type;
+		private final double	x;
+		private final double	y;
+		private final double	rotation;
+
+		public Change(byte kind, int id, int type, double x, double y,
+					  double rotation)
+		{
+			this.kind = kind;
+			this.id = id;
+			this.type = type;
+			this.x = x;
+			this.y = y;
+			this.rotation = rotation;
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,400 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Traces scenes without a window, for long runs on headless machines. Each
+// scene (a file or a generator spec, see SceneFile) is traced in full with a
+// chosen number of rays from its lightbox, on a pool of a chosen number of
+// threads. Every ray of the tree is written out with how it ended, its
+// bounces, its path length from the lightbox, and where it ended, as CSV or
+// JSON. Progress and timings go to standard error.
+//
+// The rays are traced ROUND at a time, each round as a tree of its own that
+// is written out and dropped before the next, so the memory needed doesn't
+// grow with the number of rays.
+//
+// With --export, the path of every ray is also streamed to a file while it
+// is traced (see TraceExport), in binary or, for a .csv file, as CSV. With
+// several scenes, each gets its own file, numbered from 1.
+//
+// Only the tracing classes are used here. Nothing touches the Model, View or
+// any other class that needs JOGL or a display.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Batch</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Batch
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final double		FACTOR = 256.0;		// As in a 1280 wide view
+	public static final int		ROUND = 4096;		// Rays traced at a time
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final int					rays;
+	private final double				factor;
+	private final boolean				paraxial;
+	private final boolean				json;
+	private final ForkJoinPool			pool;
+	private String						export;		// File for the paths
+
+	//**********************************************************************
+	// Main
+	//**********************************************************************
+
+	// Usage: Batch [options] scene...
+	public static void	main(String[] args)
+	{
+		int		rays = Tracer.RAYS;
+		int		threads = Runtime.getRuntime().availableProcessors();
+		double		factor = FACTOR;
+		boolean	paraxial = false;
+		String		format = null;
+		String		output = null;
+		String		export = null;
+		List<String>	scenes = new ArrayList<String>();
+
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				switch (args[i])
+				{
+					case "--rays":
+						rays = Integer.parseInt(args[++i]);
+						break;
+					case "--threads":
+						threads = Integer.parseInt(args[++i]);
+						break;
+					case "--factor":
+						factor = Double.parseDouble(args[++i]);
+						break;
+					case "--paraxial":
+						paraxial = true;
+						break;
+					case "--format":
+						format = args[++i].toLowerCase();
+						break;
+					case "-o":
+						output = args[++i];
+						break;
+					case "--export":
+						export = args[++i];
+						break;
+					default:
+						if (args[i].startsWith("-"))
+							throw new IllegalArgumentException(args[i]);
+
+						scenes.add(args[i]);
+				}
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			scenes.clear();
+		}
+
+		if (format == null)
+			format = (((output != null) && output.endsWith(".json")) ?
+					  "json" : "csv");
+
+		if (scenes.isEmpty() || rays < 1 || threads < 1 || !(factor > 0.0) ||
+			!(format.equals("csv") || format.equals("json")))
+		{
+			System.err.println("Usage: lightProject-batch [--rays <n>] " +
+							   "[--threads <n>] [--factor <f>] [--paraxial] " +
+							   "[--format csv|json] [-o <file>] " +
+							   "[--export <file.bin|file.csv>] <scene>...");
+			System.err.println("Scenes are files of \"<type> <x> <y> " +
+							   "[<rotation>]\" lines, or " + SceneFile.GENERATE +
+							   "<layout>:<mirrors>:<prisms>:<lenses>:" +
+							   "<lightboxes>[:<seed>]");
+			System.exit(1);
+		}
+
+		Batch	batch = new Batch(rays, factor, paraxial, format.equals("json"),
+								  threads);
+
+		batch.setExport(export);
+
+		try (Writer out = new BufferedWriter((output != null) ?
+				new OutputStreamWriter(new FileOutputStream(output),
+									   StandardCharsets.UTF_8) :
+				new OutputStreamWriter(System.out, StandardCharsets.UTF_8)))
+		{
+			batch.run(scenes, out);
+		}
+		catch (IOException ex)
+		{
+			System.err.println(ex.getMessage());
+			System.exit(2);
+		}
+		finally
+		{
+			batch.pool.shutdown();
+		}
+	}
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public Batch(int rays, double factor, boolean paraxial, boolean json,
+				 int threads)
+	{
+		this.rays = rays;
+		this.factor = factor;
+		this.paraxial = paraxial;
+		this.json = json;
+
+		pool = new ForkJoinPool(threads);
+		export = null;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Streams the paths of the rays to a file (CSV if it ends with .csv), or
+	// not if null.
+	public void	setExport(String export)
+	{
+		this.export = export;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Traces each scene in turn and writes its rays out.
+	public void	run(List<String> scenes, Writer out) throws IOException
+	{
+		out.write(json ? "{\"scenes\": [\n" : "scene,ray,parent,depth," +
+				  "termination,bounces,length,end_x,end_y,weight\n");
+
+		for (int i = 0; i < scenes.size(); i++)
+		{
+			String				name = scenes.get(i);
+			List<LightElement>	scene = SceneFile.load(name);
+			ElementGrid			grid = new ElementGrid(scene);
+			TraceExport			paths = null;
+			int					written = 0;
+			long				time = 0L;
+
+			if (export != null)
+				paths = new TraceExport(Paths.get(getExportPath(i, scenes.size())),
+										scene, export.endsWith(".csv"));
+
+			if (json)
+				out.write("{\"scene\": " + quoteJson(name) + ", \"elements\": " +
+						  scene.size() + ", \"rays\": [");
+
+			// Trace the rays in rounds, so that only one round's tree is
+			// held at a time, however many rays there are
+			for (int first = 0; first < rays; first += ROUND)
+			{
+				long	start = System.nanoTime();
+				RayTree	tree = trace(grid, Tracer.emit(scene, rays, first,
+													   Math.min(ROUND, rays - first)),
+									 paths);
+
+				time += System.nanoTime() - start;
+
+				if (json)
+					writeJson(tree, written, out);
+				else
+					writeCsv(name, tree, written, out);
+
+				written += tree.getNodeCount();
+			}
+
+			if (json)
+				out.write(((written > 0) ? "\n" : "") +
+						  ((i == scenes.size() - 1) ? "]}\n" : "]},\n"));
+
+			System.err.println(name + ": " + scene.size() + " elements, " +
+							   written + " rays in " + (time / 1000000) + " ms");
+
+			if (paths != null)
+			{
+				paths.close();
+				System.err.println(name + ": exported " + paths.getRecordCount() +
+								   " vertices of " + paths.getRayCount() +
+								   " rays, waiting " +
+								   (paths.getWaitNanos() / 1000000) +
+								   " ms for the disk");
+			}
+		}
+
+		if (json)
+			out.write("]}\n");
+
+		out.flush();
+	}
+
+	// Traces a scene in full on the pool.
+	public RayTree	trace(List<LightElement> scene)
+	{
+		return trace(new ElementGrid(scene), Tracer.emit(scene, rays), null);
+	}
+
+	// Traces rays through the elements in a grid on the pool, streaming their
+	// paths to an export if not null.
+	public RayTree	trace(final ElementGrid grid, Ray[] roots, TraceExport paths)
+	{
+		final RayTree		tree = new RayTree(roots, RayTree.THRESHOLD,
+									Math.max(RayTree.MAX_NODES,
+											 roots.length * (RayTree.MAX_NODES / Tracer.RAYS)));
+
+		// Only the ends of the rays are written, so don't keep their traces
+		tree.setRecording(false);
+		tree.setExport(paths);
+
+		pool.invoke(new RecursiveAction() {
+				protected void	compute() {
+					tree.trace(grid, null, factor, paraxial);
+				}
+			});
+
+		return tree;
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	// Numbers the export file of each scene when there are several.
+	private String	getExportPath(int i, int count)
+	{
+		if (count == 1)
+			return export;
+
+		int	dot = export.lastIndexOf('.');
+
+		if (dot <= export.lastIndexOf(File.separatorChar))
+			dot = export.length();
+
+		return export.substring(0, dot) + "-" + (i + 1) + export.substring(dot);
+	}
+
+	// Writes the rays of a tree, numbered on from the rays written before.
+	private void	writeCsv(String name, RayTree tree, int offset, Writer out)
+		throws IOException
+	{
+		List<Ray>				list = tree.getRays();
+		Map<Ray, Integer>		parents = getParents(list, offset);
+		String					scene = quoteCsv(name);
+
+		for (int i = 0; i < list.size(); i++)
+		{
+			Ray	ray = list.get(i);
+
+			out.write(scene + "," + (offset + i) + "," + parents.get(ray) + "," +
+					  ray.getDepth() + "," +
+					  ray.getTermination().name().toLowerCase() + "," +
+					  ray.getBounces() + "," + ray.getLength() + "," +
+					  ray.getPoint().x + "," + ray.getPoint().y + "," +
+					  ray.getWeight() + "\n");
+		}
+	}
+
+	private void	writeJson(RayTree tree, int offset, Writer out)
+		throws IOException
+	{
+		List<Ray>				list = tree.getRays();
+		Map<Ray, Integer>		parents = getParents(list, offset);
+
+		for (int i = 0; i < list.size(); i++)
+		{
+			Ray	ray = list.get(i);
+
+			out.write((((offset + i) > 0) ? ",\n" : "\n") +
+					  "  {\"ray\": " + (offset + i) + ", \"parent\": " +
+					  parents.get(ray) +
+					  ", \"depth\": " + ray.getDepth() +
+					  ", \"termination\": \"" +
+					  ray.getTermination().name().toLowerCase() + "\"" +
+					  ", \"bounces\": " + ray.getBounces() +
+					  ", \"length\": " + number(ray.getLength()) +
+					  ", \"end\": [" + number(ray.getPoint().x) + ", " +
+					  number(ray.getPoint().y) + "]" +
+					  ", \"weight\": " + number(ray.getWeight()) + "}");
+		}
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// Maps each ray to the number of its parent, counting from an offset, or
+	// -1 for roots.
+	private static Map<Ray, Integer>	getParents(List<Ray> list, int offset)
+	{
+		Map<Ray, Integer>	parents = new IdentityHashMap<Ray, Integer>();
+
+		for (Ray ray : list)
+			parents.put(ray, -1);
+
+		for (int i = 0; i < list.size(); i++)
+			for (Ray child : list.get(i).getChildren())
+				parents.put(child, offset + i);
+
+		return parents;
+	}
+
+	// JSON has no NaN or infinities.
+	private static String	number(double d)
+	{
+		return ((Double.isNaN(d) || Double.isInfinite(d)) ? "null" :
+				Double.toString(d));
+	}
+
+	private static String	quoteCsv(String s)
+	{
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+			return s;
+
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String	quoteJson(String s)
+	{
+		StringBuilder	b = new StringBuilder("\"");
+
+		for (char c : s.toCharArray())
+		{
+			if (c == '"' || c == '\\')
+				b.append('\\').append(c);
+			else if (c < 0x20)
+				b.append(String.format("\\u%04x", (int)c));
+			else
+				b.append(c);
+		}
+
+		return b.append('"').toString();
+	}
+}
+
+//******************************************************************************
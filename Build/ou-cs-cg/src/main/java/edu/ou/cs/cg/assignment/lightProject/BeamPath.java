@@ -0,0 +1,170 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// The path of one fully traced ray, kept for playback. Each vertex has its
+// position and its arc length, the path length from the lightbox to it. The
+// beams all move at the same speed, so the arc length doubles as the time the
+// beam front reaches the vertex, in units of the playback speed.
+//
+// Arc lengths only grow along a path, so the vertex the beam front has just
+// passed is found by binary search, and the paths of a tree never need to be
+// traced again to show the beams at any moment.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>BeamPath</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class BeamPath
+{
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final Ray			ray;
+	private final double[]		x;
+	private final double[]		y;
+	private final double[]		arc;		// Path length to each vertex
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Builds the path along the ray's trace, or at its point if it hasn't
+	// moved. The ray must not be traced any further.
+	public BeamPath(Ray ray)
+	{
+		Collection<Point2D.Double>	trace = ray.getTrace();
+
+		if (trace.isEmpty())
+			trace = Collections.singletonList(ray.getPoint());
+
+		int	n = trace.size();
+		int	i = 0;
+
+		this.ray = ray;
+		x = new double[n];
+		y = new double[n];
+		arc = new double[n];
+
+		for (Point2D.Double p : trace)
+		{
+			x[i] = p.x;
+			y[i] = p.y;
+			arc[i] = ((i == 0) ? ray.getOffset() :
+					  arc[i - 1] + Math.hypot(p.x - x[i - 1], p.y - y[i - 1]));
+			i++;
+		}
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Builds the paths of every ray in a fully traced tree, parents first.
+	public static List<BeamPath>	build(RayTree tree)
+	{
+		List<Ray>		rays = tree.getRays();
+		List<BeamPath>	paths = new ArrayList<BeamPath>(rays.size());
+
+		for (Ray ray : rays)
+			paths.add(new BeamPath(ray));
+
+		return paths;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public Ray	getRay()
+	{
+		return ray;
+	}
+
+	public int	size()
+	{
+		return x.length;
+	}
+
+	public double	getX(int i)
+	{
+		return x[i];
+	}
+
+	public double	getY(int i)
+	{
+		return y[i];
+	}
+
+	public double	getArc(int i)
+	{
+		return arc[i];
+	}
+
+	// Arc length where the path starts
+	public double	getStart()
+	{
+		return arc[0];
+	}
+
+	// Arc length where the path ends
+	public double	getEnd()
+	{
+		return arc[arc.length - 1];
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Finds the last vertex at or before an arc length, or -1 if the path
+	// starts after it.
+	public int	indexAt(double s)
+	{
+		int	i = Arrays.binarySearch(arc, s);
+
+		if (i >= 0)
+		{
+			// Zero length segments repeat an arc length, take the last one
+			while ((i < arc.length - 1) && (arc[i + 1] == s))
+				i++;
+
+			return i;
+		}
+
+		return -i - 2;
+	}
+
+	// Finds the point at an arc length, clamped to the ends of the path.
+	public Point2D.Double	pointAt(double s)
+	{
+		int	i = indexAt(s);
+
+		if (i < 0)
+			return new Point2D.Double(x[0], y[0]);
+
+		if (i >= arc.length - 1)
+			return new Point2D.Double(x[arc.length - 1], y[arc.length - 1]);
+
+		double	t = (s - arc[i]) / (arc[i + 1] - arc[i]);
+
+		return new Point2D.Double(x[i] + (x[i + 1] - x[i]) * t,
+								  y[i] + (y[i + 1] - y[i]) * t);
+	}
+}
+
+//******************************************************************************
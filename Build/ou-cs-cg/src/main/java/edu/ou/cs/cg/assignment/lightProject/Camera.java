@@ -0,0 +1,153 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// The camera is the visible rectangle of the scene. At zoom 1.0 it shows the
+// original 1280x720 scene area; zooming in shrinks the rectangle about a point
+// and panning slides it. Cameras are small values that the model copies out
+// to the view once per frame.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Rectangle2D;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Camera</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Camera
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final double		WIDTH = 1280.0;		// Scene width at zoom 1
+	public static final double		HEIGHT = 720.0;		// Scene height at zoom 1
+	public static final double		MIN_ZOOM = 0.0005;
+	public static final double		MAX_ZOOM = 200.0;
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private double		cx;		// Center of the visible rectangle
+	private double		cy;
+	private double		zoom;	// Pixels (at 1280x720) per scene unit
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public Camera()
+	{
+		reset();
+	}
+
+	public Camera(double cx, double cy, double zoom)
+	{
+		this.cx = cx;
+		this.cy = cy;
+		this.zoom = zoom;
+	}
+
+	public Camera(Camera camera)
+	{
+		cx = camera.cx;
+		cy = camera.cy;
+		zoom = camera.zoom;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public double	getCenterX()
+	{
+		return cx;
+	}
+
+	public double	getCenterY()
+	{
+		return cy;
+	}
+
+	public double	getZoom()
+	{
+		return zoom;
+	}
+
+	public double	getLeft()
+	{
+		return cx - 0.5 * WIDTH / zoom;
+	}
+
+	public double	getRight()
+	{
+		return cx + 0.5 * WIDTH / zoom;
+	}
+
+	public double	getBottom()
+	{
+		return cy - 0.5 * HEIGHT / zoom;
+	}
+
+	public double	getTop()
+	{
+		return cy + 0.5 * HEIGHT / zoom;
+	}
+
+	public Rectangle2D.Double	getVisibleRect()
+	{
+		return new Rectangle2D.Double(getLeft(), getBottom(),
+									  WIDTH / zoom, HEIGHT / zoom);
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Shows the original 1280x720 scene area.
+	public void	reset()
+	{
+		cx = 0.5 * WIDTH;
+		cy = 0.5 * HEIGHT;
+		zoom = 1.0;
+	}
+
+	// Slides the visible rectangle by the given scene distance.
+	public void	pan(double dx, double dy)
+	{
+		cx += dx;
+		cy += dy;
+	}
+
+	// Multiplies the zoom by the factor, keeping the scene point (x, y) at
+	// the same place on screen.
+	public void	zoomAbout(double x, double y, double factor)
+	{
+		double	z = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+		double	f = z / zoom;
+
+		cx = x + (cx - x) / f;
+		cy = y + (cy - y) / f;
+		zoom = z;
+	}
+
+	// Checks if the segment from (x1, y1) to (x2, y2) may be visible, based on
+	// its bounding box.
+	public boolean	mayShowSegment(double x1, double y1, double x2, double y2)
+	{
+		return (Math.max(x1, x2) >= getLeft() && Math.min(x1, x2) <= getRight() &&
+				Math.max(y1, y2) >= getBottom() && Math.min(y1, y2) <= getTop());
+	}
+}
+
+//******************************************************************************
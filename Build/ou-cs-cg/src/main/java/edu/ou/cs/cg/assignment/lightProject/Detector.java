@@ -0,0 +1,89 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// A detector element absorbs the light that reaches it, like the sides of a
+// lightbox, and records each ray: the ray's weight (its intensity), where it
+// hit along the detector's length, and its angle of incidence to the faces.
+//
+// A Detector is the identity of one detector element. Copies of the element
+// (e.g. in snapshots traced on other threads) share it, so hits on any copy
+// are counted for the same detector. The hits themselves are kept per trace,
+// in a DetectorReading held by the ray tree (see RayTree.getReading()), so
+// traces of different versions of the scene never mix.
+//
+// Positions run from the bottom end (0.0) to the top end (1.0) of the
+// detector; angles from -90 to 90 degrees, with 0 straight on.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Detector</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Detector
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		POSITION_BINS = 12;	// Along the length
+	public static final int		ANGLE_BINS = 18;	// 10 degrees each
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	Detector()
+	{
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Traces a scene without a view and returns what the detector element
+	// in it measured. The scene must not change while it is traced.
+	public static DetectorReading	measure(List<LightElement> scene,
+											LightElement detector,
+											double factor, boolean paraxial)
+	{
+		RayTree	tree = new RayTree(scene);
+
+		tree.trace(new ElementGrid(scene), null, factor, paraxial);
+
+		return tree.getReading(detector.getDetector());
+	}
+
+	// Gets the bin of a position from 0.0 to 1.0.
+	public static int	getPositionBin(double position)
+	{
+		return clamp((int)(position * POSITION_BINS), POSITION_BINS);
+	}
+
+	// Gets the bin of an angle from -90 to 90 degrees.
+	public static int	getAngleBin(double degrees)
+	{
+		return clamp((int)((degrees + 90.0) / 180.0 * ANGLE_BINS), ANGLE_BINS);
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	private static int	clamp(int bin, int bins)
+	{
+		return Math.max(0, Math.min(bins - 1, bin));
+	}
+}
+
+//******************************************************************************
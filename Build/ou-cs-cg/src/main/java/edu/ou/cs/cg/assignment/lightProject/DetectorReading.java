@@ -0,0 +1,137 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// The hits on one detector during a trace (see Detector): how many rays hit
+// it, their summed intensity, and histograms of where along it they hit and
+// at what angle.
+//
+// The rays of a tree are traced by many threads at once, so every total is
+// a striped counter (LongAdder or DoubleAdder). Threads that record hits at
+// the same time mostly update different cells, and no lock is ever taken.
+// The getters sum the cells, so they can be read while a trace is running;
+// they then give the hits so far.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.util.concurrent.atomic.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>DetectorReading</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class DetectorReading
+{
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final LongAdder		count;
+	private final DoubleAdder		intensity;
+	private final LongAdder[]		positions;
+	private final LongAdder[]		angles;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public DetectorReading()
+	{
+		count = new LongAdder();
+		intensity = new DoubleAdder();
+		positions = create(Detector.POSITION_BINS);
+		angles = create(Detector.ANGLE_BINS);
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the number of rays that hit the detector.
+	public long	getCount()
+	{
+		return count.sum();
+	}
+
+	// Gets the summed weights of the rays that hit the detector.
+	public double	getIntensity()
+	{
+		return intensity.sum();
+	}
+
+	// Gets the number of hits in each bin along the detector, bottom first.
+	public long[]	getPositionHistogram()
+	{
+		return sum(positions);
+	}
+
+	// Gets the number of hits in each bin of angles, from -90 degrees up.
+	public long[]	getAngleHistogram()
+	{
+		return sum(angles);
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Records a hit by a ray with a weight, at a position from 0.0 to 1.0
+	// and an angle from -90 to 90 degrees. Safe to call from any thread.
+	public void	record(double weight, double position, double angle)
+	{
+		count.increment();
+		intensity.add(weight);
+		positions[Detector.getPositionBin(position)].increment();
+		angles[Detector.getAngleBin(angle)].increment();
+	}
+
+	// Adds the hits of another reading (e.g. of another batch of rays).
+	public void	add(DetectorReading other)
+	{
+		count.add(other.getCount());
+		intensity.add(other.getIntensity());
+
+		long[]	p = other.getPositionHistogram();
+		long[]	a = other.getAngleHistogram();
+
+		for (int i = 0; i < p.length; i++)
+			positions[i].add(p[i]);
+
+		for (int i = 0; i < a.length; i++)
+			angles[i].add(a[i]);
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	private static LongAdder[]	create(int n)
+	{
+		LongAdder[]	adders = new LongAdder[n];
+
+		for (int i = 0; i < n; i++)
+			adders[i] = new LongAdder();
+
+		return adders;
+	}
+
+	private static long[]	sum(LongAdder[] adders)
+	{
+		long[]	sums = new long[adders.length];
+
+		for (int i = 0; i < adders.length; i++)
+			sums[i] = adders[i].sum();
+
+		return sums;
+	}
+}
+
+//******************************************************************************
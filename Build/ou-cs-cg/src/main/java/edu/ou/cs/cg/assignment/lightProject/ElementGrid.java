@@ -0,0 +1,239 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// A uniform grid over the bounding boxes of a fixed set of elements, used to
+// find the elements that overlap a rectangle without looking at all of them.
+// Each element is listed in every cell its box overlaps. The cell lists are
+// packed into one array (counting sort), so building is linear in the number
+// of elements and the grid holds no per-cell objects.
+//
+// An element spanning several cells is reported only from the first of its
+// cells inside the query (its "reference" cell), so queries need no visited
+// set and can run on any number of threads at once.
+//
+// Elements in assemblies are indexed through their top assembly, which the
+// grid treats like one large element. A query that hits an assembly collects
+// the elements from it (see SceneNode), skipping its parts outside the query.
+//
+// The grid keeps the boxes the nodes had when it was built. Callers that
+// move elements afterwards must check the moved elements themselves.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>ElementGrid</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class ElementGrid
+{
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final double	MIN_CELL = 80.0;	// About one element wide
+	private static final int		CELLS_PER_ELEMENT = 4;	// Caps the grid size
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final SceneNode[]		nodes;		// Top nodes of the scene
+	private final double[]			bounds;		// minX, minY, maxX, maxY each
+
+	private final Rectangle2D.Double	extent;		// Union of the boxes
+
+	private final double			x0;			// Grid origin
+	private final double			y0;
+	private final double			cell;		// Cell size
+	private final int				cols;
+	private final int				rows;
+
+	private final int[]			start;		// Start of each cell's list
+	private final int[]			items;		// Element indices by cell
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public ElementGrid(Collection<LightElement> scene)
+	{
+		nodes = getRoots(scene);
+
+		int	n = nodes.length;
+
+		bounds = new double[4 * n];
+
+		double	minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double	maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+		for (int i = 0; i < n; i++)
+		{
+			Rectangle2D.Double	r = nodes[i].getBounds();
+
+			bounds[4 * i] = r.x;
+			bounds[4 * i + 1] = r.y;
+			bounds[4 * i + 2] = r.x + r.width;
+			bounds[4 * i + 3] = r.y + r.height;
+
+			minX = Math.min(minX, r.x);
+			minY = Math.min(minY, r.y);
+			maxX = Math.max(maxX, r.x + r.width);
+			maxY = Math.max(maxY, r.y + r.height);
+		}
+
+		if (n == 0)
+		{
+			minX = minY = 0.0;
+			maxX = maxY = MIN_CELL;
+		}
+
+		// Grow the cells until the grid has at most a few cells per element
+		double	w = maxX - minX;
+		double	h = maxY - minY;
+		double	c = MIN_CELL;
+		long	limit = Math.max(1L, (long)CELLS_PER_ELEMENT * n);
+
+		while ((long)(Math.floor(w / c) + 1) * (long)(Math.floor(h / c) + 1) > limit)
+			c *= 2.0;
+
+		extent = new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+		x0 = minX;
+		y0 = minY;
+		cell = c;
+		cols = (int)Math.floor(w / c) + 1;
+		rows = (int)Math.floor(h / c) + 1;
+
+		// Count the entries per cell, then place them
+		start = new int[cols * rows + 1];
+
+		for (int i = 0; i < n; i++)
+			for (int cy = row(bounds[4 * i + 1]); cy <= row(bounds[4 * i + 3]); cy++)
+				for (int cx = col(bounds[4 * i]); cx <= col(bounds[4 * i + 2]); cx++)
+					start[cy * cols + cx + 1]++;
+
+		for (int k = 0; k < cols * rows; k++)
+			start[k + 1] += start[k];
+
+		int[]	fill = Arrays.copyOf(start, cols * rows);
+
+		items = new int[start[cols * rows]];
+
+		for (int i = 0; i < n; i++)
+			for (int cy = row(bounds[4 * i + 1]); cy <= row(bounds[4 * i + 3]); cy++)
+				for (int cx = col(bounds[4 * i]); cx <= col(bounds[4 * i + 2]); cx++)
+					items[fill[cy * cols + cx]++] = i;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Gets the number of top nodes (elements and top assemblies).
+	public int	size()
+	{
+		return nodes.length;
+	}
+
+	// Returns the union of the element boxes (a default cell if empty).
+	public Rectangle2D.Double	getBounds()
+	{
+		return new Rectangle2D.Double(extent.x, extent.y,
+									  extent.width, extent.height);
+	}
+
+	// Adds the elements whose boxes overlap the rectangle to the list, each
+	// one once.
+	public void	query(double minX, double minY, double maxX, double maxY,
+					  List<LightElement> out)
+	{
+		if (maxX < x0 || maxY < y0 ||
+			minX > x0 + cols * cell || minY > y0 + rows * cell)
+			return;
+
+		int	c0 = col(minX), c1 = col(maxX);
+		int	r0 = row(minY), r1 = row(maxY);
+
+		for (int cy = r0; cy <= r1; cy++)
+		{
+			for (int cx = c0; cx <= c1; cx++)
+			{
+				int	k = cy * cols + cx;
+
+				for (int j = start[k]; j < start[k + 1]; j++)
+				{
+					int	i = items[j];
+					int	b = 4 * i;
+
+					if (bounds[b] > maxX || bounds[b + 2] < minX ||
+						bounds[b + 1] > maxY || bounds[b + 3] < minY)
+						continue;
+
+					// Only report from the element's first cell in the query
+					if (Math.max(col(bounds[b]), c0) != cx ||
+						Math.max(row(bounds[b + 1]), r0) != cy)
+						continue;
+
+					if (nodes[i] instanceof LightElement)
+						out.add((LightElement)nodes[i]);
+					else
+						nodes[i].collect(minX, minY, maxX, maxY, out);
+				}
+			}
+		}
+	}
+
+	public void	query(Rectangle2D r, List<LightElement> out)
+	{
+		query(r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), out);
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// Lists the top nodes of the elements, each assembly once.
+	private static SceneNode[]	getRoots(Collection<LightElement> scene)
+	{
+		List<SceneNode>	roots = new ArrayList<SceneNode>(scene.size());
+		Set<SceneNode>		seen = Collections.newSetFromMap(
+			new IdentityHashMap<SceneNode, Boolean>());
+
+		for (LightElement le : scene)
+		{
+			if (le.getAssembly() == null)
+				roots.add(le);
+			else if (seen.add(le.getRoot()))
+				roots.add(le.getRoot());
+		}
+
+		return roots.toArray(new SceneNode[roots.size()]);
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	private int	col(double x)
+	{
+		return Math.max(0, Math.min(cols - 1, (int)Math.floor((x - x0) / cell)));
+	}
+
+	private int	row(double y)
+	{
+		return Math.max(0, Math.min(rows - 1, (int)Math.floor((y - y0) / cell)));
+	}
+}
+
+//******************************************************************************
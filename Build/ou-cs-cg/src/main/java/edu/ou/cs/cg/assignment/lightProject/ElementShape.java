@@ -0,0 +1,313 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// The shape of each type of element, shared by every element of that type
+// (flyweight). A shape is in local space, with the element's center at the
+// origin and no rotation, and never changes after it is built. It holds the
+// corner points, the tessellated lens curves and their Bezier control points,
+// the closed outline that light interacts with, the outward normal of each
+// side of the outline, and the outline's bounding box.
+//
+// An element itself only keeps its shape, center, rotation and parameters.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+//******************************************************************************
+
+/**
+ * The <CODE>ElementShape</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class ElementShape
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		CURVE_POINTS = 11;	// Points per lens face
+
+	public static final ElementShape	LIGHTBOX = new ElementShape("Lightbox",
+		box(25.0, 25.0), null, null, null, 0.0);
+
+	public static final ElementShape	MIRROR = new ElementShape("Mirror",
+		box(5.0, 30.0), null, null, null, 0.0);
+
+	public static final ElementShape	DETECTOR = new ElementShape("Detector",
+		box(3.0, 30.0), null, null, null, 0.0);
+
+	public static final ElementShape	PRISM = new ElementShape("Prism",
+		new Point2D.Double[] { new Point2D.Double(-25.0, -25.0),
+							   new Point2D.Double(25.0, -25.0), null, null },
+		new Point2D.Double(0.0, 25.0), null, null, 0.0);
+
+	public static final ElementShape	CONVEX = new ElementShape("Convex",
+		box(5.0, 30.0), null,
+		new Point2D.Double[] { new Point2D.Double(5.0, -30.0),
+							   new Point2D.Double(15.0, 0.0),
+							   new Point2D.Double(5.0, 30.0) },
+		new Point2D.Double[] { new Point2D.Double(-5.0, 30.0),
+							   new Point2D.Double(-15.0, 0.0),
+							   new Point2D.Double(-5.0, -30.0) },
+		30.0);
+
+	public static final ElementShape	CONCAVE = new ElementShape("Concave",
+		box(10.0, 30.0), null,
+		new Point2D.Double[] { new Point2D.Double(10.0, -30.0),
+							   new Point2D.Double(0.0, 0.0),
+							   new Point2D.Double(10.0, 30.0) },
+		new Point2D.Double[] { new Point2D.Double(-10.0, 30.0),
+							   new Point2D.Double(0.0, 0.0),
+							   new Point2D.Double(-10.0, -30.0) },
+		30.0);
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final String				type;
+	private final Point2D.Double		bl;
+	private final Point2D.Double		br;
+	private final Point2D.Double		tr;
+	private final Point2D.Double		tl;
+	private final Point2D.Double		t;
+	private final Point2D.Double[]		rCtrl;		// Right face, bottom to top
+	private final Point2D.Double[]		lCtrl;		// Left face, top to bottom
+	private final Point2D.Double[]		rCurve;
+	private final Point2D.Double[]		lCurve;
+	private final double				focalLength;
+
+	private final Point2D.Double[]		outline;	// Counterclockwise
+	private final double[]				normals;	// Outward, x and y per side
+	private final Rectangle2D.Double	bounds;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	private ElementShape(String type, Point2D.Double[] corners,
+						 Point2D.Double t, Point2D.Double[] rCtrl,
+						 Point2D.Double[] lCtrl, double focalLength)
+	{
+		this.type = type;
+		bl = corners[0];
+		br = corners[1];
+		tr = corners[2];
+		tl = corners[3];
+		this.t = t;
+		this.rCtrl = rCtrl;
+		this.lCtrl = lCtrl;
+		this.focalLength = focalLength;
+
+		rCurve = ((rCtrl != null) ? tessellate(rCtrl) : null);
+		lCurve = ((lCtrl != null) ? tessellate(lCtrl) : null);
+
+		// Go around counterclockwise from the bottom left corner
+		if (t != null)
+		{
+			outline = new Point2D.Double[] { bl, br, t };
+		}
+		else if (rCurve != null)
+		{
+			outline = new Point2D.Double[4 + rCurve.length + lCurve.length];
+
+			int	k = 0;
+
+			outline[k++] = bl;
+			outline[k++] = br;
+
+			for (Point2D.Double p : rCurve)
+				outline[k++] = p;
+
+			outline[k++] = tr;
+			outline[k++] = tl;
+
+			for (Point2D.Double p : lCurve)
+				outline[k++] = p;
+		}
+		else
+		{
+			outline = new Point2D.Double[] { bl, br, tr, tl };
+		}
+
+		// Sides with no length (where a curve meets a corner) get no normal
+		normals = new double[2 * outline.length];
+
+		double	minX = 0.0, minY = 0.0, maxX = 0.0, maxY = 0.0;
+
+		for (int i = 0; i < outline.length; i++)
+		{
+			Point2D.Double	a = outline[i];
+			Point2D.Double	b = outline[(i + 1) % outline.length];
+			double			nn = a.distance(b);
+
+			if (nn > 0.0)
+			{
+				normals[2 * i] = (b.y - a.y) / nn;
+				normals[2 * i + 1] = (a.x - b.x) / nn;
+			}
+
+			minX = Math.min(minX, a.x);
+			minY = Math.min(minY, a.y);
+			maxX = Math.max(maxX, a.x);
+			maxY = Math.max(maxY, a.y);
+		}
+
+		bounds = new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Gets the shape for an element type.
+	public static ElementShape	get(String type)
+	{
+		switch (type)
+		{
+			case "Lightbox":
+				return LIGHTBOX;
+			case "Mirror":
+				return MIRROR;
+			case "Detector":
+				return DETECTOR;
+			case "Prism":
+				return PRISM;
+			case "Convex":
+				return CONVEX;
+			case "Concave":
+				return CONCAVE;
+			default:
+				throw new IllegalArgumentException("Unknown element type " + type);
+		}
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// None of the points or arrays returned may be modified.
+
+	public String	getType()
+	{
+		return type;
+	}
+
+	public Point2D.Double	getBl()
+	{
+		return bl;
+	}
+
+	public Point2D.Double	getBr()
+	{
+		return br;
+	}
+
+	public Point2D.Double	getTr()
+	{
+		return tr;
+	}
+
+	public Point2D.Double	getTl()
+	{
+		return tl;
+	}
+
+	public Point2D.Double	getT()
+	{
+		return t;
+	}
+
+	public Point2D.Double[]	getRCtrl()
+	{
+		return rCtrl;
+	}
+
+	public Point2D.Double[]	getLCtrl()
+	{
+		return lCtrl;
+	}
+
+	public Point2D.Double[]	getRCurve()
+	{
+		return rCurve;
+	}
+
+	public Point2D.Double[]	getLCurve()
+	{
+		return lCurve;
+	}
+
+	public double	getFocalLength()
+	{
+		return focalLength;
+	}
+
+	public Point2D.Double[]	getOutline()
+	{
+		return outline;
+	}
+
+	// Outward unit normal of side i (from outline point i to i + 1)
+	public double	getNormalX(int i)
+	{
+		return normals[2 * i];
+	}
+
+	public double	getNormalY(int i)
+	{
+		return normals[2 * i + 1];
+	}
+
+	public Rectangle2D.Double	getBounds()
+	{
+		return new Rectangle2D.Double(bounds.x, bounds.y,
+									  bounds.width, bounds.height);
+	}
+
+	public boolean	contains(double x, double y)
+	{
+		return bounds.contains(x, y);
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// The corners of a box around the origin, in bl, br, tr, tl order.
+	private static Point2D.Double[]	box(double w, double h)
+	{
+		return new Point2D.Double[] { new Point2D.Double(-w, -h),
+									  new Point2D.Double(w, -h),
+									  new Point2D.Double(w, h),
+									  new Point2D.Double(-w, h) };
+	}
+
+	// Samples a quadratic Bezier curve at eleven evenly spaced parameters.
+	private static Point2D.Double[]	tessellate(Point2D.Double[] ctrl)
+	{
+		Point2D.Double[]	curve = new Point2D.Double[CURVE_POINTS];
+		int				i;
+		double				t;
+
+		for (i = 0, t = 0; i < CURVE_POINTS && t < 1.1; i++, t = t + 0.1)
+			curve[i] = new Point2D.Double(
+				Math.pow((1 - t), 2) * ctrl[0].x + 2 * t * (1 - t) * ctrl[1].x +
+				Math.pow(t, 2) * ctrl[2].x,
+				Math.pow((1 - t), 2) * ctrl[0].y + 2 * t * (1 - t) * ctrl[1].y +
+				Math.pow(t, 2) * ctrl[2].y);
+
+		return curve;
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,324 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Accumulates where light goes, to show focal spots and caustics. The map is
+// a grid of square cells over a rectangle of the scene, e.g. the world the
+// rays are traced in (see Tracer.getWorld()). Each segment of a beam path
+// adds the ray's weight times the segment's length to the cells it crosses,
+// sampled every half cell. A cell's total is then proportional to the light
+// passing through it.
+//
+// The cells are CELL wide, or wider if that would take more than about CELLS
+// of them to cover the rectangle, so the memory use is bounded however large
+// the scene is and however many rays are added. A scene that fits the
+// original screen gets 4-unit cells.
+//
+// Paths are splatted in parallel. Each task rasterizes its share of the
+// paths into its own tile (a private copy of the grid). The tiles are then
+// merged by tasks that each own a separate band of cells, so no two threads
+// ever write the same cell and no locks or atomics are needed.
+//
+// Splatting adds to what is there, so new rays can be added as they arrive;
+// clear() starts over (e.g. when the scene changes). A map belongs to the
+// thread that splats it.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Rectangle2D;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>HeatMap</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class HeatMap
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final double		CELL = 4.0;		// Least cell size
+	public static final int		CELLS = 320 * 180;	// Most cells
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final int		BAND = 4096;	// Cells per merge task
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private double					x;			// Bottom left corner
+	private double					y;
+	private double					size;		// Of a cell
+	private int					cols;
+	private int					rows;
+	private float[]				cells;		// Row by row, from the bottom
+	private final float[][]		tiles;		// One per splatting task
+	private float					max;		// Largest cell value
+	private int					version;	// Counts changes to the map
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Makes a map over the original scene area.
+	public HeatMap()
+	{
+		this(new Rectangle2D.Double(0.0, 0.0, Camera.WIDTH, Camera.HEIGHT));
+	}
+
+	public HeatMap(Rectangle2D bounds)
+	{
+		tiles = new float[ForkJoinPool.getCommonPoolParallelism()][];
+		version = 0;
+
+		setBounds(bounds);
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the area the cells cover, which may reach a little past the
+	// bounds it was given.
+	public Rectangle2D.Double	getBounds()
+	{
+		return new Rectangle2D.Double(x, y, cols * size, rows * size);
+	}
+
+	public double	getCellSize()
+	{
+		return size;
+	}
+
+	public int	getColumns()
+	{
+		return cols;
+	}
+
+	public int	getRows()
+	{
+		return rows;
+	}
+
+	// Gets the total of the cell in a column and row.
+	public float	get(int col, int row)
+	{
+		return cells[row * cols + col];
+	}
+
+	public float	getMax()
+	{
+		return max;
+	}
+
+	// Gets a number that changes whenever the map does.
+	public int	getVersion()
+	{
+		return version;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Covers a new area with cells, starting over.
+	public void	setBounds(Rectangle2D bounds)
+	{
+		double	w = Math.max(bounds.getWidth(), CELL);
+		double	h = Math.max(bounds.getHeight(), CELL);
+
+		x = bounds.getX();
+		y = bounds.getY();
+		// About CELLS cells, however long and thin the area is
+		size = Math.max(Math.max(CELL, Math.sqrt(w * h / CELLS)),
+						Math.max(w, h) / CELLS);
+		cols = Math.max(1, (int)Math.ceil(w / size));
+		rows = Math.max(1, (int)Math.ceil(h / size));
+		cells = new float[cols * rows];
+		max = 0.0f;
+		version++;
+
+		// The tiles are made again, at the new size, when next needed
+		Arrays.fill(tiles, null);
+	}
+
+	public void	clear()
+	{
+		Arrays.fill(cells, 0.0f);
+		max = 0.0f;
+		version++;
+	}
+
+	// Adds the light along the paths to the map.
+	public void	splat(final List<BeamPath> paths)
+	{
+		if (paths.isEmpty())
+			return;
+
+		int					n = Math.min(tiles.length, paths.size());
+		final List<Splat>	splats = new ArrayList<Splat>(n);
+
+		for (int i = 0; i < n; i++)
+		{
+			if (tiles[i] == null)
+				tiles[i] = new float[cells.length];
+
+			splats.add(new Splat(paths, i, n, tiles[i]));
+		}
+
+		final List<Merge>	merges = new ArrayList<Merge>();
+
+		for (int i = 0; i < cells.length; i += BAND)
+			merges.add(new Merge(i, Math.min(cells.length, i + BAND), n));
+
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+				protected void	compute() {
+					invokeAll(splats);
+					invokeAll(merges);
+				}
+			});
+
+		for (Merge merge : merges)
+			max = Math.max(max, merge.max);
+
+		version++;
+	}
+
+	// Writes the map into a buffer of RGBA bytes, row by row from the bottom,
+	// colored from transparent black through red and yellow to white. The
+	// colors follow the log of the cell totals, relative to the largest.
+	public void	toRGBA(ByteBuffer out)
+	{
+		double	scale = ((max > 0.0f) ? 1.0 / Math.log1p(max) : 0.0);
+
+		out.clear();
+
+		for (float v : cells)
+		{
+			double	t = Math.log1p(v) * scale;
+
+			out.put((byte)(255.0 * Math.min(1.0, 3.0 * t)));
+			out.put((byte)(255.0 * Math.max(0.0, Math.min(1.0, 3.0 * t - 1.0))));
+			out.put((byte)(255.0 * Math.max(0.0, Math.min(1.0, 3.0 * t - 2.0))));
+			out.put((byte)(255.0 * Math.min(1.0, 2.0 * t)));
+		}
+
+		out.flip();
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	// Adds the light along a segment to a tile.
+	private void	rasterize(float[] tile, double x0, double y0,
+							  double x1, double y1, double weight)
+	{
+		double	length = Math.hypot(x1 - x0, y1 - y0);
+		int		samples = (int)Math.ceil(2.0 * length / size);
+
+		if (samples == 0)
+			return;
+
+		float	share = (float)(weight * length / samples);
+
+		for (int k = 0; k < samples; k++)
+		{
+			double	t = (k + 0.5) / samples;
+			int		col = (int)Math.floor((x0 + (x1 - x0) * t - x) / size);
+			int		row = (int)Math.floor((y0 + (y1 - y0) * t - y) / size);
+
+			if (col >= 0 && col < cols && row >= 0 && row < rows)
+				tile[row * cols + col] += share;
+		}
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// Rasterizes every n-th path, starting from the i-th, into a tile.
+	private final class Splat extends RecursiveAction
+	{
+		private static final long	serialVersionUID = 1L;
+
+		private final List<BeamPath>	paths;
+		private final int				first;
+		private final int				stride;
+		private final float[]			tile;
+
+		public Splat(List<BeamPath> paths, int first, int stride, float[] tile)
+		{
+			this.paths = paths;
+			this.first = first;
+			this.stride = stride;
+			this.tile = tile;
+		}
+
+		protected void	compute()
+		{
+			for (int i = first; i < paths.size(); i += stride)
+			{
+				BeamPath	path = paths.get(i);
+				double		weight = path.getRay().getWeight();
+
+				for (int j = 1; j < path.size(); j++)
+					rasterize(tile, path.getX(j - 1), path.getY(j - 1),
+							  path.getX(j), path.getY(j), weight);
+			}
+		}
+	}
+
+	// Adds a band of cells from the first n tiles into the map, clearing
+	// them for next time.
+	private final class Merge extends RecursiveAction
+	{
+		private static final long	serialVersionUID = 1L;
+
+		private final int		start;
+		private final int		end;
+		private final int		n;
+		private float			max;
+
+		public Merge(int start, int end, int n)
+		{
+			this.start = start;
+			this.end = end;
+			this.n = n;
+		}
+
+		protected void	compute()
+		{
+			for (int c = start; c < end; c++)
+			{
+				float	sum = cells[c];
+
+				for (int i = 0; i < n; i++)
+				{
+					sum += tiles[i][c];
+					tiles[i][c] = 0.0f;
+				}
+
+				cells[c] = sum;
+				max = Math.max(max, sum);
+			}
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,741 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Keeps the versions of the scene for undo and redo. A version is a
+// persistent (immutable) treap of the scene's elements, each with its pose
+// in world space as of that version, keyed by the element's place in the
+// scene. Versions share every part of the tree that didn't change between
+// them: moving or rotating an element copies just the path down to it, so
+// a step costs O(log n) memory however big the scene is. Replacing the whole
+// scene (a load, a clear, a transaction) builds a new tree in O(n).
+//
+// Like the autosave, the history is told which elements changed, as they
+// change, and copies their poses into a new version when the model commits
+// a step (once per edit, or once per drag). Stepping to another version puts
+// the elements back where it has them and lists them in its order; elements
+// that aren't in it are taken out of the scene. Only the parts of the two
+// trees that differ are visited, so a step takes time for what it changed,
+// not for the size of the scene. The element objects stay the same, so the
+// detectors keep their readings. Versions hold poses and membership, not
+// assemblies: grouping isn't a step, and groups stay as they are when
+// stepping.
+//
+// The keys follow the order of the scene, whose last element is the selected
+// one. New elements get keys above the rest; cycling through the elements
+// gives the one that moves to the front or back a key below or above the
+// rest (see reorder()). Cycling isn't a step either: it changes the order of
+// the current version, so each version keeps the order, and so the
+// selection, that the scene had when it was last current.
+//
+// Each version can also keep the trace of its scene, so stepping back and
+// forth shows the beams at once instead of tracing again. The traces are in
+// an LRU cache bounded by the rays they hold, and through soft references,
+// so the collector can drop them when memory runs short. Versions are
+// dropped oldest first once the nodes made for them pass MAX_NODES.
+//
+// Use a history on the JOGL thread only.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.lang.ref.SoftReference;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>History</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class History
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		MAX_STEPS = 500;			// To undo, at most
+	public static final long		MAX_NODES = 1000000L;		// Made for them
+	public static final long		MAX_RAYS = 32L * RayTree.MAX_NODES;	// Cached
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final Deque<Version>				undo;		// Oldest first
+	private final Deque<Version>				redo;		// Next last
+	private Version							current;
+	private long								nodes;		// Made for all
+
+	// Changes since the last commit. The working tree is the current one,
+	// or a new one from a reset; the changed elements map to whether they
+	// are still in the scene.
+	private Node								working;
+	private boolean							replaced;
+	private final Map<LightElement, Boolean>	changed;	// In order
+	private final Map<LightElement, Long>		keys;
+	private long								firstKey;	// Below all keys
+	private long								nextKey;	// Above all keys
+	private long								made;		// Nodes, this step
+
+	// Traces of the versions, least recently used first
+	private final LinkedHashMap<Version, CachedTrace>	traces;
+	private long										rays;	// In them
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public History(Collection<LightElement> scene)
+	{
+		undo = new ArrayDeque<Version>();
+		redo = new ArrayDeque<Version>();
+
+		changed = new LinkedHashMap<LightElement, Boolean>();
+		keys = new IdentityHashMap<LightElement, Long>();
+		firstKey = 0L;
+		nextKey = 0L;
+		made = 0L;
+
+		traces = new LinkedHashMap<Version, CachedTrace>(16, 0.75f, true);
+		rays = 0L;
+
+		reset(scene);
+		current = new Version(working, made);
+		nodes = made;
+		made = 0L;
+		replaced = false;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the version the scene was at when last committed or stepped to.
+	public Version	getCurrent()
+	{
+		return current;
+	}
+
+	// Checks if the scene has changed since the current version.
+	public boolean	isDirty()
+	{
+		return (replaced || !changed.isEmpty());
+	}
+
+	public int	getUndoCount()
+	{
+		return undo.size();
+	}
+
+	public int	getRedoCount()
+	{
+		return redo.size();
+	}
+
+	// Gets the trace kept for a version, or null if there is none (any more).
+	public Trace	getTrace(Version version)
+	{
+		CachedTrace	cached = traces.get(version);
+
+		if (cached == null)
+			return null;
+
+		Trace	trace = cached.get();
+
+		if (trace == null)
+			forget(version);
+
+		return trace;
+	}
+
+	// Keeps the trace of a version, dropping the least recently used traces
+	// while there are more than MAX_RAYS rays in all.
+	public void	setTrace(Version version, Trace trace)
+	{
+		forget(version);
+
+		traces.put(version, new CachedTrace(trace));
+		rays += trace.tree.getNodeCount();
+
+		Iterator<CachedTrace>	it = traces.values().iterator();
+
+		while (rays > MAX_RAYS && traces.size() > 1)
+		{
+			rays -= it.next().rays;
+			it.remove();
+		}
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Notes that an element was added to the end of the scene, or moved or
+	// rotated.
+	public void	put(LightElement le)
+	{
+		changed.put(le, Boolean.TRUE);
+	}
+
+	public void	putAll(Collection<LightElement> elements)
+	{
+		for (LightElement le : elements)
+			put(le);
+	}
+
+	// Notes that an element was taken out of the scene.
+	public void	remove(LightElement le)
+	{
+		changed.put(le, Boolean.FALSE);
+	}
+
+	// Notes that the scene was replaced by these elements.
+	public void	reset(Collection<LightElement> elements)
+	{
+		List<Node>	list = new ArrayList<Node>(elements.size());
+
+		keys.clear();
+		changed.clear();
+
+		for (LightElement le : elements)
+		{
+			keys.put(le, nextKey);
+			list.add(new Node(nextKey++, le));
+			made++;
+		}
+
+		working = build(list);
+		replaced = true;
+	}
+
+	// Makes the changes since the last commit into a new version, which can
+	// be undone. Anything that could be redone is forgotten. Returns false
+	// if nothing changed.
+	public boolean	commit()
+	{
+		if (!isDirty())
+			return false;
+
+		Node	root = working;
+
+		// Many changes at once (e.g. an import) are cheaper to make by
+		// building a new tree, in O(n), than by copying a path for each
+		long	n = keys.size() + 1L;
+
+		if (changed.size() * (64L - Long.numberOfLeadingZeros(n)) > n)
+			root = rebuild(root);
+
+		for (Map.Entry<LightElement, Boolean> e : changed.entrySet())
+		{
+			LightElement	le = e.getKey();
+			Long			key = keys.get(le);
+
+			if (e.getValue())
+			{
+				if (key == null)
+				{
+					key = nextKey++;
+					keys.put(le, key);
+				}
+
+				root = put(root, new Node(key, le));
+				made++;
+			}
+			else if (key != null)
+			{
+				keys.remove(le);
+				root = remove(root, key);
+			}
+		}
+
+		changed.clear();
+		replaced = false;
+		working = root;
+
+		if (root == current.root)
+			return false;
+
+		undo.addLast(current);
+		current = new Version(root, made);
+		nodes += current.cost;
+		made = 0L;
+
+		while (!redo.isEmpty())
+			drop(redo.removeLast());
+
+		trim();
+
+		return true;
+	}
+
+	// Notes that an element was moved to the front (or the back) of the
+	// scene, changing the order of the current version. Commit the changes
+	// before, so that the order is all that changes.
+	public void	reorder(LightElement le, boolean first)
+	{
+		Long	key = keys.get(le);
+
+		if (key == null || isDirty())
+			return;
+
+		long	to = (first ? --firstKey : nextKey++);
+
+		keys.put(le, to);
+		working = put(remove(working, key), new Node(to, le));
+		made++;
+
+		current.root = working;
+		current.cost += made;
+		nodes += made;
+		made = 0L;
+
+		trim();
+	}
+
+	// Steps back to the version before the current one, putting the scene's
+	// elements back as they were then. Returns false if there is none.
+	public boolean	undo(Deque<LightElement> scene, List<LightElement> moved,
+						 List<LightElement> removed)
+	{
+		if (undo.isEmpty())
+			return false;
+
+		redo.addLast(current);
+		current = undo.removeLast();
+		restore(scene, moved, removed);
+
+		return true;
+	}
+
+	// Steps forward to the version that was last undone.
+	public boolean	redo(Deque<LightElement> scene, List<LightElement> moved,
+						 List<LightElement> removed)
+	{
+		if (redo.isEmpty())
+			return false;
+
+		undo.addLast(current);
+		current = redo.removeLast();
+		restore(scene, moved, removed);
+
+		return true;
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	// Makes the scene match the current version, adding the elements that
+	// were moved or brought back to moved, and those taken out to removed.
+	// Only the parts of the trees that differ are visited, so a step that
+	// moved a few elements costs O(log n) each. The scene is listed again
+	// only if elements came or went.
+	private void	restore(Deque<LightElement> scene, List<LightElement> moved,
+							List<LightElement> removed)
+	{
+		List<Node>	gone = new ArrayList<Node>();
+		List<Node>	come = new ArrayList<Node>();
+		List<Node>	same = new ArrayList<Node>();
+
+		diff(working, current.root, gone, come, same);
+
+		for (Node n : same)
+			if (place(n))
+				moved.add(n.element);
+
+		if (!gone.isEmpty() || !come.isEmpty())
+		{
+			// An element can be in both, under another key after a reset
+			Map<LightElement, Long>	left =
+				new IdentityHashMap<LightElement, Long>();
+
+			for (Node n : gone)
+				left.put(n.element, n.key);
+
+			for (Node n : come)
+			{
+				LightElement	le = n.element;
+				boolean		back = (left.remove(le) == null);
+
+				if (place(n) || back)
+					moved.add(le);
+
+				keys.put(le, n.key);
+			}
+
+			for (LightElement le : left.keySet())
+			{
+				if (le.getAssembly() != null)
+					le.getAssembly().remove(le);
+
+				keys.remove(le);
+				removed.add(le);
+			}
+
+			List<Node>	list = new ArrayList<Node>(keys.size());
+
+			collect(current.root, list);
+			scene.clear();
+
+			for (Node n : list)
+				scene.add(n.element);
+		}
+
+		working = current.root;
+		made = 0L;
+		changed.clear();
+		replaced = false;
+	}
+
+	// Puts an element where a node has it. Returns false if it was there.
+	private boolean	place(Node n)
+	{
+		LightElement	le = n.element;
+		Point2D.Double	c = le.getCenter();
+
+		if (c.x == n.x && c.y == n.y && le.getRotation() == n.rotation)
+			return false;
+
+		le.moveTo(n.x, n.y);
+		le.setRotation(n.rotation - le.getRotation());
+
+		return true;
+	}
+
+	// Lists the nodes with keys only in an old tree, those only in a new one,
+	// and the new nodes of keys in both that aren't shared. Subtrees that the
+	// trees share are skipped.
+	private void	diff(Node a, Node b, List<Node> gone, List<Node> come,
+						 List<Node> same)
+	{
+		if (a == b)
+			return;
+
+		if (a == null)
+		{
+			collect(b, come);
+			return;
+		}
+
+		if (b == null)
+		{
+			collect(a, gone);
+			return;
+		}
+
+		if (a.key == b.key)
+		{
+			same.add(b);
+			diff(a.left, b.left, gone, come, same);
+			diff(a.right, b.right, gone, come, same);
+			return;
+		}
+
+		// Cut the new tree around the old root's key, and match the sides
+		Node[]	parts = new Node[2];
+		Node	below;
+
+		split(b, a.key, parts);
+		below = parts[0];
+		split(parts[1], a.key + 1L, parts);
+
+		if (parts[0] != null)
+			same.add(parts[0]);
+		else
+			gone.add(a);
+
+		diff(a.left, below, gone, come, same);
+		diff(a.right, parts[1], gone, come, same);
+	}
+
+	// Builds a new tree from a tree with the changes made to it, and leaves
+	// no changes to make.
+	private Node	rebuild(Node root)
+	{
+		List<Node>	old = new ArrayList<Node>(keys.size());
+		List<Node>	list = new ArrayList<Node>(keys.size() + changed.size());
+
+		collect(root, old);
+
+		for (Node n : old)
+		{
+			Boolean	put = changed.remove(n.element);
+
+			if (put == null)
+				list.add(new Node(n));
+			else if (put)
+				list.add(new Node(n.key, n.element));
+			else
+				keys.remove(n.element);
+		}
+
+		// What is left is new, and goes after the rest in order
+		for (Map.Entry<LightElement, Boolean> e : changed.entrySet())
+		{
+			if (!e.getValue() || keys.containsKey(e.getKey()))
+				continue;
+
+			keys.put(e.getKey(), nextKey);
+			list.add(new Node(nextKey++, e.getKey()));
+		}
+
+		changed.clear();
+		made += list.size();
+
+		return build(list);
+	}
+
+	// Drops the oldest versions while there are too many, or they hold too
+	// many nodes.
+	private void	trim()
+	{
+		while (undo.size() > MAX_STEPS || (nodes > MAX_NODES && !undo.isEmpty()))
+			drop(undo.removeFirst());
+	}
+
+	private void	drop(Version version)
+	{
+		nodes -= version.cost;
+		forget(version);
+	}
+
+	private void	forget(Version version)
+	{
+		CachedTrace	cached = traces.remove(version);
+
+		if (cached != null)
+			rays -= cached.rays;
+	}
+
+	// Adds or replaces the node with the key of a new node, copying the path
+	// down to it.
+	private Node	put(Node t, Node n)
+	{
+		if (t == null)
+			return n;
+
+		if (n.key == t.key)
+		{
+			n.left = t.left;
+			n.right = t.right;
+
+			return n;
+		}
+
+		if (n.priority > t.priority)
+		{
+			Node[]	parts = new Node[2];
+
+			split(t, n.key, parts);
+			n.left = parts[0];
+			n.right = parts[1];
+
+			return n;
+		}
+
+		if (n.key < t.key)
+			return copy(t, put(t.left, n), t.right);
+		else
+			return copy(t, t.left, put(t.right, n));
+	}
+
+	private Node	remove(Node t, long key)
+	{
+		if (t == null)
+			return null;
+
+		if (key < t.key)
+		{
+			Node	left = remove(t.left, key);
+
+			return ((left == t.left) ? t : copy(t, left, t.right));
+		}
+
+		if (key > t.key)
+		{
+			Node	right = remove(t.right, key);
+
+			return ((right == t.right) ? t : copy(t, t.left, right));
+		}
+
+		return merge(t.left, t.right);
+	}
+
+	// Splits a tree into the nodes with keys below a key and those above it.
+	private void	split(Node t, long key, Node[] parts)
+	{
+		if (t == null)
+		{
+			parts[0] = null;
+			parts[1] = null;
+		}
+		else if (t.key < key)
+		{
+			split(t.right, key, parts);
+			parts[0] = copy(t, t.left, parts[0]);
+		}
+		else
+		{
+			split(t.left, key, parts);
+			parts[1] = copy(t, parts[1], t.right);
+		}
+	}
+
+	// Joins two trees, all of the keys in the first below those in the second.
+	private Node	merge(Node a, Node b)
+	{
+		if (a == null)
+			return b;
+
+		if (b == null)
+			return a;
+
+		if (a.priority > b.priority)
+			return copy(a, a.left, merge(a.right, b));
+		else
+			return copy(b, merge(a, b.left), b.right);
+	}
+
+	private Node	copy(Node n, Node left, Node right)
+	{
+		Node	c = new Node(n);
+
+		c.left = left;
+		c.right = right;
+		made++;
+
+		return c;
+	}
+
+	// Builds a tree from new nodes in key order, in O(n): each node goes on
+	// the right spine, taking the nodes of lower priority below it as its left.
+	private Node	build(List<Node> list)
+	{
+		Deque<Node>	spine = new ArrayDeque<Node>();
+
+		for (Node n : list)
+		{
+			Node	last = null;
+
+			while (!spine.isEmpty() && spine.peek().priority < n.priority)
+				last = spine.pop();
+
+			n.left = last;
+
+			if (!spine.isEmpty())
+				spine.peek().right = n;
+
+			spine.push(n);
+		}
+
+		return spine.peekLast();
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// Lists the nodes of a tree in key order.
+	private static void	collect(Node t, List<Node> list)
+	{
+		while (t != null)
+		{
+			collect(t.left, list);
+			list.add(t);
+			t = t.right;
+		}
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// A version of the scene. Versions are only compared by identity. Only
+	// the order of the current one can change (see reorder()).
+	public static final class Version
+	{
+		private Node	root;
+		private long	cost;		// Nodes made for it
+
+		private Version(Node root, long cost)
+		{
+			this.root = root;
+			this.cost = cost;
+		}
+	}
+
+	// The trace of a version's scene, with its paths for playback, and how
+	// it was traced.
+	public static final class Trace
+	{
+		public final RayTree			tree;
+		public final List<BeamPath>	paths;
+		public final boolean			paraxial;
+		public final double			factor;
+
+		public Trace(RayTree tree, List<BeamPath> paths, boolean paraxial,
+					 double factor)
+		{
+			this.tree = tree;
+			this.paths = paths;
+			this.paraxial = paraxial;
+			this.factor = factor;
+		}
+	}
+
+	private static final class CachedTrace extends SoftReference<Trace>
+	{
+		private final int	rays;
+
+		public CachedTrace(Trace trace)
+		{
+			super(trace);
+			rays = trace.tree.getNodeCount();
+		}
+	}
+
+	// An element and its pose in world space, in a version. The children are
+	// only set while a node is new, before it is in a version.
+	private static final class Node
+	{
+		private final long			key;
+		private final int			priority;
+		private final LightElement	element;
+		private final double		x;
+		private final double		y;
+		private final double		rotation;
+		private Node				left;
+		private Node				right;
+
+		public Node(long key, LightElement le)
+		{
+			Point2D.Double	c = le.getCenter();
+
+			this.key = key;
+			priority = (int)((key * 0x9E3779B97F4A7C15L) >>> 32);
+			element = le;
+			x = c.x;
+			y = c.y;
+			rotation = le.getRotation();
+		}
+
+		public Node(Node n)
+		{
+			key = n.key;
+			priority = n.priority;
+			element = n.element;
+			x = n.x;
+			y = n.y;
+			rotation = n.rotation;
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,516 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// A recorded session of keyboard and mouse input, for replaying it later (see
+// Replay). Each event is one that the KeyHandler or MouseHandler acts on,
+// with the time since recording started. The log also holds the state the
+// session started from (the scene, camera, light and lens mode, and the
+// canvas size), since the same input only does the same thing from there.
+//
+// The file is laid out as follows (all values big-endian):
+//
+//     header      int magic ("LPIN"), short version, short reserved,
+//                 int width, int height
+//     state       UTF status, byte flags (1 light, 2 paraxial),
+//                 double camera x, y and zoom, int element count,
+//                 per element: byte type id, double x, y, rotation
+//     events      int event count, then per event: varint time since the
+//                 previous event in microseconds, byte kind, varint
+//                 modifiers (InputEvent extended modifiers), then
+//                     KEY         varint key code
+//                     mouse       zigzag varint x, y
+//                     buttons     the same, then varint button
+//                     WHEEL       the same as mouse, then zigzag varint
+//                                 rotation, double precise rotation
+//
+// Type ids are those of SceneArchive. Elements are stored in world space,
+// out of any assemblies. Mouse moves make up most of a session, and take
+// about 8 bytes each.
+//
+// The recorder keeps the log in memory and writes it when recording stops,
+// so nothing is written on the event thread while recording. It ignores the
+// R key, which starts and stops recording and replays.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.Component;
+import java.awt.event.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>InputLog</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class InputLog
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		MAGIC = 0x4C50494E;		// "LPIN"
+	public static final short		VERSION = 1;
+	public static final String		FILE = "lightProject.input";	// Default
+
+	// Kinds of event, by the handler method they go to
+	public static final byte		KEY = 0;		// keyPressed
+	public static final byte		CLICK = 1;		// mouseClicked
+	public static final byte		ENTER = 2;		// mouseEntered
+	public static final byte		EXIT = 3;		// mouseExited
+	public static final byte		PRESS = 4;		// mousePressed
+	public static final byte		RELEASE = 5;	// mouseReleased
+	public static final byte		DRAG = 6;		// mouseDragged
+	public static final byte		MOVE = 7;		// mouseMoved
+	public static final byte		WHEEL = 8;		// mouseWheelMoved
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final State			state;
+	private final List<Event>		events;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public InputLog(State state, List<Event> events)
+	{
+		this.state = state;
+		this.events = events;
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Reads a log. A log cut short is read up to the last whole event.
+	public static InputLog	read(Path path) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(path))))
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException(path + " is not an input log");
+
+			short	version = in.readShort();
+
+			if (version > VERSION)
+				throw new IOException(path + " has newer version " + version);
+
+			in.readShort();
+
+			State			state = readState(in);
+			int			count = in.readInt();
+			List<Event>	events = new ArrayList<Event>(Math.min(count, 1 << 16));
+			long			time = 0L;
+
+			try
+			{
+				for (int i = 0; i < count; i++)
+				{
+					Event	e = readEvent(in, time);
+
+					events.add(e);
+					time = e.time;
+				}
+			}
+			catch (EOFException ex)
+			{
+				System.err.println(path + " ends after " + events.size() +
+								   " of " + count + " events");
+			}
+
+			return new InputLog(state, events);
+		}
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public State	getState()
+	{
+		return state;
+	}
+
+	public List<Event>	getEvents()
+	{
+		return events;
+	}
+
+	// Gets the time of the last event, in microseconds from the start.
+	public long	getDuration()
+	{
+		return (events.isEmpty() ? 0L : events.get(events.size() - 1).time);
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	public void	write(Path path) throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(path))))
+		{
+			ByteArrayOutputStream	packed = new ByteArrayOutputStream();
+			DataOutputStream		data = new DataOutputStream(packed);
+			long					time = 0L;
+
+			for (Event e : events)
+			{
+				writeEvent(data, e, time);
+				time = e.time;
+			}
+
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			writeState(out, state);
+			out.writeInt(events.size());
+			packed.writeTo(out);
+		}
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	private static void	writeState(DataOutputStream out, State state)
+		throws IOException
+	{
+		out.writeInt(state.width);
+		out.writeInt(state.height);
+
+		out.writeUTF(state.status);
+		out.writeByte((state.light ? 1 : 0) | (state.paraxial ? 2 : 0));
+		out.writeDouble(state.camera.getCenterX());
+		out.writeDouble(state.camera.getCenterY());
+		out.writeDouble(state.camera.getZoom());
+
+		out.writeInt(state.scene.size());
+
+		for (LightElement le : state.scene)
+		{
+			out.writeByte(SceneArchive.TYPES.indexOf(le.getType()));
+			out.writeDouble(le.getCenter().x);
+			out.writeDouble(le.getCenter().y);
+			out.writeDouble(le.getRotation());
+		}
+	}
+
+	private static State	readState(DataInputStream in) throws IOException
+	{
+		int		width = in.readInt();
+		int		height = in.readInt();
+		String		status = in.readUTF();
+		int		flags = in.readByte();
+		Camera		camera = new Camera(in.readDouble(), in.readDouble(),
+										in.readDouble());
+		int		count = in.readInt();
+		List<LightElement>	scene = new ArrayList<LightElement>(Math.min(count, 1 << 16));
+
+		for (int i = 0; i < count; i++)
+		{
+			int	type = in.readByte();
+
+			if (type < 0 || type >= SceneArchive.TYPES.size())
+				throw new IOException("Unknown element type " + type);
+
+			LightElement	le = LightElement.create(SceneArchive.TYPES.get(type),
+													 in.readDouble(),
+													 in.readDouble());
+
+			le.setRotation(in.readDouble());
+			scene.add(le);
+		}
+
+		return new State(width, height, status, (flags & 1) != 0,
+						 (flags & 2) != 0, camera, scene);
+	}
+
+	private static void	writeEvent(DataOutputStream out, Event e, long previous)
+		throws IOException
+	{
+		writeVarint(out, e.time - previous);
+		out.writeByte(e.kind);
+		writeVarint(out, e.modifiers);
+
+		if (e.kind == KEY)
+		{
+			writeVarint(out, e.code);
+			return;
+		}
+
+		writeVarint(out, zigzag(e.x));
+		writeVarint(out, zigzag(e.y));
+
+		if (e.kind == CLICK || e.kind == PRESS || e.kind == RELEASE)
+			writeVarint(out, e.code);
+
+		if (e.kind == WHEEL)
+		{
+			writeVarint(out, zigzag(e.code));
+			out.writeDouble(e.precise);
+		}
+	}
+
+	private static Event	readEvent(DataInputStream in, long previous)
+		throws IOException
+	{
+		long	time = previous + readVarint(in);
+		byte	kind = in.readByte();
+		int	modifiers = (int)readVarint(in);
+
+		if (kind == KEY)
+			return new Event(time, kind, modifiers, (int)readVarint(in), 0, 0,
+							 0.0);
+
+		if (kind < CLICK || kind > WHEEL)
+			throw new IOException("Unknown event kind " + kind);
+
+		int	x = unzigzag(readVarint(in));
+		int	y = unzigzag(readVarint(in));
+		int	code = 0;
+		double	precise = 0.0;
+
+		if (kind == CLICK || kind == PRESS || kind == RELEASE)
+			code = (int)readVarint(in);
+
+		if (kind == WHEEL)
+		{
+			code = unzigzag(readVarint(in));
+			precise = in.readDouble();
+		}
+
+		return new Event(time, kind, modifiers, code, x, y, precise);
+	}
+
+	// Writes a non-negative number seven bits at a time, low bits first.
+	private static void	writeVarint(DataOutputStream out, long v)
+		throws IOException
+	{
+		while ((v & ~0x7FL) != 0L)
+		{
+			out.writeByte((int)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+
+		out.writeByte((int)v);
+	}
+
+	private static long	readVarint(DataInputStream in) throws IOException
+	{
+		long	v = 0L;
+
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int	b = in.readUnsignedByte();
+
+			v |= (long)(b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+				return v;
+		}
+
+		throw new IOException("Malformed varint");
+	}
+
+	// Maps small negative numbers to small positive ones, for varints.
+	private static long	zigzag(int v)
+	{
+		return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+	}
+
+	private static int	unzigzag(long v)
+	{
+		int	u = (int)v;
+
+		return (u >>> 1) ^ -(u & 1);
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// The state a session starts from.
+	public static final class State
+	{
+		public final int					width;		// Of the canvas
+		public final int					height;
+		public final String				status;		// Type being placed
+		public final boolean				light;
+		public final boolean				paraxial;
+		public final Camera				camera;
+		public final List<LightElement>	scene;		// In world space
+
+		public State(int width, int height, String status, boolean light,
+					 boolean paraxial, Camera camera, List<LightElement> scene)
+		{
+			this.width = width;
+			this.height = height;
+			this.status = status;
+			this.light = light;
+			this.paraxial = paraxial;
+			this.camera = camera;
+			this.scene = scene;
+		}
+	}
+
+	// One input event. The code is the key code of a KEY, the button of a
+	// CLICK, PRESS or RELEASE, and the whole notches of a WHEEL.
+	public static final class Event
+	{
+		public final long		time;		// Since the start, microseconds
+		public final byte		kind;
+		public final int		modifiers;
+		public final int		code;
+		public final int		x;
+		public final int		y;
+		public final double	precise;	// Wheel rotation
+
+		public Event(long time, byte kind, int modifiers, int code, int x,
+					 int y, double precise)
+		{
+			this.time = time;
+			this.kind = kind;
+			this.modifiers = modifiers;
+			this.code = code;
+			this.x = x;
+			this.y = y;
+			this.precise = precise;
+		}
+	}
+
+	// Records the events a component gets from the time it is made until it
+	// is stopped. Use it on the AWT event thread only, apart from setState().
+	public static final class Recorder
+		implements KeyListener, MouseListener, MouseMotionListener,
+				   MouseWheelListener
+	{
+		private final Component		component;
+		private final long				start;		// In ns
+		private final List<Event>		events;
+		private volatile State			state;
+		private boolean				stopped;
+
+		public Recorder(Component component)
+		{
+			this.component = component;
+
+			start = System.nanoTime();
+			events = new ArrayList<Event>();
+			state = null;
+			stopped = false;
+
+			component.addKeyListener(this);
+			component.addMouseListener(this);
+			component.addMouseMotionListener(this);
+			component.addMouseWheelListener(this);
+		}
+
+		// Sets the state the session started from. The model calls this on
+		// the JOGL thread, after the changes of the events before the start.
+		public void	setState(State state)
+		{
+			this.state = state;
+		}
+
+		public int	getEventCount()
+		{
+			return events.size();
+		}
+
+		// Stops recording, and gets the log, or null if the state of the
+		// start never came.
+		public InputLog	stop()
+		{
+			stopped = true;
+
+			component.removeKeyListener(this);
+			component.removeMouseListener(this);
+			component.removeMouseMotionListener(this);
+			component.removeMouseWheelListener(this);
+
+			return ((state != null) ? new InputLog(state, events) : null);
+		}
+
+		public void	keyPressed(KeyEvent e)
+		{
+			if (e.getKeyCode() != KeyEvent.VK_R)
+				add(KEY, e, e.getKeyCode(), 0, 0, 0.0);
+		}
+
+		public void	keyReleased(KeyEvent e)
+		{
+		}
+
+		public void	keyTyped(KeyEvent e)
+		{
+		}
+
+		public void	mouseClicked(MouseEvent e)
+		{
+			add(CLICK, e, e.getButton(), e.getX(), e.getY(), 0.0);
+		}
+
+		public void	mouseEntered(MouseEvent e)
+		{
+			add(ENTER, e, 0, e.getX(), e.getY(), 0.0);
+		}
+
+		public void	mouseExited(MouseEvent e)
+		{
+			add(EXIT, e, 0, e.getX(), e.getY(), 0.0);
+		}
+
+		public void	mousePressed(MouseEvent e)
+		{
+			add(PRESS, e, e.getButton(), e.getX(), e.getY(), 0.0);
+		}
+
+		public void	mouseReleased(MouseEvent e)
+		{
+			add(RELEASE, e, e.getButton(), e.getX(), e.getY(), 0.0);
+		}
+
+		public void	mouseDragged(MouseEvent e)
+		{
+			add(DRAG, e, 0, e.getX(), e.getY(), 0.0);
+		}
+
+		public void	mouseMoved(MouseEvent e)
+		{
+			add(MOVE, e, 0, e.getX(), e.getY(), 0.0);
+		}
+
+		public void	mouseWheelMoved(MouseWheelEvent e)
+		{
+			add(WHEEL, e, e.getWheelRotation(), e.getX(), e.getY(),
+				e.getPreciseWheelRotation());
+		}
+
+		private void	add(byte kind, InputEvent e, int code, int x, int y,
+							double precise)
+		{
+			if (stopped)
+				return;
+
+			events.add(new Event((System.nanoTime() - start) / 1000L, kind,
+								 e.getModifiersEx(), code, x, y, precise));
+		}
+	}
+}
+
+//******************************************************************************
@@ -48,9 +48,9 @@ public final class KeyHandler extends KeyAdapter
 		this.view = view;
 		this.model = model;
 
-		Component	component = view.getCanvas();
-
-		component.addKeyListener(this);
+		// A headless replay calls the handler itself
+		if (view.getCanvas() instanceof Component)
+			((Component)view.getCanvas()).addKeyListener(this);
 	}
 
 	//**********************************************************************
@@ -91,6 +91,12 @@ public final class KeyHandler extends KeyAdapter
 				model.setStatus("Concave");
 				break;
 				
+			// Set mode to detector
+			case KeyEvent.VK_NUMPAD6:
+			case KeyEvent.VK_6:
+				model.setStatus("Detector");
+				break;
+				
 			// Toggle light
 			case KeyEvent.VK_ENTER:
 				model.toggleLight(false);
@@ -126,6 +132,101 @@ public final class KeyHandler extends KeyAdapter
 			case KeyEvent.VK_D:
 				model.clearScene(true);
 				break;
+				
+			// Undo the last change to the objects, or redo with shift
+			case KeyEvent.VK_Z:
+				model.undo(Utilities.isShiftDown(e));
+				break;
+				
+			// Show the original scene area again
+			case KeyEvent.VK_HOME:
+				model.resetCamera();
+				break;
+				
+			// Generate a scene with the next layout, or a new seed with shift
+			case KeyEvent.VK_G:
+				model.generateNextScene(Utilities.isShiftDown(e));
+				break;
+				
+			// Save the scene, or load the saved one
+			case KeyEvent.VK_S:
+				model.saveScene(SceneArchive.FILE);
+				break;
+				
+			case KeyEvent.VK_L:
+				model.loadScene(SceneArchive.FILE);
+				break;
+				
+			case KeyEvent.VK_I:
+				model.importScene(SvgImport.FILE);
+				break;
+				
+			// Record the input, or replay the recording with shift
+			case KeyEvent.VK_R:
+				if(Utilities.isShiftDown(e)) {
+					view.toggleReplay();
+				}
+				else {
+					view.toggleRecording();
+				}
+				break;
+				
+			// Switch between exact and thin (paraxial) lenses
+			case KeyEvent.VK_P:
+				model.toggleParaxial();
+				break;
+				
+			// Pause, scrub and change the speed of the beams' playback
+			case KeyEvent.VK_SPACE:
+				model.togglePlayback();
+				break;
+				
+			case KeyEvent.VK_OPEN_BRACKET:
+				model.scrubPlayback(Utilities.isShiftDown(e) ? -0.01 : -0.05);
+				break;
+				
+			case KeyEvent.VK_CLOSE_BRACKET:
+				model.scrubPlayback(Utilities.isShiftDown(e) ? 0.01 : 0.05);
+				break;
+				
+			case KeyEvent.VK_MINUS:
+				model.scalePlaybackRate(0.5);
+				break;
+				
+			case KeyEvent.VK_EQUALS:
+				model.scalePlaybackRate(2.0);
+				break;
+				
+			// Emit the light from the lightbox's whole face, sampled randomly
+			case KeyEvent.VK_E:
+				model.toggleAreaSource(Utilities.isShiftDown(e));
+				break;
+				
+			// Show where the light concentrates
+			case KeyEvent.VK_H:
+				model.toggleHeatMap();
+				break;
+				
+			// Show a ghost of the object being placed, and its beams
+			case KeyEvent.VK_V:
+				model.togglePreview();
+				break;
+				
+			// Group the selected object with the one before it, or ungroup it
+			case KeyEvent.VK_A:
+				model.groupElements();
+				break;
+				
+			case KeyEvent.VK_U:
+				model.ungroupElements();
+				break;
+				
+			// Aim the selected object (or group) at the detectors, also
+			// moving it when shift is held
+			case KeyEvent.VK_O:
+				model.toggleOptimizer(Utilities.isShiftDown(e));
+				break;
+				
 			case KeyEvent.VK_CLEAR:
 			case KeyEvent.VK_DELETE:
 				model.clearScene(false);
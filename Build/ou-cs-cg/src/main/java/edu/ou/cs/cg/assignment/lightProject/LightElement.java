@@ -0,0 +1,308 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Object class that encapsulates all the object types for the light project.
+// It depends on nothing but java.awt.geom, so scenes can be built and traced
+// without a view or an OpenGL context.
+//
+// An element is a small record: its shape (shared by all elements of a type,
+// see ElementShape), center, rotation and focal length. Points in world space
+// are computed from the shape when asked for.
+//
+// An element may belong to an assembly (see Assembly). Its center and
+// rotation fields are then relative to the assembly, while the getters and
+// everything else here work in world space.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+//******************************************************************************
+
+/**
+ * The <CODE>LightElement</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class LightElement implements SceneNode
+{
+	ElementShape shape;
+	Point2D.Double center;
+	double rotation;
+	double focalLength;
+	Assembly assembly;
+	final Detector detector;	// Shared by copies, null if not a detector
+	
+	// Creates an element of a type, centered at the given point
+	public LightElement(String type, double x, double y)
+	{
+		shape = ElementShape.get(type);
+		center = new Point2D.Double(x, y);
+		rotation = 0.0;
+		focalLength = shape.getFocalLength();
+		detector = ((shape == ElementShape.DETECTOR) ? new Detector() : null);
+	}
+	
+	// Copies an element. The center is never changed in place, so it is shared.
+	public LightElement(LightElement le)
+	{
+		shape = le.shape;
+		center = le.center;
+		rotation = le.rotation;
+		focalLength = le.focalLength;
+		assembly = le.assembly;
+		detector = le.detector;
+	}
+	
+	// Copies an element out of its assembly, at its place in the world
+	public LightElement copyInWorld()
+	{
+		LightElement le = new LightElement(this);
+		
+		le.center = getCenter();
+		le.rotation = getRotation();
+		le.assembly = null;
+		return le;
+	}
+	
+	// Creates a lightbox centered at the given point
+	public static LightElement createLightbox(double x, double y)
+	{
+		return new LightElement("Lightbox", x, y);
+	}
+	
+	// Creates a mirror centered at the given point
+	public static LightElement createMirror(double x, double y)
+	{
+		return new LightElement("Mirror", x, y);
+	}
+	
+	// Creates a detector centered at the given point
+	public static LightElement createDetector(double x, double y)
+	{
+		return new LightElement("Detector", x, y);
+	}
+	
+	// Creates a prism centered at the given point
+	public static LightElement createPrism(double x, double y)
+	{
+		return new LightElement("Prism", x, y);
+	}
+	
+	// Creates a lense (either convex or concave depending on passed boolean)
+	public static LightElement createLense(double x, double y, boolean convex)
+	{
+		return new LightElement(convex ? "Convex" : "Concave", x, y);
+	}
+	
+	// Creates an element of the given type centered at the given point
+	public static LightElement create(String type, double x, double y)
+	{
+		return new LightElement(type, x, y);
+	}
+	
+	// Get the type of the element
+	public String getType() {
+		return shape.getType();
+	}
+	
+	// Get the identity of the detector, shared by copies of this element, or
+	// null if the element isn't a detector
+	public Detector getDetector() {
+		return detector;
+	}
+	
+	// Get the shape shared by all elements of this type
+	public ElementShape getShape() {
+		return shape;
+	}
+	
+	// Get bottom left point (unrotated)
+	public Point2D.Double getBl() {
+		return translate(shape.getBl());
+	}
+	
+	// Get bottom right point (unrotated)
+	public Point2D.Double getBr() {
+		return translate(shape.getBr());
+	}
+	
+	// Get top right point (unrotated)
+	public Point2D.Double getTr() {
+		return translate(shape.getTr());
+	}
+	
+	// Get top left point (unrotated)
+	public Point2D.Double getTl() {
+		return translate(shape.getTl());
+	}
+	
+	// Get top point (for the prism, unrotated)
+	public Point2D.Double getT() {
+		return translate(shape.getT());
+	}
+	
+	// Get the center point
+	public Point2D.Double getCenter() {
+		if(assembly == null) {
+			return center;
+		}
+		return assembly.toWorld(center.x, center.y);
+	}
+	
+	// Get the assembly the element is in (null if none)
+	public Assembly getAssembly() {
+		return assembly;
+	}
+	
+	// Get the top node the element is part of, its top assembly or itself
+	public SceneNode getRoot() {
+		if(assembly == null) {
+			return this;
+		}
+		return assembly.getRoot();
+	}
+	
+	// Get the control points of the default right curve (shared, do not modify)
+	public Point2D.Double[] getDefaultRCtrl() {
+		return shape.getRCtrl();
+	}
+	
+	// Get the control points of the default left curve (shared, do not modify)
+	public Point2D.Double[] getDefaultLCtrl() {
+		return shape.getLCtrl();
+	}
+
+	// Get the focal length of a lens, negative for a concave (diverging) lens
+	public double getFocalLength() {
+		return (getType().equals("Concave") ? -focalLength : focalLength);
+	}
+
+	// Get rotation of the element
+	public double getRotation() {
+		if(assembly == null) {
+			return rotation;
+		}
+		return rotation + assembly.getRotation();
+	}
+	
+	// Set the rotation of the element
+	public void setRotation(double rotation) {
+		this.rotation += rotation;
+		
+		if(assembly != null) {
+			assembly.invalidateBounds();
+		}
+	}
+	
+	// Sets the location of the lightbox element
+	public void setLightbox(double x, double y) 
+	{
+		moveTo(x, y);
+		setRotation(-getRotation());
+	}
+	
+	// Moves the center of the element to the given point
+	public void moveTo(double x, double y) {
+		if(assembly == null) {
+			center = new Point2D.Double(x, y);
+		}
+		else {
+			center = assembly.toLocal(x, y);
+			assembly.invalidateBounds();
+		}
+	}
+	
+	// Maps a point of the shape (local space) to world space
+	public Point2D.Double toWorld(Point2D.Double p) {
+		Point2D.Double center = getCenter();
+		double angle = Math.toRadians(getRotation());
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		
+		return new Point2D.Double(cos*p.x - sin*p.y + center.x,
+								  sin*p.x + cos*p.y + center.y);
+	}
+	
+	// Get the outline of the shape in world space
+	public Point2D.Double[] getWorldOutline() {
+		Point2D.Double[] outline = shape.getOutline();
+		Point2D.Double[] world = new Point2D.Double[outline.length];
+		Point2D.Double center = getCenter();
+		double angle = Math.toRadians(getRotation());
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		
+		for(int i = 0; i < outline.length; i++)
+		{
+			Point2D.Double p = outline[i];
+			
+			world[i] = new Point2D.Double(cos*p.x - sin*p.y + center.x,
+										  sin*p.x + cos*p.y + center.y);
+		}
+		return world;
+	}
+	
+	// Check if a point lies within the element's (rotated) bounding box
+	public boolean contains(double x, double y) {
+		// Rotate the point into the element's unrotated frame
+		Point2D.Double center = getCenter();
+		double angle = Math.toRadians(-getRotation());
+		double nx = x - center.x;
+		double ny = y - center.y;
+		
+		return shape.contains(Math.cos(angle)*nx - Math.sin(angle)*ny,
+							  Math.sin(angle)*nx + Math.cos(angle)*ny);
+	}
+	
+	// Get the bounding box of the element's (rotated) outline
+	public Rectangle2D.Double getBounds() {
+		Point2D.Double center = getCenter();
+		double angle = Math.toRadians(getRotation());
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		double[] box = { center.x, center.y, center.x, center.y };
+		
+		for(Point2D.Double p : shape.getOutline())
+		{
+			double x = cos*p.x - sin*p.y + center.x;
+			double y = sin*p.x + cos*p.y + center.y;
+			
+			box[0] = Math.min(box[0], x);
+			box[1] = Math.min(box[1], y);
+			box[2] = Math.max(box[2], x);
+			box[3] = Math.max(box[3], y);
+		}
+		return new Rectangle2D.Double(box[0], box[1], box[2] - box[0], box[3] - box[1]);
+	}
+	
+	// Adds the element to the list if its box overlaps the rectangle
+	public void collect(double minX, double minY, double maxX, double maxY,
+						List<LightElement> out) {
+		Rectangle2D.Double box = getBounds();
+		
+		if(box.x <= maxX && box.y <= maxY &&
+			box.x + box.width >= minX && box.y + box.height >= minY) {
+			out.add(this);
+		}
+	}
+	
+	// Returns a point of the shape moved to the center (or null)
+	private Point2D.Double translate(Point2D.Double p) {
+		if(p == null) {
+			return null;
+		}
+		Point2D.Double center = getCenter();
+		
+		return new Point2D.Double(p.x + center.x, p.y + center.y);
+	}
+}
+
+//******************************************************************************
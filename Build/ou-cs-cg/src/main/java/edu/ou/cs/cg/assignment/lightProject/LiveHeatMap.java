@@ -0,0 +1,216 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// The live heat map splats the beam paths into a heat map (see HeatMap) on a
+// background thread, so the view's frames never wait for it. As with the
+// live tracer, only the most recent request is kept: paths requested while
+// a splat is running replace any still waiting, and are picked up when it
+// is done.
+//
+// The map belongs to the worker, and covers the world the paths were traced
+// in. The area source only adds paths, so when a request starts with the
+// paths splatted last, in the same world, only the new ones are added;
+// anything else (a new trace, or a world grown by an element moved out of
+// it) starts the map over. Each finished map is colored into an image of
+// RGBA pixels, with the size and bounds of the map, for the view to upload
+// as a texture. The view hands each image back when it has uploaded it, so
+// the pixel buffers are reused rather than made for every splat.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Rectangle2D;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.jogamp.common.nio.Buffers;
+
+//******************************************************************************
+
+/**
+ * The <CODE>LiveHeatMap</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class LiveHeatMap
+{
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final ExecutorService						executor;
+	private final AtomicReference<Request>			pending;	// Latest request
+	private final AtomicReference<Image>				result;		// Latest image
+	private final AtomicReference<ByteBuffer>			free;		// To reuse
+	private final AtomicBoolean						running;	// Worker scheduled
+
+	// Worker state, only used on the worker thread
+	private final HeatMap								heatMap;
+	private List<BeamPath>								splatted;	// Last request
+	private int										count;		// Paths in it
+	private Rectangle2D.Double							world;		// Its world
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public LiveHeatMap()
+	{
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread	newThread(Runnable r) {
+					Thread	thread = new Thread(r, "LiveHeatMap");
+
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		pending = new AtomicReference<Request>();
+		result = new AtomicReference<Image>();
+		free = new AtomicReference<ByteBuffer>();
+		running = new AtomicBoolean(false);
+
+		heatMap = new HeatMap();
+		splatted = null;
+		count = 0;
+		world = null;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Requests the map of a list of paths traced in a world (see
+	// Tracer.getWorld()), replacing any earlier request that hasn't started
+	// yet. The list mustn't change after this.
+	public void	request(List<BeamPath> paths, Rectangle2D.Double world)
+	{
+		pending.set(new Request(paths, world));
+		schedule();
+	}
+
+	// Takes the image of the latest finished map, or null if there is none
+	// new since the last call. Give it back with release() once uploaded.
+	public Image	poll()
+	{
+		return result.getAndSet(null);
+	}
+
+	public void	release(Image image)
+	{
+		free.set(image.pixels);
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	private void	schedule()
+	{
+		if (running.compareAndSet(false, true))
+			executor.execute(new Runnable() {
+					public void	run() {
+						drain();
+					}
+				});
+	}
+
+	// Runs on the worker thread. Splats requests until none are waiting.
+	private void	drain()
+	{
+		while (true)
+		{
+			Request	r;
+
+			while ((r = pending.getAndSet(null)) != null)
+				splat(r.paths, r.world);
+
+			running.set(false);
+
+			// Pick up a request that arrived after the last check
+			if ((pending.get() == null) || !running.compareAndSet(false, true))
+				return;
+		}
+	}
+
+	// Adds the paths that are new since the last request to the map, or
+	// starts it over, then publishes its image.
+	private void	splat(List<BeamPath> paths, Rectangle2D.Double to)
+	{
+		if (!to.equals(world))
+		{
+			heatMap.setBounds(to);
+			world = to;
+			count = 0;
+		}
+		else if (splatted == null || paths.size() < count ||
+			(count > 0 && paths.get(count - 1) != splatted.get(count - 1)))
+		{
+			heatMap.clear();
+			count = 0;
+		}
+
+		heatMap.splat(paths.subList(count, paths.size()));
+		splatted = paths;
+		count = paths.size();
+
+		int			size = 4 * heatMap.getColumns() * heatMap.getRows();
+		ByteBuffer	pixels = free.getAndSet(null);
+
+		if (pixels == null || pixels.capacity() < size)
+			pixels = Buffers.newDirectByteBuffer(size);
+
+		heatMap.toRGBA(pixels);
+
+		// Reuse the last pixels if the view hasn't taken them
+		Image	old = result.getAndSet(new Image(pixels, heatMap.getColumns(),
+												 heatMap.getRows(),
+												 heatMap.getBounds()));
+
+		if (old != null)
+			free.set(old.pixels);
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// A finished map: its RGBA pixels, row by row from the bottom, how many
+	// columns and rows of them there are, and the area they cover.
+	public static final class Image
+	{
+		public final ByteBuffer			pixels;
+		public final int					columns;
+		public final int					rows;
+		public final Rectangle2D.Double	bounds;
+
+		private Image(ByteBuffer pixels, int columns, int rows,
+					  Rectangle2D.Double bounds)
+		{
+			this.pixels = pixels;
+			this.columns = columns;
+			this.rows = rows;
+			this.bounds = bounds;
+		}
+	}
+
+	private static final class Request
+	{
+		private final List<BeamPath>		paths;
+		private final Rectangle2D.Double	world;
+
+		public Request(List<BeamPath> paths, Rectangle2D.Double world)
+		{
+			this.paths = paths;
+			this.world = world;
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,194 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// The live tracer retraces the whole scene on a background thread while an
+// element is being dragged or rotated. Only the most recent request is kept:
+// a request made while a trace is running replaces any request still waiting,
+// and cancels the running trace, so intermediate poses are dropped rather
+// than queued. The view makes at most one request per frame and picks up
+// finished results in its update(). It also uses a second live tracer for
+// the speculative traces of the placement preview.
+//
+// The ray tree of a request is expanded in parallel (see RayTree), so this
+// thread mostly waits for the pool.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>LiveTracer</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class LiveTracer
+{
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final ExecutorService				executor;
+	private final AtomicReference<Request>		pending;	// Latest request
+	private final AtomicReference<Request>		current;	// Being traced
+	private final AtomicReference<Request>		result;		// Latest result
+	private final AtomicBoolean				running;	// Worker scheduled
+	private final AtomicInteger				ticket;		// Latest ticket
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public LiveTracer()
+	{
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread	newThread(Runnable r) {
+					Thread	thread = new Thread(r, "LiveTracer");
+
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		pending = new AtomicReference<Request>();
+		current = new AtomicReference<Request>();
+		result = new AtomicReference<Request>();
+		running = new AtomicBoolean(false);
+		ticket = new AtomicInteger();
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Requests a full trace of a snapshot of the scene, replacing any earlier
+	// request that hasn't finished yet.
+	public void	request(List<LightElement> elements, double factor,
+						boolean paraxial)
+	{
+		pending.set(new Request(ticket.incrementAndGet(), elements, factor,
+								paraxial));
+		stopCurrent();
+		schedule();
+	}
+
+	// Discards any waiting or running request, and any result still to come.
+	public void	cancel()
+	{
+		ticket.incrementAndGet();
+		pending.set(null);
+		stopCurrent();
+		result.set(null);
+	}
+
+	// Takes the result of the latest request, or null if it isn't done yet.
+	public RayTree	poll()
+	{
+		Request	r = result.getAndSet(null);
+
+		if ((r == null) || (r.ticket != ticket.get()))
+			return null;
+
+		return r.tree;
+	}
+
+	// True while there is a request waiting or being traced.
+	public boolean	isBusy()
+	{
+		return running.get();
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	private void	stopCurrent()
+	{
+		Request	r = current.get();
+
+		if (r != null)
+			r.tree.cancel();
+	}
+
+	private void	schedule()
+	{
+		if (running.compareAndSet(false, true))
+			executor.execute(new Runnable() {
+					public void	run() {
+						drain();
+					}
+				});
+	}
+
+	// Runs on the worker thread. Traces requests until none are waiting.
+	private void	drain()
+	{
+		while (true)
+		{
+			Request	r;
+
+			while ((r = pending.getAndSet(null)) != null)
+			{
+				current.set(r);
+
+				// Check again, in case a newer request came in before
+				// this one was made current
+				if (r.ticket == ticket.get())
+					r.trace();
+				else
+					r.tree.cancel();
+
+				current.set(null);
+
+				if (!r.tree.isCancelled())
+					result.set(r);
+			}
+
+			running.set(false);
+
+			// Pick up a request that arrived after the last check
+			if ((pending.get() == null) || !running.compareAndSet(false, true))
+				return;
+		}
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	private static final class Request
+	{
+		private final int						ticket;
+		private final List<LightElement>	elements;
+		private final double					factor;
+		private final boolean					paraxial;
+		private final RayTree					tree;
+
+		public Request(int ticket, List<LightElement> elements,
+					   double factor, boolean paraxial)
+		{
+			this.ticket = ticket;
+			this.elements = elements;
+			this.factor = factor;
+			this.paraxial = paraxial;
+
+			tree = new RayTree(elements);
+		}
+
+		public void	trace()
+		{
+			tree.trace(new ElementGrid(elements), null, factor, paraxial);
+		}
+	}
+}
+
+//******************************************************************************
@@ -25,6 +25,20 @@
 // happens at the END of GLEventListener.display(), all changes will be visible
 // to the View.update() and render() methods in the next animation cycle.
 //
+// Many changes at once (e.g. from a script) should go through a Transaction.
+// It collects the changes on the caller's thread and applies them all in one
+// update on the JOGL thread, as one scene change: one new version, so the
+// element grid is rebuilt once, and one reset of the light.
+//
+// Each change to the elements is also passed to the autosave, which copies
+// the poses of just the elements that changed and saves them in the
+// background. The scene is recovered from the autosave on startup.
+//
+// The changes are also passed to the history, which makes each edit (or
+// whole drag) a version of the scene that can be undone and redone. Versions
+// share their unchanged parts, so each one costs little memory, and keep the
+// beams traced for them (see History).
+//
 //******************************************************************************
 
 package edu.ou.cs.cg.assignment.lightProject;
@@ -32,7 +46,10 @@ package edu.ou.cs.cg.assignment.lightProject;
 import java.lang.*;
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Consumer;
 import com.jogamp.opengl.*;
 import edu.ou.cs.cg.utilities.Utilities;
 
@@ -57,16 +74,53 @@ public final class Model
 	private Point2D.Double				cursor;	// Current cursor coords
 
 	// Light project model variables
-	private Point2D.Double[] lightPoints;
 	private String status;
 	private Deque<LightElement> lightElements;
 	private boolean light;
+	private boolean paraxial;		// Trace lenses as ideal thin lenses
+	private boolean preview;		// Show a ghost of the next element
+	private boolean areaSource;		// Sample the lightbox as an area source
+	private long sourceSeed;		// Seed for sampling the area source
+	private boolean heatMap;		// Show where the light goes
+
+	// Drag and rotate variables
+	private LightElement dragged;	// Element being dragged, if any
+	private double dragDx;			// Offset from cursor to dragged center
+	private double dragDy;
+	private int version;			// Counts changes to the scene
+	
+	// Optimizer variables
+	private List<LightElement> optimized;	// Elements being posed, if any
+	private int optimizedVersion;			// Scene version they started at
+
+	// Camera variables
+	private Camera camera;
+	private boolean panning;		// Dragging the camera instead of an element
+	private Point panStart;			// View point where the pan started
+	private Camera panCamera;		// Camera when the pan started
+
+	// Scene generator variables
+	private SceneGenerator.Layout layout;
+	private long seed;
+	
+	// Saves the scene in the background as it changes
+	private Autosave autosave;
+	
+	// Keeps the versions of the scene for undo and redo
+	private History history;
 
 	//**********************************************************************
 	// Constructors and Finalizer
 	//**********************************************************************
 
 	public Model(View view)
+	{
+		this(view, true);
+	}
+	
+	// Makes a model that recovers the scene from the autosave journal and
+	// keeps saving to it, or (e.g. for a replay) neither
+	public Model(View view, boolean persistent)
 	{
 		this.view = view;
 
@@ -77,12 +131,41 @@ public final class Model
 		status = "Lightbox";
 		lightElements = new ArrayDeque<LightElement>();
 		light = false;
+		paraxial = false;
+		preview = false;
+		areaSource = false;
+		sourceSeed = 1L;
+		heatMap = false;
+
+		dragged = null;
+		version = 0;
+		optimized = null;
+
+		camera = new Camera();
+		panning = false;
+
+		layout = SceneGenerator.Layout.SCATTER;
+		seed = 1L;
 		
-		lightPoints = new Point2D.Double[5];
-		for(int i = 0; i < lightPoints.length; i++)
+		// Pick up where the last run left off, e.g. after a crash
+		if(persistent)
 		{
-			lightPoints[i] = new Point2D.Double(0.0, 0.0);
+			try
+			{
+				lightElements.addAll(Autosave.recover(Paths.get(Autosave.FILE)));
+				
+				if(!lightElements.isEmpty())
+				{
+					System.out.println("Recovered " + lightElements.size() + " objects from " + Autosave.FILE);
+				}
+			}
+			catch(IOException ex)
+			{
+				System.err.println("Couldn't recover the scene: " + ex.getMessage());
+			}
 		}
+		autosave = new Autosave(persistent ? Paths.get(Autosave.FILE) : null, lightElements);
+		history = new History(lightElements);
 	}
 
 	//**********************************************************************
@@ -99,12 +182,6 @@ public final class Model
 	
 	// Light project getter methods
 	
-	// Get the light points
-	public Point2D.Double[] getLightPoints()
-	{
-		return lightPoints;
-	}
-	
 	// Get the type of object being placed
 	public String getStatus()
 	{
@@ -122,6 +199,97 @@ public final class Model
 	{
 		return light;
 	}
+	
+	// Check if the lenses of this scene are traced as thin lenses
+	public boolean isParaxial()
+	{
+		return paraxial;
+	}
+	
+	// Check if a ghost of the element being placed follows the cursor
+	public boolean isPreview()
+	{
+		return preview;
+	}
+	
+	// Check if the lightbox emits random rays over its face and angles
+	public boolean isAreaSource()
+	{
+		return areaSource;
+	}
+	
+	// Check if the heat map of the light is shown
+	public boolean isHeatMap()
+	{
+		return heatMap;
+	}
+	
+	// Get the seed that the area source rays are sampled with
+	public long getSourceSeed()
+	{
+		return sourceSeed;
+	}
+	
+	// Get the number of changes made to the scene so far
+	public int getVersion()
+	{
+		return version;
+	}
+	
+	// Get the history of the scene (only use it on the JOGL thread)
+	public History getHistory()
+	{
+		return history;
+	}
+	
+	// Get the version of the scene in the history, or null if the scene has
+	// changed since (e.g. during a drag). Only use it on the JOGL thread.
+	public History.Version getHistoryVersion()
+	{
+		return (history.isDirty() ? null : history.getCurrent());
+	}
+	
+	// Check if an element is being dragged
+	public boolean isDragging()
+	{
+		return (dragged != null);
+	}
+	
+	// Get a copy of the camera
+	public Camera getCamera()
+	{
+		return new Camera(camera);
+	}
+	
+	// Get a copy of the scene that is safe to trace on another thread. Live
+	// moves and rotations only change the selected element (or its assembly),
+	// and grouping changes it and the one before it, so only the elements of
+	// those two nodes are copied; the other elements are shared with the scene.
+	public List<LightElement> snapshotLightElements()
+	{
+		ArrayList<LightElement> snapshot = new ArrayList<LightElement>(lightElements);
+		int last = snapshot.size() - 1;
+		
+		if(last < 0)
+		{
+			return snapshot;
+		}
+		
+		SceneNode selected = snapshot.get(last).getRoot();
+		SceneNode previous = ((last > 0) ? snapshot.get(last - 1).getRoot() : null);
+		
+		for(int i = 0; i <= last; i++)
+		{
+			LightElement le = snapshot.get(i);
+			SceneNode root = le.getRoot();
+			
+			if(root == selected || root == previous)
+			{
+				snapshot.set(i, le.copyInWorld());
+			}
+		}
+		return snapshot;
+	}
 
 	//**********************************************************************
 	// Public Methods (Modify Variables)
@@ -163,6 +331,9 @@ public final class Model
 					case "Prism":
 						addPrism(q);
 						break;
+					case "Detector":
+						addDetector(q);
+						break;
 					case "Convex":
 						addLense(q, true);
 						break;
@@ -183,15 +354,170 @@ public final class Model
 			public void update(GL2 gl) {
 				if(fullClear) {
 					lightElements.clear();
+					autosave.reset(lightElements);
+					history.reset(lightElements);
+					paraxial = false;
 				}
 				else {
-					lightElements.pollLast();
+					LightElement le = lightElements.pollLast();
+					
+					if(le != null && le.getAssembly() != null) {
+						le.getAssembly().remove(le);
+					}
+					if(le != null) {
+						autosave.remove(le);
+						history.remove(le);
+					}
 				}
-				toggleLight(true);
+				changeScene();
 			}
 		});;
 	}
 	
+	// Replace the scene with a generated one (see SceneGenerator)
+	public void generateScene(SceneGenerator.Layout layout, int mirrors, int prisms,
+							int lenses, int lightboxes, long seed)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				SceneGenerator generator = new SceneGenerator(seed);
+				
+				lightElements.clear();
+				lightElements.addAll(generator.generate(layout, mirrors, prisms,
+														lenses, lightboxes));
+				autosave.reset(lightElements);
+				history.reset(lightElements);
+				paraxial = false;
+				changeScene();
+			}
+		});;
+	}
+	
+	// Save the scene to a scene archive, in world space. Only the poses are
+	// copied on the JOGL thread; the file is written on a thread of its own,
+	// so even a large scene doesn't hold up the view.
+	public void saveScene(String path)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				final SceneArchive archive = SceneArchive.of(lightElements);
+				final int count = lightElements.size();
+				Thread thread = new Thread("Save") {
+					public void run() {
+						try
+						{
+							archive.write(Paths.get(path));
+							System.out.println("Saved " + count + " objects to " + path);
+						}
+						catch(IOException ex)
+						{
+							System.err.println("Couldn't save the scene: " + ex.getMessage());
+						}
+					}
+				};
+				
+				// Let a save finish if the application exits meanwhile
+				thread.setDaemon(false);
+				thread.start();
+			}
+		});;
+	}
+	
+	// Replace the scene with one loaded from a scene archive. The archive is
+	// read on a thread of its own, and its objects replace the scene all at
+	// once when it has been read.
+	public void loadScene(String path)
+	{
+		Thread thread = new Thread("Load") {
+			public void run() {
+				final List<LightElement> elements;
+				
+				try
+				{
+					elements = SceneArchive.map(Paths.get(path)).toElements();
+				}
+				catch(IOException ex)
+				{
+					System.err.println("Couldn't load the scene: " + ex.getMessage());
+					return;
+				}
+				
+				view.getCanvas().invoke(false, new BasicUpdater() {
+					public void update(GL2 gl) {
+						lightElements.clear();
+						lightElements.addAll(elements);
+						autosave.reset(lightElements);
+						history.reset(lightElements);
+						changeScene();
+					}
+				});;
+			}
+		};
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	// Add the objects of an SVG drawing to the scene. The drawing is read on
+	// a thread of its own, so even a large one doesn't hold up the view. Its
+	// objects are added to the end of the scene as they are read, a batch
+	// (SvgImport.BATCH) at a time, so at most one batch is held outside the
+	// scene. The whole import is one step to undo.
+	public void importScene(String path)
+	{
+		Thread thread = new Thread("Import") {
+			public void run() {
+				final List<LightElement> batch = new ArrayList<LightElement>(SvgImport.BATCH);
+				SvgImport svg = new SvgImport(new Consumer<LightElement>() {
+					public void accept(LightElement le) {
+						batch.add(le);
+						
+						if(batch.size() == SvgImport.BATCH)
+						{
+							appendElements(new ArrayList<LightElement>(batch), false);
+							batch.clear();
+						}
+					}
+				});
+				
+				try
+				{
+					svg.read(Paths.get(path));
+					System.out.println("Imported " + svg.getImported() + " objects from " + path +
+									   " (skipped " + svg.getSkipped() + ")");
+				}
+				catch(IOException ex)
+				{
+					System.err.println("Couldn't import the drawing: " + ex.getMessage());
+				}
+				
+				// The objects read before an error stay, as one step
+				if(svg.getImported() > 0)
+				{
+					appendElements(batch, true);
+				}
+			}
+		};
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	// Generate a screen-sized scene, either with the next layout or (for a new
+	// seed) with the same layout as last time
+	public void generateNextScene(boolean newSeed)
+	{
+		SceneGenerator.Layout[] layouts = SceneGenerator.Layout.values();
+		
+		if(newSeed) {
+			seed++;
+		}
+		else {
+			layout = layouts[(layout.ordinal() + 1) % layouts.length];
+		}
+		generateScene(layout, 60, 10, 10, 1, seed);
+	}
+	
 	// Sets the type of object being placed
 	public void setStatus(String s)
 	{
@@ -204,16 +530,16 @@ public final class Model
 		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
 			public void	update(double[] p) {
 				boolean noLightbox = true;
+				int before = version;
+				LightElement lightbox = null;
+				
 				// Set the location of the lightbox if one already exists
 				for (LightElement le : lightElements)
 				{
 					if(le.getType().equals("Lightbox")) {
 						noLightbox = false;
-						le.setLightbox(new Point2D.Double(p[0] - 25, p[1] - 25),
-									new Point2D.Double(p[0] + 25, p[1] - 25),
-									new Point2D.Double(p[0] + 25, p[1] + 25),
-									new Point2D.Double(p[0] - 25, p[1] + 25),
-									new Point2D.Double(p[0], p[1]));
+						le.setLightbox(p[0], p[1]);
+						lightbox = le;
 						break;
 					}
 				}
@@ -221,14 +547,13 @@ public final class Model
 				// Add a lightbox to the scene if one does not exist
 				if(noLightbox)
 				{
-					lightElements.add(new LightElement("Lightbox", 
-							new Point2D.Double(p[0] - 25, p[1] - 25), 
-							new Point2D.Double(p[0] + 25, p[1] - 25), 
-							new Point2D.Double(p[0] + 25, p[1] + 25), 
-							new Point2D.Double(p[0] - 25, p[1] + 25), 
-							null, new Point2D.Double(p[0], p[1]), null, null));
+					lightbox = LightElement.createLightbox(p[0], p[1]);
+					lightElements.add(lightbox);
 				}
-				toggleLight(true);
+				autosave.put(lightbox);
+				history.put(lightbox);
+				changeScene();
+				adoptPreview(lightbox, before);
 			}
 		});;
 	}
@@ -238,13 +563,17 @@ public final class Model
 	{
 		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
 			public void update(double[] p) {
-				lightElements.add(new LightElement("Mirror", 
-						new Point2D.Double(p[0] - 5, p[1] - 30), 
-						new Point2D.Double(p[0] + 5, p[1] - 30), 
-						new Point2D.Double(p[0] + 5, p[1] + 30),
-						new Point2D.Double(p[0] - 5, p[1] + 30), 
-						null, new Point2D.Double(p[0], p[1]), null, null));
-				toggleLight(true);
+				place(LightElement.createMirror(p[0], p[1]));
+			}
+		});;
+	}
+	
+	// Creates a detector
+	public void addDetector(Point q)
+	{
+		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
+			public void update(double[] p) {
+				place(LightElement.createDetector(p[0], p[1]));
 			}
 		});;
 	}
@@ -254,12 +583,7 @@ public final class Model
 	{
 		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
 			public void update(double[] p) {
-				lightElements.add(new LightElement("Prism", 
-						new Point2D.Double(p[0] - 25, p[1] - 25), 
-						new Point2D.Double(p[0] + 25, p[1] - 25), 
-						null, null, new Point2D.Double(p[0], p[1] + 25), 
-						new Point2D.Double(p[0], p[1]), null, null));
-				toggleLight(true);
+				place(LightElement.createPrism(p[0], p[1]));
 			}
 		});;
 	}
@@ -269,32 +593,24 @@ public final class Model
 	{
 		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
 			public void update(double[] p) {
-				// Check if the lens is convex or concave
-				if(convex) {
-					lightElements.add(new LightElement("Convex", 
-							new Point2D.Double(p[0] - 5, p[1] - 30), 
-							new Point2D.Double(p[0] + 5, p[1] - 30), 
-							new Point2D.Double(p[0] + 5, p[1] + 30),
-							new Point2D.Double(p[0] - 5, p[1] + 30), 
-							null, new Point2D.Double(p[0], p[1]), 
-							new Point2D.Double(p[0] - 15, p[1]), 
-							new Point2D.Double(p[0] + 15, p[1])));
-				}
-				else {
-					lightElements.add(new LightElement("Concave", 
-							new Point2D.Double(p[0] - 10, p[1] - 30),
-							new Point2D.Double(p[0] + 10, p[1] - 30),
-							new Point2D.Double(p[0] + 10, p[1] + 30),
-							new Point2D.Double(p[0] - 10, p[1] + 30),
-							null, new Point2D.Double(p[0], p[1]), null, null));
-				}
-				toggleLight(true);
+				place(LightElement.createLense(p[0], p[1], convex));
 			}
 		});;
 	}
 	
 	// Toggles drawing the light (if object is placed/deleted light is turned off, otherwise toggle)
 	public void toggleLight(boolean override)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				switchLight(override);
+			}
+		});;
+	}
+	
+	// Turns the light off (for an override) or on and off, and clears the
+	// beams. Only call this on the JOGL thread, e.g. from an updater.
+	private void switchLight(boolean override)
 	{
 		// Checks if object is placed/deleted
 		if(override) {
@@ -304,60 +620,532 @@ public final class Model
 			light = !light;
 		}
 		
-		boolean noLightBox = true;
-		// Sets the lightpoint back to the lightbox and clear the trace
-		for(LightElement le : lightElements)
-		{
-			if(le.getType().equals("Lightbox"))
-			{
-				double rotation = le.getRotation();
+		// Sets the lightpoints back to the lightbox and clear the trace
+		view.clearLight();
+	}
+	
+	// Switches this scene between exact and thin (paraxial) lenses
+	public void toggleParaxial()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				paraxial = !paraxial;
+				changeScene();
+			}
+		});;
+	}
+	
+	// Switches the lightbox between its fixed rays and an area source, or
+	// (for a new seed) samples the area source again with the next seed
+	public void toggleAreaSource(boolean newSeed)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				if(newSeed) {
+					sourceSeed++;
+					areaSource = true;
+				}
+				else {
+					areaSource = !areaSource;
+				}
+				changeScene();
+			}
+		});;
+	}
+	
+	// Shows or hides the heat map of the light
+	public void toggleHeatMap()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				heatMap = !heatMap;
+			}
+		});;
+	}
+	
+	// Shows or hides the ghost of the element being placed, along with the
+	// beams it would give
+	public void togglePreview()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				preview = !preview;
+			}
+		});;
+	}
+	
+	// Pauses or resumes the playback of the beams
+	public void togglePlayback()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				view.getPlayback().togglePause();
+			}
+		});;
+	}
+	
+	// Moves the beam fronts back or forward by a fraction of the beams' length
+	public void scrubPlayback(double fraction)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				Playback playback = view.getPlayback();
+				
+				playback.scrub(fraction * playback.getEnd());
+			}
+		});;
+	}
+	
+	// Speeds the playback of the beams up or slows it down by a factor
+	public void scalePlaybackRate(double factor)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				view.getPlayback().scaleRate(factor);
+			}
+		});;
+	}
+	
+	// Start collecting a batch of changes to the scene (see Transaction)
+	public Transaction begin()
+	{
+		return new Transaction();
+	}
+	
+	// Counts a change to the scene and turns the light off
+	private void changeScene()
+	{
+		version++;
+		history.commit();
+		switchLight(true);
+	}
+	
+	// Group the selected object with the one selected before it. Objects that
+	// are already in assemblies bring their whole top assemblies along, so
+	// groups can be nested.
+	public void groupElements()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				if(lightElements.size() < 2)
+				{
+					return;
+				}
+				
+				Iterator<LightElement> it = lightElements.descendingIterator();
+				SceneNode a = it.next().getRoot();
+				SceneNode b = it.next().getRoot();
 				
-				for(int i = 0; i < lightPoints.length; i++)
+				if(a != b)
 				{
-					double x = Math.cos(Math.toRadians(rotation))*25.0 -
-								Math.sin(Math.toRadians(rotation))*(25 - 10 * i - 5) + le.getCenter().x;
-					double y = Math.sin(Math.toRadians(rotation))*25.0 +
-								Math.cos(Math.toRadians(rotation))*(25 - 10 * i - 5) + le.getCenter().y;
-					lightPoints[i].setLocation(x, y);
+					Assembly.group(Arrays.asList(b, a));
+					changeScene();
 				}
-				noLightBox = false;
-				break;
 			}
-		}
+		});;
+	}
+	
+	// Break up the top assembly of the selected object, one level at a time
+	public void ungroupElements()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				LightElement le = lightElements.peekLast();
+				
+				if(le != null && le.getAssembly() != null)
+				{
+					le.getAssembly().getRoot().ungroup();
+					changeScene();
+				}
+			}
+		});;
+	}
+	
+	// Search for the rotations (and, with positions, the places) of the
+	// selected object, or of all of its top assembly, that deliver the most
+	// light to the detectors. Toggling again stops the search early.
+	public void toggleOptimizer(boolean positions)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				if(optimized != null)
+				{
+					finishOptimizer();
+					return;
+				}
+				
+				LightElement le = lightElements.peekLast();
+				
+				if(le == null)
+				{
+					return;
+				}
+				
+				List<LightElement> elements = new ArrayList<LightElement>(lightElements);
+				List<LightElement> chosen = new ArrayList<LightElement>();
+				List<Integer> indices = new ArrayList<Integer>();
+				
+				for(int i = 0; i < elements.size(); i++)
+				{
+					if(elements.get(i).getRoot() == le.getRoot())
+					{
+						chosen.add(elements.get(i));
+						indices.add(i);
+					}
+				}
+				
+				int[] index = new int[indices.size()];
+				
+				for(int i = 0; i < index.length; i++)
+				{
+					index[i] = indices.get(i);
+				}
+				
+				optimized = chosen;
+				optimizedVersion = version;
+				view.startOptimizer(snapshotLightElements(), index, positions, version);
+			}
+		});;
+	}
+	
+	// Stop the search for the best poses, and move the objects into the best
+	// one found, unless the scene changed in the meantime. Call this on the
+	// JOGL thread (e.g. from the view once the search is done).
+	public void finishOptimizer()
+	{
+		Optimizer.Candidate best = view.stopOptimizer();
+		List<LightElement> chosen = optimized;
+		
+		optimized = null;
 		
-		if(noLightBox)
+		if(best == null || chosen == null || version != optimizedVersion)
 		{
-			for(Point2D.Double lp : lightPoints)
-			{
-				lp.setLocation(0.0, 0.0);
-			}
+			return;
 		}
 		
-		view.clearLight();
+		for(int k = 0; k < chosen.size(); k++)
+		{
+			LightElement le = chosen.get(k);
+			LightElement posed = best.getElements().get(k);
+			
+			le.moveTo(posed.getCenter().x, posed.getCenter().y);
+			le.setRotation(posed.getRotation() - le.getRotation());
+		}
+		autosave.putAll(chosen);
+		history.putAll(chosen);
+		changeScene();
 	}
 	
-	// Cycles through the current objects in the scene (cycle direction based on passed boolean)
+	// Cycles through the current objects in the scene (cycle direction based on passed boolean).
+	// The history keeps the new order with the current version, so undoing and redoing
+	// later comes back to the same selection.
 	public void cycleElements(boolean left)
 	{
-		// Checks the case when there are no elements in the scene
-		if(lightElements.size() == 0)
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				// Checks the case when there are no elements in the scene
+				if(lightElements.size() == 0)
+				{
+					return;
+				}
+				
+				// Finish the step in progress, e.g. a drag, first
+				history.commit();
+				
+				if(left) {
+					LightElement le = lightElements.pollLast();
+					
+					lightElements.offerFirst(le);
+					history.reorder(le, true);
+				}
+				else {
+					LightElement le = lightElements.pollFirst();
+					
+					lightElements.offerLast(le);
+					history.reorder(le, false);
+				}
+			}
+		});;
+	}
+	
+	// Rotate the current selected object
+	public void rotateElement(double rotation)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				LightElement le = lightElements.peekLast();
+				
+				if(le != null)
+				{
+					rotateUnit(le, rotation);
+					changeScene();
+				}
+			}
+		});;
+	}
+	
+	// Rotate the current selected object if the point is on it, keeping the
+	// light on and retracing it. Otherwise zoom the camera about the point.
+	public void wheelInViewCoordinates(Point q, double notches, double step)
+	{
+		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
+			public void update(double[] p) {
+				LightElement le = lightElements.peekLast();
+				
+				if(le != null && le.contains(p[0], p[1]))
+				{
+					rotateUnit(le, -notches * step);
+					version++;
+					history.commit();
+				}
+				else
+				{
+					camera.zoomAbout(p[0], p[1], Math.pow(1.1, -notches));
+				}
+			}
+		});;
+	}
+	
+	// Start dragging the current selected object if the point is on it,
+	// otherwise start panning the camera
+	public void beginDragInViewCoordinates(Point q)
+	{
+		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
+			public void update(double[] p) {
+				LightElement le = lightElements.peekLast();
+				
+				if(le != null && le.contains(p[0], p[1]))
+				{
+					Point2D.Double anchor = getUnitPosition(le);
+					
+					dragged = le;
+					dragDx = anchor.x - p[0];
+					dragDy = anchor.y - p[1];
+				}
+				else
+				{
+					panning = true;
+					panStart = q;
+					panCamera = new Camera(camera);
+				}
+			}
+		});;
+	}
+	
+	// Move the dragged object along with the cursor, or pan the camera so
+	// that the scene follows the cursor
+	public void dragElementInViewCoordinates(Point q)
+	{
+		view.getCanvas().invoke(false, new ViewPointUpdater(q) {
+			public void update(double[] p) {
+				if(dragged != null)
+				{
+					moveUnit(dragged, p[0] + dragDx, p[1] + dragDy);
+					version++;
+				}
+				else if(panning)
+				{
+					// Pan by whole pixels from the start, so that several
+					// drag events in one frame don't add up
+					double sx = Camera.WIDTH / panCamera.getZoom() / view.getWidth();
+					double sy = Camera.HEIGHT / panCamera.getZoom() / view.getHeight();
+					
+					camera = new Camera(panCamera);
+					camera.pan(-(q.x - panStart.x) * sx, (q.y - panStart.y) * sy);
+				}
+			}
+		});;
+	}
+	
+	// Stop dragging or panning. The whole drag is one step to undo.
+	public void endDrag()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				dragged = null;
+				panning = false;
+				history.commit();
+			}
+		});;
+	}
+	
+	// Show the original 1280x720 scene area again
+	public void resetCamera()
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				camera.reset();
+			}
+		});;
+	}
+	
+	// Undo the last change to the scene's objects, or redo the last undone
+	// one. The light stays as it is, and the beams show at once if they were
+	// traced for that version before.
+	public void undo(boolean redo)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				List<LightElement> moved = new ArrayList<LightElement>();
+				List<LightElement> removed = new ArrayList<LightElement>();
+				
+				// Finish the step in progress, e.g. a drag, first
+				history.commit();
+				dragged = null;
+				
+				if(redo ? !history.redo(lightElements, moved, removed) :
+						  !history.undo(lightElements, moved, removed))
+				{
+					return;
+				}
+				
+				autosave.putAll(moved);
+				
+				for(LightElement le : removed)
+				{
+					autosave.remove(le);
+				}
+				version++;
+			}
+		});;
+	}
+	
+	// Give a recorder the state its recording starts from, with a copy of
+	// the scene in world space
+	public void captureState(final InputLog.Recorder recorder)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				List<LightElement> scene = new ArrayList<LightElement>();
+				
+				for(LightElement le : lightElements)
+				{
+					scene.add(le.copyInWorld());
+				}
+				recorder.setState(new InputLog.State(view.getWidth(), view.getHeight(), status,
+													 light, paraxial, new Camera(camera), scene));
+			}
+		});;
+	}
+	
+	// Put the scene, camera, light and lens mode back as a recording started.
+	// The elements are copied, so a recording can be replayed again.
+	public void restoreState(final InputLog.State state)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				lightElements.clear();
+				
+				for(LightElement le : state.scene)
+				{
+					lightElements.add(le.copyInWorld());
+				}
+				status = state.status;
+				paraxial = state.paraxial;
+				camera = new Camera(state.camera);
+				dragged = null;
+				panning = false;
+				
+				autosave.reset(lightElements);
+				
+				history.reset(lightElements);
+				changeScene();
+				light = state.light;
+			}
+		});;
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+	
+	// Adds a batch of elements to the end of the scene, passing just them to
+	// the autosave and the history. The batches of one import are one step:
+	// the history only commits with the last.
+	private void appendElements(final List<LightElement> elements, final boolean last)
+	{
+		view.getCanvas().invoke(false, new BasicUpdater() {
+			public void update(GL2 gl) {
+				lightElements.addAll(elements);
+				autosave.putAll(elements);
+				history.putAll(elements);
+				
+				if(last)
+				{
+					changeScene();
+				}
+				else
+				{
+					version++;
+					switchLight(true);
+				}
+			}
+		});;
+	}
+	
+	// Adds a new element to the scene
+	private void place(LightElement le)
+	{
+		int before = version;
+		
+		lightElements.add(le);
+		autosave.put(le);
+		history.put(le);
+		changeScene();
+		adoptPreview(le, before);
+	}
+	
+	// Keeps the light on after placing an element if the preview has already
+	// traced the scene with it there, using the preview's beams
+	private void adoptPreview(LightElement le, int before)
+	{
+		if(preview && view.adoptPreview(le, before))
 		{
-			return;
+			light = true;
 		}
-		
-		if(left) {
-			lightElements.offerFirst(lightElements.pollLast());
+	}
+	
+	// An element moves and rotates as a unit with its top assembly, if any
+	
+	private Point2D.Double getUnitPosition(LightElement le)
+	{
+		if(le.getAssembly() == null)
+		{
+			return le.getCenter();
 		}
-		else {
-			lightElements.offerLast(lightElements.pollFirst());
+		return le.getAssembly().getRoot().getPosition();
+	}
+	
+	private void moveUnit(LightElement le, double x, double y)
+	{
+		if(le.getAssembly() == null)
+		{
+			le.moveTo(x, y);
+			autosave.put(le);
+			history.put(le);
+		}
+		else
+		{
+			le.getAssembly().getRoot().moveTo(x, y);
+			autosave.putAll(le.getAssembly().getRoot().getElements());
+			history.putAll(le.getAssembly().getRoot().getElements());
 		}
 	}
 	
-	// Rotate the current selected object
-	public void rotateElement(double rotation)
+	private void rotateUnit(LightElement le, double degrees)
 	{
-		lightElements.peekLast().setRotation(rotation);
-		toggleLight(true);
+		if(le.getAssembly() == null)
+		{
+			le.setRotation(degrees);
+			autosave.put(le);
+			history.put(le);
+		}
+		else
+		{
+			le.getAssembly().getRoot().rotate(degrees);
+			autosave.putAll(le.getAssembly().getRoot().getElements());
+			history.putAll(le.getAssembly().getRoot().getElements());
+		}
 	}
 
 	//**********************************************************************
@@ -400,206 +1188,125 @@ public final class Model
 
 		public abstract void	update(double[] p);
 	}
-	
-	//**********************************************************************
-	// Object Classes
-	//**********************************************************************
-	
-	// Object class that encapsulates all the object types is for the light project
-	public class LightElement {
-		Point2D.Double bl;
-		Point2D.Double br;
-		Point2D.Double tr;
-		Point2D.Double tl;
-		Point2D.Double t;
-		Point2D.Double center;
-		Point2D.Double[] rCurve;
-		Point2D.Double[] lCurve;
-		Point2D.Double[] defaultRCurve;
-		Point2D.Double[] defaultLCurve;
-		double rotation;
-		String type;
-		
-		public LightElement(String type, Point2D.Double bl, Point2D.Double br, Point2D.Double tr,
-						Point2D.Double tl, Point2D.Double t, Point2D.Double center, 
-						Point2D.Double leftCtrl, Point2D.Double rightCtrl)
+
+	// A batch of changes to the scene, applied together by commit(). The
+	// changes are kept in order and applied to a linked set of the elements,
+	// so each one takes constant time. A transaction is for one thread only,
+	// and can only be committed once.
+	public final class Transaction
+	{
+		private final List<Edit>	edits;
+		private boolean			committed;
+
+		private Transaction()
 		{
-			switch(type)
-			{
-				case "Lightbox":
-					this.bl = bl;
-					this.br = br;
-					this.tr = tr;
-					this.tl = tl;
-					this.center = center;
-					rotation = 0.0;
-					this.type = new String(type);
-					break;
-				case "Mirror":
-					this.bl = bl;
-					this.br = br;
-					this.tr = tr;
-					this.tl = tl;
-					this.center = center;
-					rotation = 0.0;
-					this.type = new String(type);
-					break;
-				case "Prism":
-					this.bl = bl;
-					this.br = br;
-					this.t = t;
-					this.center = center;
-					rotation = 0.0;
-					this.type = new String(type);
-					break;
-				case "Convex":
-					this.bl = bl;
-					this.br = br;
-					this.tr = tr;
-					this.tl = tl;
-					this.center = center;
-					rotation = 0.0;
-					this.type = new String(type);
-					focalLength = 30.0;
-					
-					createConvex(leftCtrl, rightCtrl);
-					break;
-				case "Concave":
-					this.bl = bl;
-					this.br = br;
-					this.tr = tr;
-					this.tl = tl;
-					this.center = center;
-					rotation = 0.0;
-					this.type = new String(type);
-					focalLength = 30.0;
-					
-					createConcave();
-					break;
-			}
+			edits = new ArrayList<Edit>();
+			committed = false;
 		}
-		
-		// Get the type of the element
-		public String getType() {
-			return type;
-		}
-		
-		// Get bottom left point
-		public Point2D.Double getBl() {
-			return bl;
-		}
-		
-		// Get bottom right point
-		public Point2D.Double getBr() {
-			return br;
-		}
-		
-		// Get top right point
-		public Point2D.Double getTr() {
-			return tr;
-		}
-		
-		// Get top left point
-		public Point2D.Double getTl() {
-			return tl;
-		}
-		
-		// Get top point (for the prism)
-		public Point2D.Double getT() {
-			return t;
-		}
-		
-		// Get the center point
-		public Point2D.Double getCenter() {
-			return center;
-		}
-		
-		// Get right curve
-		public Point2D.Double[] getRCurve() {
-			return rCurve;
-		}
-		
-		// Get left curve
-		public Point2D.Double[] getLCurve() {
-			return lCurve;
-		}
-		
-		// Get default right curve
-		public Point2D.Double[] getDefaultRCurve() {
-			return defaultRCurve;
+
+		// Adds an element to the end of the scene (it becomes the selected one)
+		public Transaction	add(final LightElement le)
+		{
+			return edit(new Edit() {
+				public void	apply(Set<LightElement> scene) {
+					scene.remove(le);
+					scene.add(le);
+				}
+			});
 		}
-		
-		// Get default left curve
-		public Point2D.Double[] getDefaultLCurve() {
-			return defaultLCurve;
+
+		// Adds many elements as one edit, in order, e.g. from an import
+		public Transaction	addAll(Collection<LightElement> elements)
+		{
+			final List<LightElement>	list = new ArrayList<LightElement>(elements);
+
+			return edit(new Edit() {
+				public void	apply(Set<LightElement> scene) {
+					for (LightElement le : list)
+					{
+						scene.remove(le);
+						scene.add(le);
+					}
+				}
+			});
 		}
 
-		// Get rotation of the element
-		public double getRotation() {
-			return rotation;
+		// Removes an element, taking it out of its assembly if it is in one
+		public Transaction	remove(final LightElement le)
+		{
+			return edit(new Edit() {
+				public void	apply(Set<LightElement> scene) {
+					if (scene.remove(le) && le.getAssembly() != null)
+						le.getAssembly().remove(le);
+				}
+			});
 		}
-		
-		// Set the rotation of the element
-		public void setRotation(double rotation) {
-			this.rotation += rotation;
+
+		// Rotates an element by a number of degrees
+		public Transaction	rotate(final LightElement le, final double degrees)
+		{
+			return edit(new Edit() {
+				public void	apply(Set<LightElement> scene) {
+					le.setRotation(degrees);
+				}
+			});
 		}
-		
-		// Sets the location of the lightbox element
-		public void setLightbox(Point2D.Double bl, Point2D.Double br, Point2D.Double tr, 
-				Point2D.Double tl, Point2D.Double center) 
+
+		// Removes every element
+		public Transaction	clear()
 		{
-			this.bl = bl;
-			this.br = br;
-			this.tr = tr;
-			this.tl = tl;
-			this.center = center;
-			rotation = 0.0;
+			return edit(new Edit() {
+				public void	apply(Set<LightElement> scene) {
+					scene.clear();
+				}
+			});
 		}
-		
-		// Creates the curves for the convex lens
-		private void createConvex(Point2D.Double leftCtrl, Point2D.Double rightCtrl) {
-			int i;
-			double t;
-			
-			rCurve = new Point2D.Double[11];
-			lCurve = new Point2D.Double[11];
-			defaultRCurve = new Point2D.Double[11];
-			defaultLCurve = new Point2D.Double[11];
-			
-			for(i = 0, t = 0; i < 11 && t < 1.1; i++, t = t + 0.1) {
-				rCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*br.x + 2*t*(1-t)*rightCtrl.x + Math.pow(t, 2)*tr.x),
-						(Math.pow((1-t), 2)*br.y + 2*t*(1-t)*rightCtrl.y + Math.pow(t, 2)*tr.y));
-				lCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*tl.x + 2*t*(1-t)*leftCtrl.x + Math.pow(t, 2)*bl.x),
-						(Math.pow((1-t), 2)*tl.y + 2*t*(1-t)*leftCtrl.y + Math.pow(t, 2)*bl.y));
-				defaultRCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*5.0 + 2*t*(1-t)*15.0 + Math.pow(t, 2)*5.0),
-						(Math.pow((1-t), 2)*(-30.0) + 2*t*(1-t)*0.0 + Math.pow(t, 2)*30.0));
-				defaultLCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*(-5.0) + 2*t*(1-t)*(-15.0) + Math.pow(t, 2)*(-5.0)),
-						(Math.pow((1-t), 2)*30.0 + 2*t*(1-t)*0.0 + Math.pow(t, 2)*(-30.0)));
-			}
+
+		// Applies the changes on the JOGL thread as one change to the scene.
+		// Does nothing if there are no changes.
+		public void	commit()
+		{
+			if (committed)
+				throw new IllegalStateException("Transaction already committed");
+
+			committed = true;
+
+			if (edits.isEmpty())
+				return;
+
+			view.getCanvas().invoke(false, new BasicUpdater() {
+				public void	update(GL2 gl) {
+					Set<LightElement>	scene =
+						new LinkedHashSet<LightElement>(lightElements);
+
+					for (Edit edit : edits)
+						edit.apply(scene);
+
+					lightElements.clear();
+					lightElements.addAll(scene);
+					autosave.reset(lightElements);
+					history.reset(lightElements);
+					changeScene();
+				}
+			});
 		}
-		
-		// Creates the curves for the concave lens
-		private void createConcave() {
-			int i;
-			double t;
-			
-			rCurve = new Point2D.Double[11];
-			lCurve = new Point2D.Double[11];
-			defaultRCurve = new Point2D.Double[11];
-			defaultLCurve = new Point2D.Double[11];
-			
-			for(i = 0, t = 0; i < 11 && t < 1.1; i++, t = t + 0.1) {
-				rCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*br.x + 2*t*(1-t)*center.x + Math.pow(t, 2)*tr.x),
-						(Math.pow((1-t), 2)*br.y + 2*t*(1-t)*center.y + Math.pow(t, 2)*tr.y));
-				lCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*tl.x + 2*t*(1-t)*center.x + Math.pow(t, 2)*bl.x),
-						(Math.pow((1-t), 2)*tl.y + 2*t*(1-t)*center.y + Math.pow(t, 2)*bl.y));
-				defaultRCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*10.0 + 2*t*(1-t)*0.0 + Math.pow(t,2)*10.0),
-						(Math.pow((1-t), 2)*(-30.0) + 2*t*(1-t)*0.0 + Math.pow(t, 2)*30.0));
-				defaultLCurve[i] = new Point2D.Double((Math.pow((1-t), 2)*(-10.0) + 2*t*(1-t)*0.0 + Math.pow(t, 2)*(-10.0)),
-						(Math.pow((1-t), 2)*30.0 + 2*t*(1-t)*0.0 + Math.pow(t, 2)*(-30.0)));
-			}
+
+		private Transaction	edit(Edit edit)
+		{
+			if (committed)
+				throw new IllegalStateException("Transaction already committed");
+
+			edits.add(edit);
+
+			return this;
 		}
 	}
+
+	// One change in a transaction, applied to the scene's elements in order.
+	private interface Edit
+	{
+		public void	apply(Set<LightElement> scene);
+	}
 }
 
 //******************************************************************************
@@ -47,11 +47,15 @@ public final class MouseHandler extends MouseAdapter
 		this.view = view;
 		this.model = model;
 
-		Component	component = view.getCanvas();
-
-		component.addMouseListener(this);
-		component.addMouseMotionListener(this);
-		component.addMouseWheelListener(this);
+		// A headless replay calls the handler itself
+		if (view.getCanvas() instanceof Component)
+		{
+			Component	component = (Component)view.getCanvas();
+
+			component.addMouseListener(this);
+			component.addMouseMotionListener(this);
+			component.addMouseWheelListener(this);
+		}
 	}
 
 	//**********************************************************************
@@ -75,10 +79,12 @@ public final class MouseHandler extends MouseAdapter
 
 	public void		mousePressed(MouseEvent e)
 	{
+		model.beginDragInViewCoordinates(e.getPoint());
 	}
 
 	public void		mouseReleased(MouseEvent e)
 	{
+		model.endDrag();
 	}
 
 	//**********************************************************************
@@ -88,6 +94,7 @@ public final class MouseHandler extends MouseAdapter
 	public void		mouseDragged(MouseEvent e)
 	{
 		model.setCursorInViewCoordinates(e.getPoint());
+		model.dragElementInViewCoordinates(e.getPoint());
 	}
 
 	public void		mouseMoved(MouseEvent e)
@@ -101,6 +108,11 @@ public final class MouseHandler extends MouseAdapter
 
 	public void		mouseWheelMoved(MouseWheelEvent e)
 	{
+		// Rotate the selected object 10 degrees per notch, or 1 with shift,
+		// when the pointer is on it. Otherwise zoom.
+		double	step = (Utilities.isShiftDown(e) ? 1.0 : 10.0);
+
+		model.wheelInViewCoordinates(e.getPoint(), e.getPreciseWheelRotation(), step);
 	}
 }
 
@@ -0,0 +1,467 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Chooses the rotations (and optionally the positions) of some elements of a
+// scene so that the scene's detectors receive as much light as possible. The
+// detectors are the target regions; a candidate's score is the share of the
+// emitted light that reaches them.
+//
+// The search is a (1+lambda) evolution strategy. Each generation perturbs the
+// best candidate so far into POPULATION new ones, with Gaussian steps scaled
+// by a step size, and keeps the best of them if it does better. The step size
+// grows after a generation that found something better and shrinks after one
+// that didn't (the 1/5 success rule), so it settles as the search converges.
+//
+// Most candidates miss the detectors entirely at first, which would leave
+// nothing to climb. So rays that don't reach a detector add a tiny amount for
+// how close they came to one, steering the search toward the targets without
+// ever outweighing light that actually arrives.
+//
+// Every candidate is traced against a copy-on-write view of the scene. The
+// scene is copied out of its assemblies once; a candidate copies only the
+// elements it changes and shares the rest. The unchanged elements are in one
+// grid built up front, and a candidate's changed elements are the tracer's
+// extra node. The candidates of a generation are traced in parallel on the
+// common ForkJoinPool, each on one thread. They are drawn from a seeded
+// generator on the calling thread, so a run is the same every time.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.concurrent.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Optimizer</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Optimizer
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		POPULATION = 32;		// Candidates per generation
+	public static final int		GENERATIONS = 250;		// Then the search stops
+	public static final double		ROTATION_STEP = 15.0;	// Initial, in degrees
+	public static final double		POSITION_STEP = 40.0;	// Initial, in units
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final double	GROW = Math.exp(1.0 / 3.0);		// On success
+	private static final double	SHRINK = Math.exp(-1.0 / 12.0);	// On failure
+	private static final double	MIN_SCALE = 1.0e-3;	// Then the search stops
+	private static final double	NEAR = 1.0e-6;		// Weight of near misses
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final List<LightElement>	scene;		// Copied out of assemblies
+	private final int[]					indices;	// Of the chosen elements
+	private final boolean				positions;	// Also move them
+	private final ElementGrid			grid;		// The unchanged elements
+	private final List<LightElement>	targets;	// The detectors
+	private final double				factor;
+	private final boolean				paraxial;
+	private final SplittableRandom		random;
+
+	private volatile Candidate			best;
+	private volatile int				generation;
+	private volatile int				evaluations;
+	private volatile double			scale;		// Multiplies the steps
+	private volatile boolean			cancelled;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Optimizes the elements at some indices in the scene, traced with a
+	// travel factor. The scene must not change while the optimizer is being
+	// set up, but may afterwards.
+	public Optimizer(List<LightElement> scene, int[] indices, boolean positions,
+					 double factor, boolean paraxial, long seed)
+	{
+		List<LightElement>	copy = new ArrayList<LightElement>(scene.size());
+		List<LightElement>	unchanged = new ArrayList<LightElement>();
+		Set<Integer>		chosen = new HashSet<Integer>();
+
+		for (int i : indices)
+		{
+			if (i < 0 || i >= scene.size())
+				throw new IndexOutOfBoundsException("No element " + i +
+													" in a scene of " + scene.size());
+
+			chosen.add(i);
+		}
+
+		targets = new ArrayList<LightElement>();
+
+		for (int i = 0; i < scene.size(); i++)
+		{
+			LightElement	le = scene.get(i).copyInWorld();
+
+			copy.add(le);
+
+			if (!chosen.contains(i))
+				unchanged.add(le);
+
+			if (le.getDetector() != null)
+				targets.add(le);
+		}
+
+		this.scene = copy;
+		this.indices = indices.clone();
+		this.positions = positions;
+		this.factor = factor;
+		this.paraxial = paraxial;
+
+		grid = new ElementGrid(unchanged);
+		random = new SplittableRandom(seed);
+
+		generation = 0;
+		evaluations = 0;
+		scale = 1.0;
+		cancelled = false;
+
+		best = evaluate(getStart());
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the best candidate so far, which is the starting pose at first.
+	public Candidate	getBest()
+	{
+		return best;
+	}
+
+	public int	getGeneration()
+	{
+		return generation;
+	}
+
+	// Gets the number of candidates traced so far.
+	public int	getEvaluations()
+	{
+		return evaluations;
+	}
+
+	// Gets the step size, relative to the initial steps.
+	public double	getScale()
+	{
+		return scale;
+	}
+
+	// Gets the indices in the scene of the elements being optimized.
+	public int[]	getIndices()
+	{
+		return indices.clone();
+	}
+
+	// True once the search has run its generations or converged, or if it
+	// was cancelled, or if there are no detectors to aim for.
+	public boolean	isDone()
+	{
+		return (cancelled || targets.isEmpty() || generation >= GENERATIONS ||
+				scale < MIN_SCALE);
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Runs one generation, unless the search is done. Call this from one
+	// thread at a time; the getters may be read from any thread.
+	public void	step()
+	{
+		if (isDone())
+			return;
+
+		double[]				center = best.params;
+		double[]				steps = getSteps();
+		final List<Evaluate>	tasks = new ArrayList<Evaluate>(POPULATION);
+
+		for (int i = 0; i < POPULATION; i++)
+		{
+			double[]	params = new double[center.length];
+
+			for (int j = 0; j < params.length; j++)
+				params[j] = center[j] + steps[j] * scale * gaussian();
+
+			tasks.add(new Evaluate(params));
+		}
+
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+				protected void	compute() {
+					invokeAll(tasks);
+				}
+			});
+
+		// A generation cancelled while it ran doesn't count
+		if (cancelled)
+			return;
+
+		Candidate	next = best;
+
+		for (Evaluate task : tasks)
+			if (task.result.score > next.score)
+				next = task.result;
+
+		scale *= ((next != best) ? GROW : SHRINK);
+		evaluations += tasks.size();
+		generation++;
+		best = next;
+	}
+
+	// Runs generations until the search is done, for use without a view.
+	public Candidate	run()
+	{
+		while (!isDone())
+			step();
+
+		return best;
+	}
+
+	// Asks the search to stop after the current generation. Its results are
+	// dropped, and it isn't counted, so the best candidate, the scale and the
+	// counts of generations and evaluations stay as they were before it.
+	public void	cancel()
+	{
+		cancelled = true;
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	// Gets the parameters of the starting pose: the rotation of each chosen
+	// element, followed by its center if positions are optimized too.
+	private double[]	getStart()
+	{
+		int			stride = (positions ? 3 : 1);
+		double[]	params = new double[indices.length * stride];
+
+		for (int k = 0; k < indices.length; k++)
+		{
+			LightElement	le = scene.get(indices[k]);
+
+			params[k * stride] = le.getRotation();
+
+			if (positions)
+			{
+				params[k * stride + 1] = le.getCenter().x;
+				params[k * stride + 2] = le.getCenter().y;
+			}
+		}
+
+		return params;
+	}
+
+	// Gets the initial step of each parameter.
+	private double[]	getSteps()
+	{
+		int			stride = (positions ? 3 : 1);
+		double[]	steps = new double[indices.length * stride];
+
+		for (int j = 0; j < steps.length; j++)
+			steps[j] = (((j % stride) == 0) ? ROTATION_STEP : POSITION_STEP);
+
+		return steps;
+	}
+
+	// Draws a standard normal value (Box-Muller).
+	private double	gaussian()
+	{
+		double	u = 1.0 - random.nextDouble();
+		double	v = random.nextDouble();
+
+		return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+	}
+
+	// Traces the scene with the chosen elements posed by the parameters.
+	private Candidate	evaluate(double[] params)
+	{
+		int					stride = (positions ? 3 : 1);
+		List<LightElement>	posed = new ArrayList<LightElement>(scene);
+		List<LightElement>	changed = new ArrayList<LightElement>(indices.length);
+
+		for (int k = 0; k < indices.length; k++)
+		{
+			LightElement	le = new LightElement(scene.get(indices[k]));
+
+			le.setRotation(params[k * stride] - le.getRotation());
+
+			if (positions)
+				le.moveTo(params[k * stride + 1], params[k * stride + 2]);
+
+			posed.set(indices[k], le);
+			changed.add(le);
+		}
+
+		RayTree	tree = new RayTree(posed);
+		Tracer	tracer = new Tracer(grid, new Changed(changed), factor);
+
+		tracer.setParaxial(paraxial);
+		tree.traceInOrder(tracer);
+
+		return new Candidate(params, changed, tree, getDelivered(posed, tree),
+							 getNearness(posed, tree));
+	}
+
+	// Gets the share of the emitted light that reached the detectors.
+	private double	getDelivered(List<LightElement> posed, RayTree tree)
+	{
+		int		emitted = tree.getRoots().length;
+		double	sum = 0.0;
+
+		if (emitted == 0)
+			return 0.0;
+
+		for (LightElement le : posed)
+			if (le.getDetector() != null)
+				sum += tree.getReading(le.getDetector()).getIntensity();
+
+		return sum / emitted;
+	}
+
+	// Gets how close the rays that missed the detectors came to one, from
+	// 0.0 (as far as the world is wide) to 1.0 for each unit of light.
+	private double	getNearness(List<LightElement> posed, RayTree tree)
+	{
+		List<Point2D.Double>	centers = new ArrayList<Point2D.Double>();
+		double					sum = 0.0;
+
+		for (LightElement le : posed)
+			if (le.getDetector() != null)
+				centers.add(le.getCenter());
+
+		for (Ray ray : tree.getRays())
+		{
+			if (!ray.getChildren().isEmpty() ||
+				ray.getTermination() == Ray.Termination.DETECTED)
+				continue;
+
+			double	d = Double.MAX_VALUE;
+
+			for (Point2D.Double p : ray.getTrace())
+				for (Point2D.Double c : centers)
+					d = Math.min(d, p.distance(c));
+
+			sum += ray.getWeight() * Math.max(0.0, 1.0 - d / Camera.WIDTH);
+		}
+
+		return sum / Math.max(1, tree.getRoots().length);
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// Traces one candidate.
+	private final class Evaluate extends RecursiveAction
+	{
+		private static final long	serialVersionUID = 1L;
+
+		private final double[]		params;
+		private Candidate			result;
+
+		public Evaluate(double[] params)
+		{
+			this.params = params;
+		}
+
+		protected void	compute()
+		{
+			result = evaluate(params);
+		}
+	}
+
+	// The changed elements of a candidate, as one node for the tracer.
+	private static final class Changed implements SceneNode
+	{
+		private final List<LightElement>	elements;
+
+		public Changed(List<LightElement> elements)
+		{
+			this.elements = elements;
+		}
+
+		public Rectangle2D.Double	getBounds()
+		{
+			Rectangle2D.Double	box = null;
+
+			for (LightElement le : elements)
+			{
+				if (box == null)
+					box = le.getBounds();
+				else
+					box.add(le.getBounds());
+			}
+
+			return ((box != null) ? box : new Rectangle2D.Double());
+		}
+
+		public void	collect(double minX, double minY, double maxX, double maxY,
+							List<LightElement> out)
+		{
+			for (LightElement le : elements)
+				le.collect(minX, minY, maxX, maxY, out);
+		}
+	}
+
+	// A pose of the chosen elements, and how it did.
+	public static final class Candidate
+	{
+		private final double[]				params;
+		private final List<LightElement>	elements;
+		private final RayTree				tree;
+		private final double				delivered;
+		private final double				score;
+
+		private Candidate(double[] params, List<LightElement> elements,
+						  RayTree tree, double delivered, double nearness)
+		{
+			this.params = params;
+			this.elements = elements;
+			this.tree = tree;
+			this.delivered = delivered;
+
+			score = delivered + NEAR * nearness;
+		}
+
+		// Gets the share of the emitted light that reached the detectors.
+		public double	getDelivered()
+		{
+			return delivered;
+		}
+
+		// Gets copies of the chosen elements in this pose, in world space,
+		// in the order of the optimizer's indices.
+		public List<LightElement>	getElements()
+		{
+			return Collections.unmodifiableList(elements);
+		}
+
+		// Gets the traced rays of the scene in this pose.
+		public RayTree	getTree()
+		{
+			return tree;
+		}
+	}
+}
+
+//******************************************************************************
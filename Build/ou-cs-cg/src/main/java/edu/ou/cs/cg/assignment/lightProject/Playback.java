@@ -0,0 +1,151 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Plays back the beams of a traced scene. The position is the arc length the
+// beam fronts have reached; drawing a path shows it up to there. Playing
+// moves the position forward at a rate, which can be paused, sped up or
+// slowed down, and scrubbing moves it directly. None of these trace again.
+//
+// New paths (e.g. from a retrace while an element is dragged) keep the
+// position, so the beam fronts stay where they were. If playback had already
+// reached the end of the old paths, it moves to the end of the new ones.
+//
+// A playback belongs to the thread that draws it.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Playback</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Playback
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final double		MIN_RATE = 1.0 / 16.0;
+	public static final double		MAX_RATE = 16.0;
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private List<BeamPath>		paths;
+	private double				end;		// Largest arc length of the paths
+	private double				position;	// Arc length of the beam fronts
+	private double				rate;		// Multiplies the distance played
+	private boolean			paused;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public Playback()
+	{
+		paths = new ArrayList<BeamPath>();
+		end = 0.0;
+		position = 0.0;
+		rate = 1.0;
+		paused = false;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public List<BeamPath>	getPaths()
+	{
+		return paths;
+	}
+
+	public double	getEnd()
+	{
+		return end;
+	}
+
+	public double	getPosition()
+	{
+		return position;
+	}
+
+	public double	getRate()
+	{
+		return rate;
+	}
+
+	public boolean	isPaused()
+	{
+		return paused;
+	}
+
+	// Replaces the paths, keeping the position (see notes).
+	public void	setPaths(List<BeamPath> paths)
+	{
+		boolean	done = ((position >= end) && !this.paths.isEmpty());
+
+		this.paths = paths;
+		end = 0.0;
+
+		for (BeamPath path : paths)
+			end = Math.max(end, path.getEnd());
+
+		position = (done ? end : Math.min(position, end));
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Drops the paths and goes back to the start.
+	public void	clear()
+	{
+		paths = new ArrayList<BeamPath>();
+		end = 0.0;
+		position = 0.0;
+	}
+
+	// Moves the beam fronts forward by a distance times the rate, unless
+	// paused, stopping at the end.
+	public void	advance(double distance)
+	{
+		if (!paused)
+			position = Math.min(end, position + distance * rate);
+	}
+
+	// Moves the beam fronts by a distance, either way, within the paths.
+	public void	scrub(double distance)
+	{
+		position = Math.max(0.0, Math.min(end, position + distance));
+	}
+
+	// Jumps to the end, showing the whole beams.
+	public void	finish()
+	{
+		position = end;
+	}
+
+	public void	togglePause()
+	{
+		paused = !paused;
+	}
+
+	// Multiplies the rate by a factor, within the rate limits.
+	public void	scaleRate(double factor)
+	{
+		rate = Math.max(MIN_RATE, Math.min(MAX_RATE, rate * factor));
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,219 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// A ray is the state of one light beam: the current position of its light
+// point, the per-frame direction vector it travels along, and the trace of
+// points it has passed through. Rays are plain data so that they can be traced
+// on any thread, not just the JOGL thread.
+//
+// A ray also keeps what the tracer needs to end it: how many times it has
+// bounced, how far it has gone, and the mirror hits it has made. Once it ends
+// it records why, and never moves again.
+//
+// Rays are the nodes of a RayTree. A ray that splits at a lens ends there and
+// its children carry on from the same point, each with its share of the
+// parent's weight (intensity). Children start with the parent's bounce count
+// and length, so the budgets apply to the whole path from the lightbox.
+//
+// Each ray carries a packet of wavelengths that travel together. The packet
+// only splits up, into children with fewer wavelengths, when refraction sends
+// its wavelengths in different directions. Packets are never modified, so
+// rays may share them.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Ray</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Ray
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	// Why a ray stopped
+	public enum Termination
+	{
+		ACTIVE,			// Still moving
+		EXITED,			// Left the world
+		ABSORBED,		// Hit a lightbox
+		DETECTED,		// Hit a detector, which recorded it
+		BUDGET,			// Ran out of bounces, length, or hits per step
+		SPLIT,			// Split into reflected and transmitted children
+		CYCLE,			// Caught in a periodic orbit between mirrors
+	}
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	final Point2D.Double				point;		// Current light point
+	final Point2D.Double				vector;		// Direction per frame
+	final ArrayDeque<Point2D.Double>	trace;		// Points passed through
+	private final double				offset;		// Path length at start
+
+	int								bounces;	// Interactions so far
+	double								length;		// Path length so far
+	Set<Object>						visits;		// Mirror hits, for cycles
+	private Termination				termination;
+
+	RayTree							tree;		// Tree the ray belongs to
+	int								exportId;	// See TraceExport, or -1
+	private final double				weight;		// Fraction of emitted light
+	private final int					depth;		// Splits above this ray
+	private final double[]				wavelengths;	// Packet, in nm
+	private final List<Ray>			children;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public Ray(double x, double y, double vx, double vy)
+	{
+		this(x, y, vx, vy, Spectrum.sample(Spectrum.SAMPLES));
+	}
+
+	public Ray(double x, double y, double vx, double vy, double[] wavelengths)
+	{
+		point = new Point2D.Double(x, y);
+		vector = new Point2D.Double(vx, vy);
+		trace = new ArrayDeque<Point2D.Double>();
+		offset = 0.0;
+		termination = Termination.ACTIVE;
+
+		weight = 1.0;
+		depth = 0;
+		this.wavelengths = wavelengths;
+		children = new ArrayList<Ray>(2);
+		exportId = -1;
+	}
+
+	// Creates a child of the parent, starting at (x, y).
+	private Ray(Ray parent, double x, double y, double vx, double vy,
+				double weight, double[] wavelengths)
+	{
+		point = new Point2D.Double(x, y);
+		vector = new Point2D.Double(vx, vy);
+		trace = new ArrayDeque<Point2D.Double>();
+		offset = parent.length;
+		termination = Termination.ACTIVE;
+
+		bounces = parent.bounces;
+		length = parent.length;
+		tree = parent.tree;
+		this.weight = weight;
+		depth = parent.depth + 1;
+		this.wavelengths = wavelengths;
+		children = new ArrayList<Ray>(2);
+		exportId = -1;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public Point2D.Double	getPoint()
+	{
+		return point;
+	}
+
+	public Point2D.Double	getVector()
+	{
+		return vector;
+	}
+
+	public ArrayDeque<Point2D.Double>	getTrace()
+	{
+		return trace;
+	}
+
+	// Gets the path length from the lightbox to where the ray started, the
+	// first point of its trace.
+	public double	getOffset()
+	{
+		return offset;
+	}
+
+	public int	getBounces()
+	{
+		return bounces;
+	}
+
+	public double	getLength()
+	{
+		return length;
+	}
+
+	public Termination	getTermination()
+	{
+		return termination;
+	}
+
+	public double	getWeight()
+	{
+		return weight;
+	}
+
+	public int	getDepth()
+	{
+		return depth;
+	}
+
+	public double[]	getWavelengths()
+	{
+		return wavelengths;
+	}
+
+	// Only the thread tracing this ray adds children, when it splits.
+	public List<Ray>	getChildren()
+	{
+		return children;
+	}
+
+	// A ray stops moving once it has terminated for any reason
+	public boolean	isStopped()
+	{
+		return (termination != Termination.ACTIVE);
+	}
+
+	//**********************************************************************
+	// Package Methods
+	//**********************************************************************
+
+	// Ends the ray, keeping the first reason given. The visits aren't needed
+	// any more.
+	void	terminate(Termination reason)
+	{
+		if (termination == Termination.ACTIVE)
+			termination = reason;
+
+		visits = null;
+	}
+
+	// Adds a child carrying some of the packet, starting at the current
+	// point, if the tree admits its weight. Returns false if it was culled.
+	boolean	spawn(double vx, double vy, double weight, double[] wavelengths)
+	{
+		if ((tree == null) || !tree.admit(weight))
+			return false;
+
+		children.add(new Ray(this, point.x, point.y, vx, vy, weight,
+							 wavelengths));
+		return true;
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,431 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// A ray tree holds the beams from one emission of the lightbox. The emitted
+// rays are the roots. When a ray meets a lens or prism surface it ends there
+// and splits into a reflected child and transmitted children (one per group
+// of wavelengths that bend alike), whose weights are the parent's weight
+// times the Fresnel reflectance and transmittance.
+//
+// Trees would grow exponentially, so a child is only added if its weight is
+// at least the threshold and the tree is still under its node budget. The
+// budget is shared by all the threads expanding the tree.
+//
+// A whole tree is traced by a ForkJoinPool. Each node is a task that traces
+// its ray and forks tasks for the children, so idle threads steal subtrees
+// from busy ones. Each task uses its own Tracer, since tracers aren't shared.
+//
+// A trace can be cancelled from another thread, e.g. when its result is no
+// longer wanted. Tasks that haven't started return at once, and rays being
+// traced stop soon after, leaving the tree partly traced.
+//
+// The divergence of two trees of the same scene (e.g. traced in exact and in
+// paraxial mode) compares the brightest path from each emitted ray: it is the
+// mean, over the emitted rays, of the largest distance between the two paths
+// at the same path length.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>RayTree</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class RayTree
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final double		THRESHOLD = 0.01;	// Default min weight
+	public static final int		MAX_NODES = 4096;	// Default node budget
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final double	SAMPLE = 1.0;		// Divergence sampling
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final Ray[]				roots;
+	private final double				threshold;
+	private final int					maxNodes;
+
+	private final AtomicInteger		nodes;		// Rays in the tree
+	private final AtomicInteger		culled;		// Children under threshold
+	private final AtomicInteger		dropped;	// Children over budget
+
+	private volatile boolean			cancelled;
+	private boolean					recording;	// Keep the rays' traces
+	private TraceExport				export;		// Streams the rays out
+
+	// What each detector hit by the rays has recorded
+	private final ConcurrentHashMap<Detector, DetectorReading>	readings;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Builds the roots of a tree from the lightbox in the elements.
+	public RayTree(Collection<LightElement> elements)
+	{
+		this(Tracer.emit(elements), THRESHOLD, MAX_NODES);
+	}
+
+	public RayTree(Ray[] roots, double threshold, int maxNodes)
+	{
+		this.roots = roots;
+		this.threshold = threshold;
+		this.maxNodes = maxNodes;
+
+		nodes = new AtomicInteger(roots.length);
+		culled = new AtomicInteger();
+		dropped = new AtomicInteger();
+		cancelled = false;
+		recording = true;
+		export = null;
+		readings = new ConcurrentHashMap<Detector, DetectorReading>();
+
+		for (Ray ray : roots)
+			ray.tree = this;
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Gets the divergence of two fully traced trees of the same scene.
+	public static double	getDivergence(RayTree a, RayTree b)
+	{
+		int		n = Math.min(a.roots.length, b.roots.length);
+		double	sum = 0.0;
+
+		for (int i = 0; i < n; i++)
+			sum += getDistance(getBrightestPath(a.roots[i]),
+							   getBrightestPath(b.roots[i]));
+
+		return ((n > 0) ? sum / n : 0.0);
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public Ray[]	getRoots()
+	{
+		return roots;
+	}
+
+	public int	getNodeCount()
+	{
+		return nodes.get();
+	}
+
+	public int	getCulledCount()
+	{
+		return culled.get();
+	}
+
+	public int	getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	public boolean	isCancelled()
+	{
+		return cancelled;
+	}
+
+	public boolean	isRecording()
+	{
+		return recording;
+	}
+
+	// Keeps the traces of the rays, or only where they start and end, which
+	// takes much less memory (see Tracer.setRecording()). Set it before
+	// tracing the tree.
+	public void	setRecording(boolean recording)
+	{
+		this.recording = recording;
+	}
+
+	public TraceExport	getExport()
+	{
+		return export;
+	}
+
+	// Streams the path of every ray to an export as it is traced (see
+	// Tracer.setExport()), or not if null. Set it before tracing the tree.
+	public void	setExport(TraceExport export)
+	{
+		this.export = export;
+	}
+
+	// Gets what a detector has recorded from the rays of the tree so far,
+	// which is nothing if no ray has hit it.
+	public DetectorReading	getReading(Detector detector)
+	{
+		DetectorReading	reading = readings.get(detector);
+
+		return ((reading != null) ? reading : new DetectorReading());
+	}
+
+	// Gets the readings of every detector hit by the rays so far.
+	public Map<Detector, DetectorReading>	getReadings()
+	{
+		return Collections.unmodifiableMap(readings);
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Lists every ray in the tree, parents before their children. Only call
+	// this while no thread is expanding the tree.
+	public List<Ray>	getRays()
+	{
+		List<Ray>	rays = new ArrayList<Ray>(nodes.get());
+
+		rays.addAll(Arrays.asList(roots));
+
+		for (int i = 0; i < rays.size(); i++)
+			rays.addAll(rays.get(i).getChildren());
+
+		return rays;
+	}
+
+	// Traces the whole tree across the cores of the common ForkJoinPool, or
+	// of the pool the caller is running in, if any. The grid and extra element
+	// are as for the Tracer.
+	public void	trace(ElementGrid grid, LightElement extra, double factor,
+					  boolean paraxial)
+	{
+		List<Expand>	tasks = new ArrayList<Expand>();
+
+		for (Ray ray : roots)
+			tasks.add(new Expand(ray, grid, extra, factor, paraxial));
+
+		RecursiveAction	all = new RecursiveAction() {
+				protected void	compute() {
+					invokeAll(tasks);
+				}
+			};
+
+		if (ForkJoinTask.inForkJoinPool())
+			all.invoke();
+		else
+			ForkJoinPool.commonPool().invoke(all);
+	}
+
+	// Traces the whole tree on the calling thread, breadth first, with a
+	// tracer of its own. Used where the parallelism is across trees instead.
+	public void	traceInOrder(Tracer tracer)
+	{
+		ArrayDeque<Ray>	queue = new ArrayDeque<Ray>(Arrays.asList(roots));
+
+		while (!queue.isEmpty() && !cancelled)
+		{
+			Ray	ray = queue.poll();
+
+			tracer.trace(ray, Tracer.MAX_STEPS);
+			queue.addAll(ray.getChildren());
+		}
+	}
+
+	// Asks any trace of the tree to stop as soon as it can.
+	public void	cancel()
+	{
+		cancelled = true;
+	}
+
+	//**********************************************************************
+	// Package Methods
+	//**********************************************************************
+
+	// Records a ray hitting a detector. Called by tracers on any thread.
+	void	detect(Detector detector, double weight, double position,
+				   double angle)
+	{
+		DetectorReading	reading = readings.get(detector);
+
+		if (reading == null)
+		{
+			DetectorReading	other = readings.putIfAbsent(detector,
+										reading = new DetectorReading());
+
+			if (other != null)
+				reading = other;
+		}
+
+		reading.record(weight, position, angle);
+	}
+
+	// Checks if a child with the given weight may be added, and reserves a
+	// node for it if so.
+	boolean	admit(double weight)
+	{
+		if (weight < threshold)
+		{
+			culled.incrementAndGet();
+			return false;
+		}
+
+		if (nodes.incrementAndGet() > maxNodes)
+		{
+			nodes.decrementAndGet();
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		return true;
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// Joins the traces from the root down, always taking the brightest child.
+	private static List<Point2D.Double>	getBrightestPath(Ray ray)
+	{
+		List<Point2D.Double>	path = new ArrayList<Point2D.Double>();
+
+		while (true)
+		{
+			path.addAll(ray.getTrace());
+
+			Ray	next = null;
+
+			for (Ray child : ray.getChildren())
+				if ((next == null) || (child.getWeight() > next.getWeight()))
+					next = child;
+
+			if (next == null)
+				return path;
+
+			ray = next;
+		}
+	}
+
+	// Walks both paths at the same speed and returns the largest distance
+	// between them, up to the end of the shorter one.
+	private static double	getDistance(List<Point2D.Double> a,
+										List<Point2D.Double> b)
+	{
+		PathWalker	wa = new PathWalker(a);
+		PathWalker	wb = new PathWalker(b);
+		double		max = 0.0;
+
+		while (wa.hasNext() && wb.hasNext())
+		{
+			max = Math.max(max, wa.point.distance(wb.point));
+			wa.advance(SAMPLE);
+			wb.advance(SAMPLE);
+		}
+		return max;
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// Moves a point along a polyline by path length.
+	private static final class PathWalker
+	{
+		private final List<Point2D.Double>	path;
+		private int							index;	// Segment start
+		private final Point2D.Double		point;
+
+		public PathWalker(List<Point2D.Double> path)
+		{
+			this.path = path;
+			index = 0;
+			point = (path.isEmpty() ? null : new Point2D.Double(path.get(0).x,
+																path.get(0).y));
+		}
+
+		public boolean	hasNext()
+		{
+			return (point != null) && (index < path.size() - 1);
+		}
+
+		public void	advance(double d)
+		{
+			while (index < path.size() - 1)
+			{
+				Point2D.Double	q = path.get(index + 1);
+				double			r = point.distance(q);
+
+				if (r > d)
+				{
+					point.x += (q.x - point.x) * d / r;
+					point.y += (q.y - point.y) * d / r;
+					return;
+				}
+
+				d -= r;
+				point.setLocation(q.x, q.y);
+				index++;
+			}
+		}
+	}
+
+	// Traces one ray, then its children in parallel.
+	private static final class Expand extends RecursiveAction
+	{
+		private static final long	serialVersionUID = 1L;
+
+		private final Ray				ray;
+		private final ElementGrid		grid;
+		private final LightElement		extra;
+		private final double			factor;
+		private final boolean			paraxial;
+
+		public Expand(Ray ray, ElementGrid grid, LightElement extra,
+					  double factor, boolean paraxial)
+		{
+			this.ray = ray;
+			this.grid = grid;
+			this.extra = extra;
+			this.factor = factor;
+			this.paraxial = paraxial;
+		}
+
+		protected void	compute()
+		{
+			if (ray.tree.isCancelled())
+				return;
+
+			Tracer	tracer = new Tracer(grid, extra, factor);
+
+			tracer.setParaxial(paraxial);
+			tracer.setRecording(ray.tree.isRecording());
+			tracer.setExport(ray.tree.getExport());
+			tracer.trace(ray, Tracer.MAX_STEPS);
+
+			List<Expand>	tasks = new ArrayList<Expand>();
+
+			for (Ray child : ray.getChildren())
+				tasks.add(new Expand(child, grid, extra, factor, paraxial));
+
+			invokeAll(tasks);
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,510 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Plays a recorded session (see InputLog) back through the KeyHandler and
+// MouseHandler, from the state the session started in, and measures how the
+// view keeps up: the time of each frame (the view's update and render), and
+// how long each background trace took from the frame that asked for it to
+// the frame that picked it up.
+//
+// In the window (shift-R), the events go to the handlers on the AWT event
+// thread at the times they were recorded, while the animator draws frames as
+// usual.
+//
+// Without a window (main), the view draws into an offscreen drawable of the
+// recorded size, so it still needs an OpenGL driver that can draw offscreen
+// (e.g. Mesa's software renderer on a server); unlike Batch, it can't run
+// without one. Frames are stepped as fast as they can be drawn. Each frame
+// stands for 1/60 s of the session: the events recorded by then are handled,
+// and the view is given that time, so beams advance as they would have. By
+// default each frame also waits for any background trace to finish, so the
+// same log gives the same frames, with the same work in each, on any machine.
+// The session is followed by a second of frames without input for the last
+// traces and beams to finish.
+//
+// With no animator, JOGL applies each change to the model at once, drawing
+// the drawable to do so, and those draws count as frames too.
+//
+// A replay leaves the user's files alone. The keys that save, load or import
+// a scene are skipped, and without a window the model neither recovers the
+// autosave journal nor writes to it, so the run starts from the recorded
+// scene only.
+//
+// A summary of the run goes to standard output as CSV, so runs can be
+// compared over time. Frame times can also be written out one per line.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import com.jogamp.opengl.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Replay</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Replay
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		FRAMES_PER_SECOND = 60;		// Headless
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final long		WAIT = 100000L;		// Between polls, ns
+
+	// Keys that read or write files, which a replay skips
+	private static final Set<Integer>	FILE_KEYS = new HashSet<Integer>(
+		Arrays.asList(KeyEvent.VK_S, KeyEvent.VK_L, KeyEvent.VK_I));
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final InputLog			log;
+	private volatile boolean		cancelled;
+	private volatile boolean		done;
+
+	// Measurements, guarded by this
+	private long[]					frames;		// Times, in ns
+	private int					frameCount;
+	private int					traceCount;
+	private long					traceTotal;	// In ns
+	private long					traceMax;
+	private int					rays;		// In the last trace
+	private int					dispatched;	// Events
+	private long					wall;		// Whole run, in ns
+
+	//**********************************************************************
+	// Main
+	//**********************************************************************
+
+	// Usage: Replay [--fps <n>] [--settle <frames>] [--no-wait]
+	//				 [--frames <file>] <log>
+	public static void	main(String[] args)
+	{
+		int		fps = FRAMES_PER_SECOND;
+		int		settle = -1;
+		boolean	wait = true;
+		String		frames = null;
+		String		path = null;
+
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				switch (args[i])
+				{
+					case "--fps":
+						fps = Integer.parseInt(args[++i]);
+						break;
+					case "--settle":
+						settle = Integer.parseInt(args[++i]);
+						break;
+					case "--no-wait":
+						wait = false;
+						break;
+					case "--frames":
+						frames = args[++i];
+						break;
+					default:
+						if (args[i].startsWith("-") || path != null)
+							throw new IllegalArgumentException(args[i]);
+
+						path = args[i];
+				}
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			path = null;
+		}
+
+		if (path == null || fps < 1)
+		{
+			System.err.println("Usage: lightProject-replay [--fps <n>] " +
+							   "[--settle <frames>] [--no-wait] " +
+							   "[--frames <file>] <log>");
+			System.err.println("Draws offscreen, so it needs an OpenGL driver " +
+							   "even without a display; lightProject-batch " +
+							   "times traces without OpenGL");
+			System.exit(1);
+		}
+
+		InputLog	log = null;
+
+		try
+		{
+			log = InputLog.read(Paths.get(path));
+		}
+		catch (IOException ex)
+		{
+			System.err.println(ex.getMessage());
+			System.exit(2);
+		}
+
+		InputLog.State		state = log.getState();
+		GLAutoDrawable		drawable = null;
+
+		try
+		{
+			GLProfile		profile = GLProfile.getDefault();
+			GLCapabilities	capabilities = new GLCapabilities(profile);
+
+			capabilities.setOnscreen(false);
+			drawable = GLDrawableFactory.getFactory(profile)
+				.createOffscreenAutoDrawable(null, capabilities, null,
+											 Math.max(1, state.width),
+											 Math.max(1, state.height));
+		}
+		catch (GLException | UnsatisfiedLinkError ex)
+		{
+			System.err.println("Couldn't make an offscreen drawable: " +
+							   ex.getMessage());
+			System.err.println("A replay needs an OpenGL driver that can draw " +
+							   "offscreen; lightProject-batch times traces " +
+							   "without OpenGL");
+			System.exit(2);
+		}
+
+		View	view = new View(drawable, false, false);
+		Replay	replay = new Replay(log);
+
+		drawable.display();		// Initializes the view
+		view.startReplay(replay);
+		replay.run(view, drawable, fps,
+				   ((settle >= 0) ? settle : fps), wait);
+
+		System.err.println(path + ": " + replay.getSummary());
+		System.out.println("frames,events,wall_ms,frame_mean_ms,frame_p50_ms," +
+						   "frame_p95_ms,frame_p99_ms,frame_max_ms,traces," +
+						   "trace_mean_ms,trace_max_ms,rays");
+		System.out.println(replay.getCsv());
+
+		if (frames != null)
+		{
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(frames), StandardCharsets.UTF_8)))
+			{
+				replay.writeFrames(out);
+			}
+			catch (IOException ex)
+			{
+				System.err.println(ex.getMessage());
+				System.exit(2);
+			}
+		}
+
+		drawable.destroy();
+		System.exit(0);
+	}
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public Replay(InputLog log)
+	{
+		this.log = log;
+
+		cancelled = false;
+		done = false;
+
+		frames = new long[1024];
+		frameCount = 0;
+		traceCount = 0;
+		traceTotal = 0L;
+		traceMax = 0L;
+		rays = 0;
+		dispatched = 0;
+		wall = 0L;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public InputLog	getLog()
+	{
+		return log;
+	}
+
+	public boolean	isDone()
+	{
+		return done;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Plays the events to the view's handlers at the times they were
+	// recorded, on a thread of its own. The view's state should already have
+	// been put back (see View.startReplay()).
+	public void	play(final View view)
+	{
+		Thread	thread = new Thread("Replay") {
+				public void	run() {
+					playInRealTime(view);
+				}
+			};
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Stops playing in the window. Events already sent are still handled.
+	public void	cancel()
+	{
+		cancelled = true;
+	}
+
+	// Adds the time the view took for a frame. The view calls this on the
+	// JOGL thread until the replay is done.
+	public synchronized void	addFrame(long nanos)
+	{
+		if (done)
+			return;
+
+		if (frameCount == frames.length)
+			frames = Arrays.copyOf(frames, 2 * frameCount);
+
+		frames[frameCount++] = nanos;
+	}
+
+	// Adds the time a trace took from its request, and the rays it traced.
+	public synchronized void	addTrace(long nanos, int rays)
+	{
+		if (done)
+			return;
+
+		traceCount++;
+		traceTotal += nanos;
+		traceMax = Math.max(traceMax, nanos);
+		this.rays = rays;
+	}
+
+	// Gets the measurements, in a line for people.
+	public synchronized String	getSummary()
+	{
+		long[]	sorted = Arrays.copyOf(frames, frameCount);
+
+		Arrays.sort(sorted);
+
+		return dispatched + " events, " + frameCount + " frames in " +
+			ms(wall) + " ms; frame mean " + ms(getMean()) + " ms, p50 " +
+			ms(percentile(sorted, 0.50)) + ", p95 " +
+			ms(percentile(sorted, 0.95)) + ", p99 " +
+			ms(percentile(sorted, 0.99)) + ", max " +
+			ms(percentile(sorted, 1.0)) + "; " + traceCount +
+			" traces, mean " + ms(getTraceMean()) + " ms, max " +
+			ms(traceMax) + "; " + rays + " rays";
+	}
+
+	// Gets the measurements as a line of CSV, in the columns printed by main.
+	public synchronized String	getCsv()
+	{
+		long[]	sorted = Arrays.copyOf(frames, frameCount);
+
+		Arrays.sort(sorted);
+
+		return frameCount + "," + dispatched + "," + ms(wall) + "," +
+			ms(getMean()) + "," + ms(percentile(sorted, 0.50)) + "," +
+			ms(percentile(sorted, 0.95)) + "," +
+			ms(percentile(sorted, 0.99)) + "," +
+			ms(percentile(sorted, 1.0)) + "," + traceCount + "," +
+			ms(getTraceMean()) + "," + ms(traceMax) + "," + rays;
+	}
+
+	// Writes the time of each frame, in order.
+	public synchronized void	writeFrames(Writer out) throws IOException
+	{
+		out.write("frame,ms\n");
+
+		for (int i = 0; i < frameCount; i++)
+			out.write(i + "," + ms(frames[i]) + "\n");
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	private void	playInRealTime(final View view)
+	{
+		final Component	source = (Component)view.getCanvas();
+		long				start = System.nanoTime();
+
+		for (final InputLog.Event e : log.getEvents())
+		{
+			long	due = start + 1000L * e.time;
+			long	left;
+
+			while (!cancelled && (left = due - System.nanoTime()) > 0L)
+				LockSupport.parkNanos(left);
+
+			if (cancelled)
+				break;
+
+			EventQueue.invokeLater(new Runnable() {
+					public void	run() {
+						dispatch(e, source, view);
+					}
+				});
+		}
+
+		finish(System.nanoTime() - start);
+		System.out.println((cancelled ? "Stopped replay: " : "Replayed: ") +
+						   getSummary());
+	}
+
+	// Steps frames of virtual time, handling the events due by each, until
+	// the events and then the frames to settle are used up.
+	private void	run(View view, GLAutoDrawable drawable, int fps, int settle,
+						boolean wait)
+	{
+		List<InputLog.Event>	events = log.getEvents();
+		Component				source = new Container();	// Events need one
+		long					start = System.nanoTime();
+		long					frame = 0L;
+		int					next = 0;
+
+		while (next < events.size() || settle-- > 0)
+		{
+			long	t = ++frame * 1000000000L / fps;
+
+			view.setClock(start + t);
+
+			while (next < events.size() && 1000L * events.get(next).time <= t)
+				dispatch(events.get(next++), source, view);
+
+			while (wait && view.isTracing())
+				LockSupport.parkNanos(WAIT);
+
+			drawable.display();
+		}
+
+		finish(System.nanoTime() - start);
+	}
+
+	// Sends an event to the handler method that the recorder got it from.
+	private void	dispatch(InputLog.Event e, Component source, View view)
+	{
+		KeyHandler		keys = view.getKeyHandler();
+		MouseHandler	mouse = view.getMouseHandler();
+		long			when = System.currentTimeMillis();
+
+		if (e.kind == InputLog.KEY && FILE_KEYS.contains(e.code))
+			return;
+
+		synchronized (this)
+		{
+			dispatched++;
+		}
+
+		switch (e.kind)
+		{
+			case InputLog.KEY:
+				keys.keyPressed(new KeyEvent(source, KeyEvent.KEY_PRESSED, when,
+											 e.modifiers, e.code,
+											 KeyEvent.CHAR_UNDEFINED));
+				break;
+			case InputLog.CLICK:
+				mouse.mouseClicked(mouse(source, MouseEvent.MOUSE_CLICKED, when, e));
+				break;
+			case InputLog.ENTER:
+				mouse.mouseEntered(mouse(source, MouseEvent.MOUSE_ENTERED, when, e));
+				break;
+			case InputLog.EXIT:
+				mouse.mouseExited(mouse(source, MouseEvent.MOUSE_EXITED, when, e));
+				break;
+			case InputLog.PRESS:
+				mouse.mousePressed(mouse(source, MouseEvent.MOUSE_PRESSED, when, e));
+				break;
+			case InputLog.RELEASE:
+				mouse.mouseReleased(mouse(source, MouseEvent.MOUSE_RELEASED, when, e));
+				break;
+			case InputLog.DRAG:
+				mouse.mouseDragged(mouse(source, MouseEvent.MOUSE_DRAGGED, when, e));
+				break;
+			case InputLog.MOVE:
+				mouse.mouseMoved(mouse(source, MouseEvent.MOUSE_MOVED, when, e));
+				break;
+			case InputLog.WHEEL:
+				mouse.mouseWheelMoved(new MouseWheelEvent(source,
+							MouseEvent.MOUSE_WHEEL, when, e.modifiers, e.x, e.y,
+							e.x, e.y, 0, false, MouseWheelEvent.WHEEL_UNIT_SCROLL,
+							1, e.code, e.precise));
+				break;
+		}
+	}
+
+	private synchronized void	finish(long nanos)
+	{
+		wall = nanos;
+		done = true;
+	}
+
+	private long	getMean()
+	{
+		long	total = 0L;
+
+		for (int i = 0; i < frameCount; i++)
+			total += frames[i];
+
+		return ((frameCount > 0) ? total / frameCount : 0L);
+	}
+
+	private long	getTraceMean()
+	{
+		return ((traceCount > 0) ? traceTotal / traceCount : 0L);
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	private static MouseEvent	mouse(Component source, int id, long when,
+									  InputLog.Event e)
+	{
+		return new MouseEvent(source, id, when, e.modifiers, e.x, e.y, e.x, e.y,
+							  ((id == MouseEvent.MOUSE_CLICKED) ? 1 : 0), false,
+							  e.code);
+	}
+
+	// Gets the value at a fraction of the way through sorted values.
+	private static long	percentile(long[] sorted, double p)
+	{
+		if (sorted.length == 0)
+			return 0L;
+
+		int	i = (int)Math.ceil(p * sorted.length) - 1;
+
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+	}
+
+	private static String	ms(long nanos)
+	{
+		return String.format(Locale.ROOT, "%.3f", nanos / 1.0e6);
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,607 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// A compact, versioned binary file for scenes of any size. The file is laid
+// out as follows (all values big-endian):
+//
+//     header      int magic ("LPSC"), short version, short flags,
+//                 int block count, int delta count,
+//                 long delta offset, long delta length
+//     directory   per block: int type id, int element count, long offset
+//     blocks      per type: one fixed-width record per element, three
+//                 doubles (x, y, rotation in degrees), one after another
+//     delta       optional: deflated list of changes to the blocks
+//
+// Loading maps the file (FileChannel.map) and copies each block into a
+// double array for its type in one bulk get, three doubles per element, so
+// nothing is parsed element by element. Only the delta, which is meant to
+// stay small, is decoded change by change.
+//
+// The delta holds changes made since the blocks were written (see set(),
+// add() and remove()), so a large scene can be saved again without laying
+// out its blocks anew. compact() folds the changes into the blocks. The
+// changes are applied in order, by index within their type.
+//
+// Type ids are the positions in TYPES, which may only ever be appended to.
+// Files with a newer version are refused. Elements are stored in world
+// space, out of any assemblies, and load grouped by type, in TYPES order.
+//
+// writeJson() writes the same scene as JSON, one element per line in load
+// order, for reading and diffing.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>SceneArchive</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class SceneArchive
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		MAGIC = 0x4C505343;		// "LPSC"
+	public static final short		VERSION = 1;
+	public static final String		FILE = "lightProject.lps";	// Default
+
+	// Element types by id. Append only, the ids are in saved files.
+	public static final List<String>	TYPES = Collections.unmodifiableList(
+		Arrays.asList("Lightbox", "Mirror", "Prism", "Convex", "Concave",
+					  "Detector"));
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final int		HEADER = 32;		// Bytes
+	private static final int		ENTRY = 16;			// Bytes per block entry
+	private static final int		RECORD = 3;			// Doubles per element
+	private static final short		HAS_DELTA = 1;		// Flag
+
+	// Kinds of change in the delta
+	private static final byte		SET = 0;
+	private static final byte		ADD = 1;
+	private static final byte		REMOVE = 2;
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final double[][]			records;	// Per type id
+	private final int[]					counts;		// Elements per type id
+	private final ByteArrayOutputStream	delta;		// Encoded changes
+	private DataOutputStream			changes;	// Writes to the delta
+	private int							changeCount;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	private SceneArchive(double[][] records, int[] counts)
+	{
+		this.records = records;
+		this.counts = counts;
+
+		delta = new ByteArrayOutputStream();
+		changes = new DataOutputStream(delta);
+		changeCount = 0;
+	}
+
+	//**********************************************************************
+	// Main
+	//**********************************************************************
+
+	// Usage: SceneArchive input output
+	public static void	main(String[] args)
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: lightProject-convert <scene> " +
+							   "<output.lps|output.json|output.txt>");
+			System.err.println("Scenes are as for lightProject-batch, or " +
+							   "binary .lps files");
+			System.exit(1);
+		}
+
+		try
+		{
+			long				start = System.nanoTime();
+			List<LightElement>	scene = SceneFile.load(args[0]);
+			long				time = System.nanoTime() - start;
+
+			System.err.println(args[0] + ": " + scene.size() + " elements in " +
+							   (time / 1000000) + " ms");
+
+			if (args[1].endsWith(".json"))
+			{
+				try (Writer out = Files.newBufferedWriter(Paths.get(args[1]),
+														  StandardCharsets.UTF_8))
+				{
+					of(scene).writeJson(out);
+				}
+			}
+			else if (args[1].endsWith(".txt"))
+			{
+				try (Writer out = Files.newBufferedWriter(Paths.get(args[1]),
+														  StandardCharsets.UTF_8))
+				{
+					SceneFile.write(scene, out);
+				}
+			}
+			else
+			{
+				of(scene).write(Paths.get(args[1]));
+			}
+		}
+		catch (IOException ex)
+		{
+			System.err.println(ex.getMessage());
+			System.exit(2);
+		}
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Packs a scene into per-type records, in world space.
+	public static SceneArchive	of(Collection<LightElement> elements)
+	{
+		int[]	counts = new int[TYPES.size()];
+
+		for (LightElement le : elements)
+			counts[getTypeId(le.getType())]++;
+
+		double[][]	records = new double[counts.length][];
+		int[]		filled = new int[counts.length];
+
+		for (int t = 0; t < counts.length; t++)
+			records[t] = new double[counts[t] * RECORD];
+
+		for (LightElement le : elements)
+		{
+			int		t = getTypeId(le.getType());
+			int		i = filled[t]++ * RECORD;
+
+			records[t][i] = le.getCenter().x;
+			records[t][i + 1] = le.getCenter().y;
+			records[t][i + 2] = le.getRotation();
+		}
+
+		return new SceneArchive(records, counts);
+	}
+
+	// True if the file starts like an archive.
+	public static boolean	isArchive(Path path) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(path))))
+		{
+			return (in.readInt() == MAGIC);
+		}
+		catch (EOFException ex)
+		{
+			return false;
+		}
+	}
+
+	// Maps an archive file and loads its blocks, and its delta if any.
+	public static SceneArchive	map(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long	size = channel.size();
+
+			if (size < HEADER)
+				throw new IOException(path + ": too short for a scene archive");
+
+			// One mapping, with int positions, covers at most 2 GB
+			if (size > Integer.MAX_VALUE)
+				throw new IOException(path + ": " + size + " bytes is larger " +
+									  "than a scene archive can be (2 GB)");
+
+			MappedByteBuffer	map = channel.map(FileChannel.MapMode.READ_ONLY,
+												  0L, size);
+
+			if (map.getInt(0) != MAGIC)
+				throw new IOException(path + ": not a scene archive");
+
+			short	version = map.getShort(4);
+			short	flags = map.getShort(6);
+			int		blocks = map.getInt(8);
+			int		deltaCount = map.getInt(12);
+			long	deltaOffset = map.getLong(16);
+			long	deltaLength = map.getLong(24);
+
+			if (version > VERSION)
+				throw new IOException(path + ": archive version " + version +
+									  " is newer than " + VERSION);
+
+			if (blocks < 0 || HEADER + (long)blocks * ENTRY > size)
+				throw new IOException(path + ": bad block count " + blocks);
+
+			int[]		counts = new int[TYPES.size()];
+			double[][]	records = new double[counts.length][];
+
+			for (int t = 0; t < counts.length; t++)
+				records[t] = new double[0];
+
+			for (int b = 0; b < blocks; b++)
+			{
+				int		entry = HEADER + b * ENTRY;
+				int		type = map.getInt(entry);
+				int		count = map.getInt(entry + 4);
+				long	offset = map.getLong(entry + 8);
+				long	length = (long)count * RECORD * 8L;
+
+				if (type < 0 || type >= counts.length)
+					throw new IOException(path + ": unknown element type " + type);
+
+				if (count < 0 || offset < 0 || offset > size - length)
+					throw new IOException(path + ": block " + b +
+										  " runs past the end of the file");
+
+				map.position((int)offset);
+				records[type] = new double[count * RECORD];
+				map.asDoubleBuffer().get(records[type]);
+				counts[type] = count;
+			}
+
+			SceneArchive	archive = new SceneArchive(records, counts);
+
+			if ((flags & HAS_DELTA) != 0)
+			{
+				if (deltaOffset < 0 || deltaLength < 0 ||
+					deltaLength > size || deltaOffset > size - deltaLength)
+					throw new IOException(path + ": delta runs past the end " +
+										  "of the file");
+
+				byte[]	packed = new byte[(int)deltaLength];
+
+				map.position((int)deltaOffset);
+				map.get(packed);
+				archive.readDelta(packed, deltaCount);
+			}
+
+			return archive;
+		}
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the number of elements of a type in the blocks (not counting the
+	// delta).
+	public int	getCount(String type)
+	{
+		return counts[getTypeId(type)];
+	}
+
+	// Gets the records of a type in the blocks: x, y and rotation for each
+	// element. The array is the archive's own.
+	public double[]	getRecords(String type)
+	{
+		return records[getTypeId(type)];
+	}
+
+	// Gets the number of changes in the delta.
+	public int	getChangeCount()
+	{
+		return changeCount;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Records a change of pose for the element at an index of its type.
+	public void	set(String type, int index, double x, double y,
+					double rotation) throws IOException
+	{
+		changes.writeByte(SET);
+		changes.writeByte(getTypeId(type));
+		changes.writeInt(index);
+		writePose(x, y, rotation);
+	}
+
+	// Records a new element, which goes after the others of its type.
+	public void	add(String type, double x, double y, double rotation)
+		throws IOException
+	{
+		changes.writeByte(ADD);
+		changes.writeByte(getTypeId(type));
+		writePose(x, y, rotation);
+	}
+
+	// Records the removal of the element at an index of its type. The ones
+	// after it move down one.
+	public void	remove(String type, int index) throws IOException
+	{
+		changes.writeByte(REMOVE);
+		changes.writeByte(getTypeId(type));
+		changes.writeInt(index);
+		changeCount++;
+	}
+
+	// Builds the elements of the scene, with the changes applied.
+	public List<LightElement>	toElements() throws IOException
+	{
+		double[][]			current = getCurrent();
+		List<LightElement>	elements = new ArrayList<LightElement>();
+
+		for (int t = 0; t < current.length; t++)
+		{
+			String		type = TYPES.get(t);
+			double[]	r = current[t];
+
+			for (int i = 0; i < r.length; i += RECORD)
+			{
+				LightElement	le = LightElement.create(type, r[i], r[i + 1]);
+
+				le.setRotation(r[i + 2]);
+				elements.add(le);
+			}
+		}
+
+		return elements;
+	}
+
+	// Folds the changes into the blocks, leaving the delta empty.
+	public void	compact() throws IOException
+	{
+		double[][]	current = getCurrent();
+
+		for (int t = 0; t < current.length; t++)
+		{
+			records[t] = current[t];
+			counts[t] = current[t].length / RECORD;
+		}
+
+		delta.reset();
+		changes = new DataOutputStream(delta);
+		changeCount = 0;
+	}
+
+	// Writes the archive to a file, replacing it.
+	public void	write(Path path) throws IOException
+	{
+		int		blocks = 0;
+
+		for (int count : counts)
+			if (count > 0)
+				blocks++;
+
+		byte[]	packed = getPackedDelta();
+		long	offset = HEADER + (long)blocks * ENTRY;
+		long	end = offset;
+
+		for (int count : counts)
+			end += (long)count * RECORD * 8L;
+
+		if (end + packed.length > Integer.MAX_VALUE)
+			throw new IOException(path + ": the scene is too large for a " +
+								  "scene archive (2 GB)");
+
+		ByteBuffer	head = ByteBuffer.allocate((int)offset);
+
+		head.putInt(MAGIC);
+		head.putShort(VERSION);
+		head.putShort((changeCount > 0) ? HAS_DELTA : 0);
+		head.putInt(blocks);
+		head.putInt(changeCount);
+		head.putLong((changeCount > 0) ? end : 0L);
+		head.putLong((changeCount > 0) ? packed.length : 0L);
+
+		for (int t = 0; t < counts.length; t++)
+		{
+			if (counts[t] == 0)
+				continue;
+
+			head.putInt(t);
+			head.putInt(counts[t]);
+			head.putLong(offset);
+			offset += (long)counts[t] * RECORD * 8L;
+		}
+
+		head.flip();
+
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			writeFully(channel, head);
+
+			for (int t = 0; t < counts.length; t++)
+			{
+				if (counts[t] == 0)
+					continue;
+
+				ByteBuffer	block = ByteBuffer.allocate(counts[t] * RECORD * 8);
+
+				block.asDoubleBuffer().put(records[t], 0, counts[t] * RECORD);
+				writeFully(channel, block);
+			}
+
+			if (changeCount > 0)
+				writeFully(channel, ByteBuffer.wrap(packed));
+		}
+	}
+
+	// Writes the scene, with the changes applied, as JSON.
+	public void	writeJson(Writer out) throws IOException
+	{
+		double[][]	current = getCurrent();
+		boolean	first = true;
+
+		out.write("{\"version\": " + VERSION + ", \"elements\": [\n");
+
+		for (int t = 0; t < current.length; t++)
+		{
+			double[]	r = current[t];
+
+			for (int i = 0; i < r.length; i += RECORD)
+			{
+				out.write((first ? "  " : ",\n  ") + "{\"type\": \"" +
+						  TYPES.get(t) + "\", \"x\": " + r[i] + ", \"y\": " +
+						  r[i + 1] + ", \"rotation\": " + r[i + 2] + "}");
+				first = false;
+			}
+		}
+
+		out.write("\n]}\n");
+		out.flush();
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	private static int	getTypeId(String type)
+	{
+		int	t = TYPES.indexOf(type);
+
+		if (t < 0)
+			throw new IllegalArgumentException("Unknown element type " + type);
+
+		return t;
+	}
+
+	private static void	writeFully(FileChannel channel, ByteBuffer buffer)
+		throws IOException
+	{
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	private void	writePose(double x, double y, double rotation)
+		throws IOException
+	{
+		changes.writeDouble(x);
+		changes.writeDouble(y);
+		changes.writeDouble(rotation);
+		changeCount++;
+	}
+
+	// Deflates the encoded changes.
+	private byte[]	getPackedDelta() throws IOException
+	{
+		ByteArrayOutputStream	packed = new ByteArrayOutputStream();
+
+		try (DeflaterOutputStream out = new DeflaterOutputStream(packed))
+		{
+			changes.flush();
+			delta.writeTo(out);
+		}
+
+		return packed.toByteArray();
+	}
+
+	// Inflates a delta read from a file and keeps its changes.
+	private void	readDelta(byte[] packed, int count) throws IOException
+	{
+		try (InflaterInputStream in = new InflaterInputStream(
+				new ByteArrayInputStream(packed)))
+		{
+			byte[]	buffer = new byte[8192];
+			int		n;
+
+			while ((n = in.read(buffer)) > 0)
+				delta.write(buffer, 0, n);
+		}
+
+		changeCount = count;
+	}
+
+	// Applies the changes to copies of the blocks.
+	private double[][]	getCurrent() throws IOException
+	{
+		double[][]	current = new double[records.length][];
+
+		for (int t = 0; t < records.length; t++)
+			current[t] = Arrays.copyOf(records[t], counts[t] * RECORD);
+
+		if (changeCount == 0)
+			return current;
+
+		changes.flush();
+
+		DataInputStream	in = new DataInputStream(
+			new ByteArrayInputStream(delta.toByteArray()));
+
+		for (int c = 0; c < changeCount; c++)
+		{
+			byte	kind = in.readByte();
+			int		t = in.readByte();
+
+			if (t < 0 || t >= current.length)
+				throw new IOException("Delta change " + c +
+									  ": unknown element type " + t);
+
+			double[]	r = current[t];
+
+			if (kind == ADD)
+			{
+				double[]	grown = Arrays.copyOf(r, r.length + RECORD);
+
+				grown[r.length] = in.readDouble();
+				grown[r.length + 1] = in.readDouble();
+				grown[r.length + 2] = in.readDouble();
+				current[t] = grown;
+				continue;
+			}
+
+			int	i = in.readInt() * RECORD;
+
+			if (i < 0 || i >= r.length)
+				throw new IOException("Delta change " + c + ": no " +
+									  TYPES.get(t) + " " + (i / RECORD));
+
+			if (kind == SET)
+			{
+				r[i] = in.readDouble();
+				r[i + 1] = in.readDouble();
+				r[i + 2] = in.readDouble();
+			}
+			else if (kind == REMOVE)
+			{
+				double[]	shrunk = new double[r.length - RECORD];
+
+				System.arraycopy(r, 0, shrunk, 0, i);
+				System.arraycopy(r, i + RECORD, shrunk, i, r.length - i - RECORD);
+				current[t] = shrunk;
+			}
+			else
+			{
+				throw new IOException("Delta change " + c + ": unknown kind " +
+									  kind);
+			}
+		}
+
+		return current;
+	}
+}
+
+//******************************************************************************
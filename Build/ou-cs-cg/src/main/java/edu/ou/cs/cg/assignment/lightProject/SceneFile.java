@@ -0,0 +1,174 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Reads and writes scenes as plain text, one element per line:
+//
+//     <type> <x> <y> [<rotation>]
+//
+// where the type is one of Lightbox, Mirror, Prism, Convex, Concave and
+// Detector, and the rotation is in degrees (0 if left out). Blank lines and
+// anything after a '#' are ignored. Elements are written in world space, out
+// of any assemblies, with enough digits to read back the same doubles.
+//
+// Binary scene archives (see SceneArchive) load too, told apart by their
+// first bytes, and so do SVG drawings (see SvgImport), by their extension.
+//
+// A scene can also be named by a generator spec instead of a file (see
+// SceneGenerator), e.g. "generate:maze:400:0:0:1:7", with the layout, the
+// counts of mirrors, prisms, lenses and lightboxes, and an optional seed.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>SceneFile</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class SceneFile
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final String		GENERATE = "generate:";	// Spec prefix
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	private SceneFile()
+	{
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Loads a scene from a text or archive file, or generates it from a spec.
+	public static List<LightElement>	load(String name) throws IOException
+	{
+		if (name.startsWith(GENERATE))
+			return generate(name.substring(GENERATE.length()));
+
+		if (SceneArchive.isArchive(Paths.get(name)))
+			return SceneArchive.map(Paths.get(name)).toElements();
+
+		if (name.toLowerCase().endsWith(".svg"))
+			return SvgImport.load(Paths.get(name));
+
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(name), StandardCharsets.UTF_8)))
+		{
+			return read(in);
+		}
+	}
+
+	// Reads the elements of a scene, one per line.
+	public static List<LightElement>	read(BufferedReader in) throws IOException
+	{
+		List<LightElement>	elements = new ArrayList<LightElement>();
+		String				line;
+		int				n = 0;
+
+		while ((line = in.readLine()) != null)
+		{
+			n++;
+
+			int	hash = line.indexOf('#');
+
+			if (hash >= 0)
+				line = line.substring(0, hash);
+
+			line = line.trim();
+
+			if (line.isEmpty())
+				continue;
+
+			String[]	fields = line.split("\\s+");
+
+			if (fields.length < 3 || fields.length > 4)
+				throw new IOException("Line " + n + ": expected " +
+									  "<type> <x> <y> [<rotation>]");
+
+			try
+			{
+				LightElement	le = LightElement.create(fields[0],
+								Double.parseDouble(fields[1]),
+								Double.parseDouble(fields[2]));
+
+				if (fields.length > 3)
+					le.setRotation(Double.parseDouble(fields[3]));
+
+				elements.add(le);
+			}
+			catch (IllegalArgumentException ex)
+			{
+				throw new IOException("Line " + n + ": " + ex.getMessage());
+			}
+		}
+
+		return elements;
+	}
+
+	// Writes the elements of a scene, one per line.
+	public static void	write(Collection<LightElement> elements, Writer out)
+		throws IOException
+	{
+		out.write("# type x y rotation\n");
+
+		for (LightElement le : elements)
+		{
+			out.write(le.getType() + " " + le.getCenter().x + " " +
+					  le.getCenter().y + " " + le.getRotation() + "\n");
+		}
+
+		out.flush();
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// Generates a scene from "layout:mirrors:prisms:lenses:lightboxes[:seed]".
+	private static List<LightElement>	generate(String spec) throws IOException
+	{
+		String[]	fields = spec.split(":");
+
+		if (fields.length < 5 || fields.length > 6)
+			throw new IOException("Expected " + GENERATE +
+								  "<layout>:<mirrors>:<prisms>:<lenses>:" +
+								  "<lightboxes>[:<seed>], got " + GENERATE + spec);
+
+		try
+		{
+			SceneGenerator.Layout	layout =
+				SceneGenerator.Layout.valueOf(fields[0].toUpperCase());
+			long					seed = ((fields.length > 5) ?
+											Long.parseLong(fields[5]) : 1L);
+
+			return new SceneGenerator(seed).generate(layout,
+													 Integer.parseInt(fields[1]),
+													 Integer.parseInt(fields[2]),
+													 Integer.parseInt(fields[3]),
+													 Integer.parseInt(fields[4]));
+		}
+		catch (IllegalArgumentException ex)
+		{
+			throw new IOException(GENERATE + spec + ": " + ex.getMessage());
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,329 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Builds procedural scenes for scale testing. All randomness comes from one
+// Random seeded at construction and drawn in a fixed order, so a seed always
+// produces the same scene, whether it is generated headless (see main()) or
+// loaded into the view through Model.generateScene().
+//
+// Elements are laid out on a grid of CELL x CELL cells so that they never
+// overlap. The world grows with the element count, keeping the density of a
+// full 1280x720 screen (16x9 cells) as the count goes up.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>SceneGenerator</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class SceneGenerator
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final double		CELL = 80.0;	// Grid spacing of elements
+
+	// The ways elements can be arranged
+	public enum Layout
+	{
+		SCATTER,		// Random positions and rotations
+		MAZE,			// Dense grid of diagonal mirrors
+		LENS_ARRAY,		// Rows of lenses facing the lightbox
+		CORRIDOR,		// Two walls of parallel mirrors, worst-case bounces
+	}
+
+	//**********************************************************************
+	// Main
+	//**********************************************************************
+
+	// Usage: SceneGenerator layout mirrors prisms lenses lightboxes [seed]
+	public static void	main(String[] args)
+	{
+		if (args.length < 5)
+		{
+			System.err.println("Usage: lightProject-generate " +
+							   "<layout> <mirrors> <prisms> <lenses> " +
+							   "<lightboxes> [seed]");
+			System.err.println("Layouts: " +
+							   Arrays.toString(Layout.values()));
+			System.exit(1);
+		}
+
+		Layout		layout = Layout.valueOf(args[0].toUpperCase());
+		int		mirrors = Integer.parseInt(args[1]);
+		int		prisms = Integer.parseInt(args[2]);
+		int		lenses = Integer.parseInt(args[3]);
+		int		lightboxes = Integer.parseInt(args[4]);
+		long		seed = ((args.length > 5) ? Long.parseLong(args[5]) : 1L);
+
+		long		start = System.nanoTime();
+
+		List<LightElement>	elements = new SceneGenerator(seed)
+			.generate(layout, mirrors, prisms, lenses, lightboxes);
+
+		long		time = System.nanoTime() - start;
+
+		System.out.println(layout + " seed " + seed + ": " +
+						   elements.size() + " elements in " +
+						   (time / 1000000) + " ms, fingerprint " +
+						   Long.toHexString(fingerprint(elements)));
+	}
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final Random		random;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	public SceneGenerator(long seed)
+	{
+		random = new Random(seed);
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Hashes the type, position and rotation of every element in order. Equal
+	// fingerprints mean the same scene, e.g. across runs with the same seed.
+	public static long	fingerprint(List<LightElement> elements)
+	{
+		long	hash = 1125899906842597L;
+
+		for (LightElement le : elements)
+		{
+			hash = 31 * hash + le.getType().hashCode();
+			hash = 31 * hash + Double.doubleToLongBits(le.getCenter().x);
+			hash = 31 * hash + Double.doubleToLongBits(le.getCenter().y);
+			hash = 31 * hash + Double.doubleToLongBits(le.getRotation());
+		}
+
+		return hash;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Generates a scene with the given number of each type of element. Lenses
+	// alternate between convex and concave. The lightboxes come first, so the
+	// first of them is the one that emits light.
+	public List<LightElement>	generate(Layout layout, int mirrors, int prisms,
+										 int lenses, int lightboxes)
+	{
+		int		total = mirrors + prisms + lenses + lightboxes;
+		List<LightElement>	elements = new ArrayList<LightElement>(total);
+
+		switch (layout)
+		{
+			case SCATTER:
+				scatter(elements, mirrors, prisms, lenses, lightboxes);
+				break;
+			case MAZE:
+				maze(elements, mirrors, prisms, lenses, lightboxes);
+				break;
+			case LENS_ARRAY:
+				lensArray(elements, mirrors, prisms, lenses, lightboxes);
+				break;
+			case CORRIDOR:
+				corridor(elements, mirrors, prisms, lenses, lightboxes);
+				break;
+		}
+
+		return elements;
+	}
+
+	//**********************************************************************
+	// Private Methods (Layouts)
+	//**********************************************************************
+
+	// Puts every element in a random cell at a random rotation.
+	private void	scatter(List<LightElement> elements, int mirrors,
+							int prisms, int lenses, int lightboxes)
+	{
+		List<String>	types = types(mirrors, prisms, lenses, lightboxes);
+		int			cols = columns(types.size());
+		int[]			cells = shuffledCells(cols * rows(types.size(), cols));
+
+		for (int i = 0; i < types.size(); i++)
+		{
+			LightElement	le = atCell(types.get(i), cells[i] % cols,
+										cells[i] / cols);
+
+			le.setRotation(random.nextInt(360));
+			elements.add(le);
+		}
+	}
+
+	// Fills a grid with mirrors at 45 or 135 degrees, with the lightbox at the
+	// left edge and the other elements dropped into random cells of the grid.
+	private void	maze(List<LightElement> elements, int mirrors, int prisms,
+						 int lenses, int lightboxes)
+	{
+		int		inner = mirrors + prisms + lenses;
+		int		cols = columns(inner);
+		int		rows = rows(inner, cols);
+
+		for (int i = 0; i < lightboxes; i++)
+			elements.add(atCell("Lightbox", 0, i % rows));
+
+		List<String>	types = types(mirrors, prisms, lenses, 0);
+		int[]			cells = shuffledCells(cols * rows);
+
+		for (int i = 0; i < types.size(); i++)
+		{
+			String			type = types.get(i);
+			LightElement	le = atCell(type, 1 + cells[i] % cols,
+										cells[i] / cols);
+
+			if (type.equals("Mirror"))
+				le.setRotation(random.nextBoolean() ? 45.0 : 135.0);
+
+			elements.add(le);
+		}
+	}
+
+	// Lines lenses up in rows facing the lightbox, followed by the mirrors and
+	// prisms in the columns beyond them.
+	private void	lensArray(List<LightElement> elements, int mirrors,
+							  int prisms, int lenses, int lightboxes)
+	{
+		int		inner = mirrors + prisms + lenses;
+		int		rows = Math.max(1, rows(inner, columns(inner)));
+
+		for (int i = 0; i < lightboxes; i++)
+			elements.add(atCell("Lightbox", 0, i % rows));
+
+		List<String>	types = types(0, 0, lenses, 0);
+		List<String>	rest = types(mirrors, prisms, 0, 0);
+
+		Collections.shuffle(rest, random);
+		types.addAll(rest);
+
+		for (int i = 0; i < types.size(); i++)
+			elements.add(atCell(types.get(i), 1 + i / rows, i % rows));
+	}
+
+	// Builds a horizontal corridor whose walls are mirrors laid end to end,
+	// with the lightbox tilted into it so the beam bounces along its length.
+	// The other elements are scattered below the corridor.
+	private void	corridor(List<LightElement> elements, int mirrors,
+							 int prisms, int lenses, int lightboxes)
+	{
+		double		width = 60.0;			// Wall spacing
+		double		y = 2.0 * CELL;			// Center line of the corridor
+		int		perWall = (mirrors + 1) / 2;
+
+		// Just left of the first mirror, tilted up into the corridor
+		for (int i = 0; i < lightboxes; i++)
+		{
+			LightElement	le = LightElement.createLightbox(20.0 - 60.0 * i, y);
+
+			le.setRotation(5.0 + random.nextDouble() * 10.0);
+			elements.add(le);
+		}
+
+		for (int i = 0; i < mirrors; i++)
+		{
+			double			x = CELL + 60.0 * (i % perWall);
+			double			wall = ((i < perWall) ? 0.5 : -0.5) * width;
+			LightElement	le = LightElement.createMirror(x, y + wall);
+
+			le.setRotation(90.0);
+			elements.add(le);
+		}
+
+		List<String>	types = types(0, prisms, lenses, 0);
+		int			cols = columns(types.size());
+		int[]			cells = shuffledCells(cols * rows(types.size(), cols));
+
+		for (int i = 0; i < types.size(); i++)
+		{
+			LightElement	le = atCell(types.get(i), cells[i] % cols,
+										-1 - cells[i] / cols);
+
+			le.setRotation(random.nextInt(360));
+			elements.add(le);
+		}
+	}
+
+	//**********************************************************************
+	// Private Methods (Utility Functions)
+	//**********************************************************************
+
+	// Lists the types to place, lightboxes first and lenses alternating.
+	private List<String>	types(int mirrors, int prisms, int lenses,
+								  int lightboxes)
+	{
+		List<String>	types = new ArrayList<String>();
+
+		for (int i = 0; i < lightboxes; i++)
+			types.add("Lightbox");
+
+		for (int i = 0; i < mirrors; i++)
+			types.add("Mirror");
+
+		for (int i = 0; i < prisms; i++)
+			types.add("Prism");
+
+		for (int i = 0; i < lenses; i++)
+			types.add(((i % 2) == 0) ? "Convex" : "Concave");
+
+		return types;
+	}
+
+	// Number of grid columns for n elements, keeping a 16:9 aspect ratio.
+	private static int	columns(int n)
+	{
+		return Math.max(1, (int)Math.ceil(Math.sqrt(n * 16.0 / 9.0)));
+	}
+
+	private static int	rows(int n, int cols)
+	{
+		return Math.max(1, (n + cols - 1) / cols);
+	}
+
+	// Returns 0..n-1 in a random order (Fisher-Yates).
+	private int[]	shuffledCells(int n)
+	{
+		int[]	cells = new int[n];
+
+		for (int i = 0; i < n; i++)
+			cells[i] = i;
+
+		for (int i = n - 1; i > 0; i--)
+		{
+			int	j = random.nextInt(i + 1);
+			int	tmp = cells[i];
+
+			cells[i] = cells[j];
+			cells[j] = tmp;
+		}
+
+		return cells;
+	}
+
+	// Creates an element at the center of a grid cell.
+	private static LightElement	atCell(String type, int col, int row)
+	{
+		return LightElement.create(type, (col + 0.5) * CELL, (row + 0.5) * CELL);
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,36 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Anything that can be placed in a scene and looked up by its bounds: a
+// single element, or an assembly of elements. The grid indexes the top nodes
+// of a scene, and finds elements by collecting them from the nodes it hits.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+//******************************************************************************
+
+/**
+ * The <CODE>SceneNode</CODE> interface.<P>
+ *
+ * @version %I%, %G%
+ */
+public interface SceneNode
+{
+	// Gets the bounding box of the node in world space.
+	public Rectangle2D.Double	getBounds();
+
+	// Adds the elements of the node whose boxes overlap the rectangle to the
+	// list, skipping any parts of the node that the rectangle misses.
+	public void	collect(double minX, double minY, double maxX, double maxY,
+						List<LightElement> out);
+}
+
+//******************************************************************************
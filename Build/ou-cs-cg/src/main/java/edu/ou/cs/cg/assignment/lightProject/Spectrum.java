@@ -0,0 +1,130 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Wavelength helpers for dispersion. The lightbox emits each ray as a packet
+// of wavelengths sampled evenly over the visible range. Glass bends each
+// wavelength by its own index of refraction, given by Cauchy's equation
+// n = A + B / lambda^2, so a packet stays together until it crosses a
+// dispersive surface at an angle.
+//
+// Colors follow Dan Bruton's piecewise linear approximation of the visible
+// spectrum, dimmed towards the ends where the eye is less sensitive.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Spectrum</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Spectrum
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final double		MIN_WAVELENGTH = 400.0;	// Violet, in nm
+	public static final double		MAX_WAVELENGTH = 700.0;	// Red, in nm
+	public static final int		SAMPLES = 32;			// Wavelengths per packet
+
+	// Cauchy coefficients (B in nm^2) for the prisms, a dense flint glass
+	public static final double		FLINT_A = 1.5997;
+	public static final double		FLINT_B = 9560.0;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	private Spectrum()
+	{
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Returns n wavelengths evenly spaced over the visible range, in nm.
+	public static double[]	sample(int n)
+	{
+		double[]	wavelengths = new double[n];
+
+		for (int i = 0; i < n; i++)
+			wavelengths[i] = ((n == 1) ? 0.5 * (MIN_WAVELENGTH + MAX_WAVELENGTH) :
+							  MIN_WAVELENGTH + (MAX_WAVELENGTH - MIN_WAVELENGTH) *
+							  i / (n - 1));
+
+		return wavelengths;
+	}
+
+	// Index of refraction at a wavelength in nm by Cauchy's equation.
+	public static double	cauchy(double a, double b, double nm)
+	{
+		return a + b / (nm * nm);
+	}
+
+	// Gets the RGB color of light at a wavelength in nm, each from 0 to 1.
+	public static float[]	toRGB(double nm)
+	{
+		double	r = 0.0, g = 0.0, b = 0.0;
+
+		if (nm < 440.0)
+		{
+			r = (440.0 - nm) / 60.0;
+			b = 1.0;
+		}
+		else if (nm < 490.0)
+		{
+			g = (nm - 440.0) / 50.0;
+			b = 1.0;
+		}
+		else if (nm < 510.0)
+		{
+			g = 1.0;
+			b = (510.0 - nm) / 20.0;
+		}
+		else if (nm < 580.0)
+		{
+			r = (nm - 510.0) / 70.0;
+			g = 1.0;
+		}
+		else if (nm < 645.0)
+		{
+			r = 1.0;
+			g = (645.0 - nm) / 65.0;
+		}
+		else
+		{
+			r = 1.0;
+		}
+
+		// Fade out near the limits of vision
+		double	f = 1.0;
+
+		if (nm < 420.0)
+			f = 0.3 + 0.7 * (nm - 380.0) / 40.0;
+		else if (nm > 680.0)
+			f = 0.3 + 0.7 * (780.0 - nm) / 100.0;
+
+		return new float[] { (float)(r * f), (float)(g * f), (float)(b * f) };
+	}
+
+	// Gets the color of a packet: its wavelength's color if it has one, or
+	// white if it is still mixed.
+	public static float[]	toRGB(double[] wavelengths)
+	{
+		if (wavelengths.length == 1)
+			return toRGB(wavelengths[0]);
+
+		return new float[] { 1.0f, 1.0f, 1.0f };
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,735 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Reads optical layouts drawn in SVG (e.g. exported from CAD). Each drawing
+// primitive becomes one element:
+//
+//     <line>                  Mirror
+//     <polygon>, <polyline>   Prism
+//     <path>                  Convex lens, or Concave if named so
+//
+// A primitive whose id or class names a type (e.g. class="detector" or
+// id="lightbox1") becomes that type instead; rects, circles and ellipses are
+// only read when named this way. Anything else is skipped, as is everything
+// inside <defs> and similar containers that aren't drawn directly.
+//
+// Elements have fixed sizes in this project, so only where a primitive is
+// and which way it points are used. Its points are put through the
+// transforms of the primitive and its groups, and then from the drawing's
+// viewBox (y down) into the scene (y up). An element is centered on the box
+// around its points along their main direction, which becomes its long
+// axis. A prism drawn as a triangle points its apex the way the triangle's
+// does, the corner opposite its shortest side.
+//
+// The file is read as a stream (StAX), and each element is handed on as
+// soon as it is read, so nothing but the current transforms is held while
+// reading, however large the drawing is. DTDs and external entities are
+// turned off.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.*;
+import javax.xml.stream.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>SvgImport</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class SvgImport
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final String		FILE = "lightProject.svg";	// Default
+	public static final int		BATCH = 4096;	// Elements added at a time
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final Pattern	TRANSFORM =
+		Pattern.compile("(\\w+)\\s*\\(([^)]*)\\)");
+	private static final Pattern	LENGTH =
+		Pattern.compile("^\\s*([-+]?[0-9.]+(?:[eE][-+]?[0-9]+)?)");
+
+	// Containers whose contents aren't drawn where they are
+	private static final Set<String>	HIDDEN = new HashSet<String>(Arrays.asList(
+		"defs", "symbol", "clipPath", "mask", "marker", "pattern", "metadata"));
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final Consumer<LightElement>		sink;
+	private final ArrayDeque<AffineTransform>	transforms;	// Per open tag
+	private int								hidden;		// Hidden depth
+	private int								imported;
+	private int								skipped;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Hands each element read to a sink, e.g. to add it to a scene.
+	public SvgImport(Consumer<LightElement> sink)
+	{
+		this.sink = sink;
+
+		transforms = new ArrayDeque<AffineTransform>();
+		hidden = 0;
+		imported = 0;
+		skipped = 0;
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Reads all the elements of a drawing into a list.
+	public static List<LightElement>	load(Path path) throws IOException
+	{
+		final List<LightElement>	elements = new ArrayList<LightElement>();
+		SvgImport					svg = new SvgImport(
+			new Consumer<LightElement>() {
+				public void	accept(LightElement le) {
+					elements.add(le);
+				}
+			});
+
+		svg.read(path);
+
+		return elements;
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the number of elements read so far.
+	public int	getImported()
+	{
+		return imported;
+	}
+
+	// Gets the number of drawn primitives that weren't elements.
+	public int	getSkipped()
+	{
+		return skipped;
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	public void	read(Path path) throws IOException
+	{
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path)))
+		{
+			read(in);
+		}
+	}
+
+	// Reads a drawing, handing on its elements as they are read.
+	public void	read(InputStream in) throws IOException
+	{
+		XMLInputFactory	factory = XMLInputFactory.newInstance();
+
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+							false);
+
+		XMLStreamReader	reader = null;
+
+		try
+		{
+			reader = factory.createXMLStreamReader(in);
+
+			while (reader.hasNext())
+			{
+				int	event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT)
+					start(reader);
+				else if (event == XMLStreamConstants.END_ELEMENT)
+					end(reader);
+			}
+		}
+		catch (XMLStreamException ex)
+		{
+			throw new IOException("Not a readable SVG drawing: " +
+								  ex.getMessage(), ex);
+		}
+		catch (IllegalArgumentException ex)
+		{
+			throw new IOException(((reader != null && reader.getLocation() != null) ?
+								   "Line " + reader.getLocation().getLineNumber() +
+								   ": " : "") + ex.getMessage(), ex);
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (XMLStreamException ex)
+				{
+				}
+			}
+		}
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	private void	start(XMLStreamReader reader)
+	{
+		String			tag = reader.getLocalName();
+		AffineTransform	t = new AffineTransform();
+
+		if (transforms.isEmpty())
+			t = getViewTransform(reader);
+		else
+			t.setTransform(transforms.peek());
+
+		t.concatenate(parseTransform(reader.getAttributeValue(null, "transform")));
+		transforms.push(t);
+
+		if (hidden > 0 || HIDDEN.contains(tag))
+		{
+			hidden++;
+			return;
+		}
+
+		List<Point2D.Double>	points = getPoints(tag, reader);
+
+		if (points == null)
+			return;
+
+		String	type = getType(tag, reader);
+
+		if (type == null || points.size() < 2)
+		{
+			skipped++;
+			return;
+		}
+
+		for (Point2D.Double p : points)
+			t.transform(p, p);
+
+		sink.accept(type.equals("Prism") ? createPrism(points) :
+					create(type, points));
+		imported++;
+	}
+
+	private void	end(XMLStreamReader reader)
+	{
+		transforms.pop();
+
+		if (hidden > 0)
+			hidden--;
+	}
+
+	//**********************************************************************
+	// Private Class Methods
+	//**********************************************************************
+
+	// Maps the drawing's viewBox (or its height, or the original scene area)
+	// into the scene, turning it right side up.
+	private static AffineTransform	getViewTransform(XMLStreamReader reader)
+	{
+		String	box = reader.getAttributeValue(null, "viewBox");
+
+		if (box != null)
+		{
+			double[]	v = parseNumbers(box);
+
+			if (v.length == 4)
+				return new AffineTransform(1.0, 0.0, 0.0, -1.0, -v[0], v[1] + v[3]);
+		}
+
+		String	height = reader.getAttributeValue(null, "height");
+		double	h = ((height != null && !height.endsWith("%")) ?
+					 parseLength(height) : Camera.HEIGHT);
+
+		return new AffineTransform(1.0, 0.0, 0.0, -1.0, 0.0, h);
+	}
+
+	// Gets the type a primitive is named as, or else the one it stands for,
+	// or null if it isn't an element.
+	private static String	getType(String tag, XMLStreamReader reader)
+	{
+		String	names = (String.valueOf(reader.getAttributeValue(null, "id")) + " " +
+						 String.valueOf(reader.getAttributeValue(null, "class"))).toLowerCase();
+
+		for (String type : SceneArchive.TYPES)
+			if (names.contains(type.toLowerCase()))
+				return type;
+
+		switch (tag)
+		{
+			case "line":
+				return "Mirror";
+			case "polygon":
+			case "polyline":
+				return "Prism";
+			case "path":
+				return "Convex";
+			default:
+				return null;
+		}
+	}
+
+	// Gets the points of a drawn primitive, in its own coordinates, or null
+	// if the tag isn't one.
+	private static List<Point2D.Double>	getPoints(String tag,
+												  XMLStreamReader reader)
+	{
+		List<Point2D.Double>	points = new ArrayList<Point2D.Double>();
+
+		switch (tag)
+		{
+			case "line":
+				points.add(new Point2D.Double(getLength(reader, "x1"),
+											  getLength(reader, "y1")));
+				points.add(new Point2D.Double(getLength(reader, "x2"),
+											  getLength(reader, "y2")));
+				break;
+			case "polygon":
+			case "polyline":
+			{
+				double[]	v = parseNumbers(reader.getAttributeValue(null, "points"));
+
+				for (int i = 0; i + 1 < v.length; i += 2)
+					points.add(new Point2D.Double(v[i], v[i + 1]));
+
+				// Drop a closing point that repeats the first
+				if (points.size() > 3 &&
+					points.get(0).equals(points.get(points.size() - 1)))
+					points.remove(points.size() - 1);
+				break;
+			}
+			case "rect":
+			{
+				double	x = getLength(reader, "x");
+				double	y = getLength(reader, "y");
+				double	w = getLength(reader, "width");
+				double	h = getLength(reader, "height");
+
+				points.add(new Point2D.Double(x, y));
+				points.add(new Point2D.Double(x + w, y));
+				points.add(new Point2D.Double(x + w, y + h));
+				points.add(new Point2D.Double(x, y + h));
+				break;
+			}
+			case "circle":
+			case "ellipse":
+			{
+				double	cx = getLength(reader, "cx");
+				double	cy = getLength(reader, "cy");
+				double	r = getLength(reader, "r");
+				double	rx = (tag.equals("circle") ? r : getLength(reader, "rx"));
+				double	ry = (tag.equals("circle") ? r : getLength(reader, "ry"));
+
+				points.add(new Point2D.Double(cx - rx, cy));
+				points.add(new Point2D.Double(cx, cy + ry));
+				points.add(new Point2D.Double(cx + rx, cy));
+				points.add(new Point2D.Double(cx, cy - ry));
+				break;
+			}
+			case "path":
+				new PathScanner(reader.getAttributeValue(null, "d")).scan(points);
+				break;
+			default:
+				return null;
+		}
+
+		return points;
+	}
+
+	// Places an element on the box around its points along their main
+	// direction, with its long axis that way.
+	private static LightElement	create(String type, List<Point2D.Double> points)
+	{
+		double	mx = 0.0;
+		double	my = 0.0;
+
+		for (Point2D.Double p : points)
+		{
+			mx += p.x;
+			my += p.y;
+		}
+
+		mx /= points.size();
+		my /= points.size();
+
+		double	sxx = 0.0;
+		double	syy = 0.0;
+		double	sxy = 0.0;
+
+		for (Point2D.Double p : points)
+		{
+			sxx += (p.x - mx) * (p.x - mx);
+			syy += (p.y - my) * (p.y - my);
+			sxy += (p.x - mx) * (p.y - my);
+		}
+
+		double	angle = 0.5 * Math.atan2(2.0 * sxy, sxx - syy);
+		double	ux = Math.cos(angle);
+		double	uy = Math.sin(angle);
+		double	umin = Double.MAX_VALUE;
+		double	umax = -Double.MAX_VALUE;
+		double	vmin = Double.MAX_VALUE;
+		double	vmax = -Double.MAX_VALUE;
+
+		for (Point2D.Double p : points)
+		{
+			double	u = (p.x - mx) * ux + (p.y - my) * uy;
+			double	v = -(p.x - mx) * uy + (p.y - my) * ux;
+
+			umin = Math.min(umin, u);
+			umax = Math.max(umax, u);
+			vmin = Math.min(vmin, v);
+			vmax = Math.max(vmax, v);
+		}
+
+		double	u = 0.5 * (umin + umax);
+		double	v = 0.5 * (vmin + vmax);
+
+		// Shapes are long along their y axis when unrotated
+		double	rotation = Math.toDegrees(angle) - 90.0;
+
+		if (rotation <= -90.0)
+			rotation += 180.0;
+
+		LightElement	le = LightElement.create(type, mx + u * ux - v * uy,
+												 my + u * uy + v * ux);
+
+		le.setRotation(rotation);
+
+		return le;
+	}
+
+	// Places a prism on a triangle, apex to apex, or like other elements if
+	// the polygon isn't a triangle.
+	private static LightElement	createPrism(List<Point2D.Double> points)
+	{
+		if (points.size() != 3)
+			return create("Prism", points);
+
+		// The apex is across from the shortest side, which is the base
+		int		apex = 0;
+		double	shortest = Double.MAX_VALUE;
+
+		for (int i = 0; i < 3; i++)
+		{
+			double	d = points.get((i + 1) % 3).distance(points.get((i + 2) % 3));
+
+			if (d < shortest)
+			{
+				shortest = d;
+				apex = i;
+			}
+		}
+
+		Point2D.Double	a = points.get(apex);
+		Point2D.Double	b = points.get((apex + 1) % 3);
+		Point2D.Double	c = points.get((apex + 2) % 3);
+		double			bx = 0.5 * (b.x + c.x);
+		double			by = 0.5 * (b.y + c.y);
+
+		// The prism's center is halfway from its base to its apex
+		LightElement	le = LightElement.create("Prism", 0.5 * (a.x + bx),
+												 0.5 * (a.y + by));
+
+		le.setRotation(Math.toDegrees(Math.atan2(a.y - by, a.x - bx)) - 90.0);
+
+		return le;
+	}
+
+	private static double	getLength(XMLStreamReader reader, String name)
+	{
+		String	value = reader.getAttributeValue(null, name);
+
+		return ((value != null) ? parseLength(value) : 0.0);
+	}
+
+	// Parses a length, ignoring any unit.
+	private static double	parseLength(String s)
+	{
+		Matcher	m = LENGTH.matcher(s);
+
+		if (!m.find())
+			throw new IllegalArgumentException("Not a length: " + s);
+
+		return Double.parseDouble(m.group(1));
+	}
+
+	private static double[]	parseNumbers(String s)
+	{
+		PathScanner				scanner = new PathScanner((s != null) ? s : "");
+		ArrayList<Double>		numbers = new ArrayList<Double>();
+
+		while (scanner.hasNumber())
+			numbers.add(scanner.nextNumber());
+
+		double[]	v = new double[numbers.size()];
+
+		for (int i = 0; i < v.length; i++)
+			v[i] = numbers.get(i);
+
+		return v;
+	}
+
+	// Parses a list of transforms, applied right to left.
+	private static AffineTransform	parseTransform(String s)
+	{
+		AffineTransform	t = new AffineTransform();
+
+		if (s == null)
+			return t;
+
+		Matcher	m = TRANSFORM.matcher(s);
+
+		while (m.find())
+		{
+			double[]	v = parseNumbers(m.group(2));
+
+			switch (m.group(1))
+			{
+				case "matrix":
+					if (v.length == 6)
+						t.concatenate(new AffineTransform(v));
+					break;
+				case "translate":
+					if (v.length > 0)
+						t.translate(v[0], ((v.length > 1) ? v[1] : 0.0));
+					break;
+				case "scale":
+					if (v.length > 0)
+						t.scale(v[0], ((v.length > 1) ? v[1] : v[0]));
+					break;
+				case "rotate":
+					if (v.length == 3)
+						t.rotate(Math.toRadians(v[0]), v[1], v[2]);
+					else if (v.length > 0)
+						t.rotate(Math.toRadians(v[0]));
+					break;
+				case "skewX":
+					if (v.length > 0)
+						t.shear(Math.tan(Math.toRadians(v[0])), 0.0);
+					break;
+				case "skewY":
+					if (v.length > 0)
+						t.shear(0.0, Math.tan(Math.toRadians(v[0])));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown transform " +
+													   m.group(1));
+			}
+		}
+
+		return t;
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// Reads the numbers of a path's data, or of any list of numbers, and
+	// collects the end and control points of the path's commands.
+	private static final class PathScanner
+	{
+		private final String	s;
+		private int				i;
+
+		public PathScanner(String s)
+		{
+			this.s = ((s != null) ? s : "");
+			i = 0;
+		}
+
+		public void	scan(List<Point2D.Double> points)
+		{
+			double	x = 0.0;	// Current point
+			double	y = 0.0;
+			double	sx = 0.0;	// Start of the subpath
+			double	sy = 0.0;
+			char	command = 0;
+
+			while (true)
+			{
+				skip();
+
+				if (i >= s.length())
+					break;
+
+				char	c = s.charAt(i);
+
+				if (Character.isLetter(c) && c != 'e' && c != 'E')
+				{
+					command = c;
+					i++;
+
+					if (command == 'Z' || command == 'z')
+					{
+						x = sx;
+						y = sy;
+						continue;
+					}
+				}
+				else if (command == 0 || command == 'Z' || command == 'z')
+				{
+					throw new IllegalArgumentException("Bad path data: " + s);
+				}
+
+				boolean	relative = Character.isLowerCase(command);
+				double		ox = (relative ? x : 0.0);
+				double		oy = (relative ? y : 0.0);
+
+				switch (Character.toUpperCase(command))
+				{
+					case 'M':
+					case 'L':
+					case 'T':
+						x = ox + nextNumber();
+						y = oy + nextNumber();
+
+						if (Character.toUpperCase(command) == 'M')
+						{
+							sx = x;
+							sy = y;
+
+							// Further pairs are lines
+							command = (relative ? 'l' : 'L');
+						}
+						break;
+					case 'H':
+						x = ox + nextNumber();
+						break;
+					case 'V':
+						y = oy + nextNumber();
+						break;
+					case 'C':
+						points.add(new Point2D.Double(ox + nextNumber(),
+													  oy + nextNumber()));
+						points.add(new Point2D.Double(ox + nextNumber(),
+													  oy + nextNumber()));
+						x = ox + nextNumber();
+						y = oy + nextNumber();
+						break;
+					case 'S':
+					case 'Q':
+						points.add(new Point2D.Double(ox + nextNumber(),
+													  oy + nextNumber()));
+						x = ox + nextNumber();
+						y = oy + nextNumber();
+						break;
+					case 'A':
+						nextNumber();	// Radii
+						nextNumber();
+						nextNumber();	// Rotation
+						nextFlag();		// Large arc
+						nextFlag();		// Sweep
+						x = ox + nextNumber();
+						y = oy + nextNumber();
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown path command " +
+														   command);
+				}
+
+				points.add(new Point2D.Double(x, y));
+			}
+		}
+
+		public boolean	hasNumber()
+		{
+			skip();
+
+			return (i < s.length());
+		}
+
+		public double	nextNumber()
+		{
+			skip();
+
+			int		start = i;
+			boolean	dot = false;
+
+			if (i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+				i++;
+
+			while (i < s.length())
+			{
+				char	c = s.charAt(i);
+
+				if (Character.isDigit(c))
+				{
+					i++;
+				}
+				else if (c == '.' && !dot)
+				{
+					dot = true;
+					i++;
+				}
+				else if ((c == 'e' || c == 'E') && i > start)
+				{
+					i++;
+
+					if (i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+						i++;
+				}
+				else
+				{
+					break;
+				}
+			}
+
+			if (i == start)
+				throw new IllegalArgumentException("Expected a number at " +
+												   start + " in: " + s);
+
+			return Double.parseDouble(s.substring(start, i));
+		}
+
+		// Arc flags may be written without separators, e.g. "a5 5 0 01 10 10".
+		private void	nextFlag()
+		{
+			skip();
+
+			if (i >= s.length() || (s.charAt(i) != '0' && s.charAt(i) != '1'))
+				throw new IllegalArgumentException("Expected a flag at " + i +
+												   " in: " + s);
+
+			i++;
+		}
+
+		private void	skip()
+		{
+			while (i < s.length() &&
+				   (Character.isWhitespace(s.charAt(i)) || s.charAt(i) == ','))
+				i++;
+		}
+	}
+}
+
+//******************************************************************************
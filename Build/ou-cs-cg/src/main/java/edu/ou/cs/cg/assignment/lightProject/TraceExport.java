@@ -0,0 +1,447 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// Streams the paths of traced rays to a file as they are traced, for offline
+// analysis of runs far too big to keep in memory. A path is written as its
+// vertices: where the ray started, each interaction along the way (with the
+// element it hit), and where it ended and why. Between two vertices a ray
+// goes straight, so each vertex after the first ends one segment.
+//
+// The binary file is laid out as follows (all values big-endian):
+//
+//     header      int magic ("LPTR"), short version, short record size,
+//                 int element count
+//     records     byte kind, byte termination, short reserved, int ray id,
+//                 int reference, float weight, double x, double y
+//
+// Ray ids count from 0 in the order the rays start. The reference of a
+// START record is the id of the parent ray (or -1 for a ray from the
+// lightbox); for the others it is the element that was hit, as an index
+// into the scene given to the export (or -1 for none). END records have the
+// ordinal of the ray's Ray.Termination. The CSV file has the same records,
+// one per line, with the reference split into parent and element columns.
+//
+// The tracing threads never write to the file. Each packs its records into a
+// chunk of its own and hands full chunks to one writer thread through a
+// small lock-free ring (a bounded multi-producer, single-consumer queue).
+// When the ring is full, the tracing thread waits for the writer, so tracing
+// slows to the speed of the disk instead of queueing more and more chunks.
+// Written chunks are reused. So the memory used is a few chunks per thread,
+// however long the run is.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+//******************************************************************************
+
+/**
+ * The <CODE>TraceExport</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class TraceExport
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		MAGIC = 0x4C505452;		// "LPTR"
+	public static final short		VERSION = 1;
+	public static final int		RECORD = 32;			// Bytes per record
+
+	// Kinds of record
+	public static final byte		START = 0;		// Ray starts
+	public static final byte		REFLECT = 1;	// Off a mirror or glass
+	public static final byte		REFRACT = 2;	// Through a thin lens
+	public static final byte		END = 3;		// Ray ends
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final int		HEADER = 12;		// Bytes
+	private static final int		CHUNK = 2048;		// Records per chunk
+	private static final int		RING = 16;			// Chunks waiting, at most
+	private static final long		WAIT = 50000L;		// Between polls, ns
+
+	private static final String[]	KINDS = { "start", "reflect", "refract",
+											  "end" };
+
+	// Marks the end of the stream
+	private static final ByteBuffer	DONE = ByteBuffer.allocate(0);
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final Map<LightElement, Integer>		ids;		// Read only
+	private final boolean							csv;
+	private final FileChannel						channel;
+	private final Ring								ring;
+	private final ConcurrentLinkedQueue<ByteBuffer>	free;		// Written
+	private final ConcurrentLinkedQueue<Holder>		holders;	// One a thread
+	private final ThreadLocal<Holder>				holder;
+	private final Thread							writer;
+
+	private final AtomicInteger					rays;		// Ids given out
+	private final AtomicLong						records;
+	private final AtomicLong						waited;		// Tracing, ns
+	private volatile IOException					failure;
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// Starts writing the rays traced through a scene to a file, as CSV or in
+	// binary. Elements are identified by their index in the scene.
+	public TraceExport(Path path, List<LightElement> scene, boolean csv)
+		throws IOException
+	{
+		ids = new IdentityHashMap<LightElement, Integer>();
+
+		for (int i = 0; i < scene.size(); i++)
+			ids.put(scene.get(i), i);
+
+		this.csv = csv;
+
+		channel = FileChannel.open(path, StandardOpenOption.WRITE,
+								   StandardOpenOption.CREATE,
+								   StandardOpenOption.TRUNCATE_EXISTING);
+		ring = new Ring(RING);
+		free = new ConcurrentLinkedQueue<ByteBuffer>();
+		holders = new ConcurrentLinkedQueue<Holder>();
+		holder = new ThreadLocal<Holder>() {
+				protected Holder	initialValue() {
+					Holder	h = new Holder();
+
+					holders.add(h);
+
+					return h;
+				}
+			};
+
+		rays = new AtomicInteger();
+		records = new AtomicLong();
+		waited = new AtomicLong();
+		failure = null;
+
+		if (csv)
+		{
+			write(ByteBuffer.wrap(("ray,event,parent,element,termination," +
+								   "weight,x,y\n").getBytes(StandardCharsets.US_ASCII)));
+		}
+		else
+		{
+			ByteBuffer	header = ByteBuffer.allocate(HEADER);
+
+			header.putInt(MAGIC).putShort(VERSION).putShort((short)RECORD);
+			header.putInt(scene.size()).flip();
+			write(header);
+		}
+
+		writer = new Thread("Trace export") {
+				public void	run() {
+					drain();
+				}
+			};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	// Gets the number of records handed to the writer so far.
+	public long	getRecordCount()
+	{
+		return records.get();
+	}
+
+	// Gets the number of rays started so far.
+	public int	getRayCount()
+	{
+		return rays.get();
+	}
+
+	// Gets how long the tracing threads have waited for the writer in all.
+	public long	getWaitNanos()
+	{
+		return waited.get();
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Gives a ray its id and writes where it starts. The parent is null for
+	// a ray from the lightbox.
+	public void	start(Ray ray, Ray parent)
+	{
+		ray.exportId = rays.getAndIncrement();
+		add(START, 0, ray, ((parent != null) ? parent.exportId : -1));
+	}
+
+	// Writes an interaction of a ray with an element, where the ray is now.
+	public void	interact(Ray ray, byte kind, LightElement element)
+	{
+		add(kind, 0, ray, getId(element));
+	}
+
+	// Writes where a ray ended, and the element it ended on, if any.
+	public void	end(Ray ray, LightElement element)
+	{
+		add(END, ray.getTermination().ordinal(), ray, getId(element));
+	}
+
+	// Writes the records still in the threads' chunks, waits for the writer
+	// to finish and closes the file. Call this once no thread is tracing.
+	public void	close() throws IOException
+	{
+		for (Holder h : holders)
+		{
+			if (h.chunk != null && h.chunk.position() > 0)
+				submit(h.chunk);
+
+			h.chunk = null;
+		}
+
+		submit(DONE);
+
+		try
+		{
+			writer.join();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		channel.close();
+
+		if (failure != null)
+			throw failure;
+	}
+
+	//**********************************************************************
+	// Private Methods
+	//**********************************************************************
+
+	private int	getId(LightElement element)
+	{
+		Integer	id = ((element != null) ? ids.get(element) : null);
+
+		return ((id != null) ? id : -1);
+	}
+
+	// Packs a record into the calling thread's chunk, handing the chunk to
+	// the writer when it's full.
+	private void	add(byte kind, int termination, Ray ray, int reference)
+	{
+		Holder	h = holder.get();
+
+		if (h.chunk == null)
+		{
+			h.chunk = free.poll();
+
+			if (h.chunk == null)
+				h.chunk = ByteBuffer.allocate(CHUNK * RECORD);
+		}
+
+		ByteBuffer	b = h.chunk;
+
+		b.put(kind);
+		b.put((byte)termination);
+		b.putShort((short)0);
+		b.putInt(ray.exportId);
+		b.putInt(reference);
+		b.putFloat((float)ray.getWeight());
+		b.putDouble(ray.getPoint().x);
+		b.putDouble(ray.getPoint().y);
+
+		if (!b.hasRemaining())
+		{
+			submit(b);
+			h.chunk = null;
+		}
+	}
+
+	// Hands a chunk to the writer, waiting while the ring is full.
+	private void	submit(ByteBuffer chunk)
+	{
+		records.addAndGet(chunk.position() / RECORD);
+
+		if (ring.offer(chunk))
+			return;
+
+		long	start = System.nanoTime();
+
+		while (!ring.offer(chunk))
+			LockSupport.parkNanos(WAIT);
+
+		waited.addAndGet(System.nanoTime() - start);
+	}
+
+	// Writes chunks from the ring until the end of the stream. After a
+	// failure, chunks are still taken (so tracing goes on) but dropped.
+	private void	drain()
+	{
+		StringBuilder	text = new StringBuilder();
+
+		while (true)
+		{
+			ByteBuffer	chunk = ring.poll();
+
+			if (chunk == null)
+			{
+				LockSupport.parkNanos(WAIT);
+				continue;
+			}
+
+			if (chunk == DONE)
+				break;
+
+			chunk.flip();
+
+			try
+			{
+				if (failure == null)
+				{
+					if (csv)
+						write(toCsv(chunk, text));
+					else
+						write(chunk);
+				}
+			}
+			catch (IOException ex)
+			{
+				failure = ex;
+			}
+
+			chunk.clear();
+			free.add(chunk);
+		}
+	}
+
+	private void	write(ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	// Turns the records in a chunk into lines of CSV.
+	private static ByteBuffer	toCsv(ByteBuffer chunk, StringBuilder text)
+	{
+		Ray.Termination[]	terminations = Ray.Termination.values();
+
+		text.setLength(0);
+
+		while (chunk.hasRemaining())
+		{
+			byte	kind = chunk.get();
+			int		termination = chunk.get();
+			int		ray;
+			int		reference;
+
+			chunk.getShort();
+			ray = chunk.getInt();
+			reference = chunk.getInt();
+
+			text.append(ray).append(',').append(KINDS[kind]).append(',');
+
+			if (kind == START)
+				text.append(reference).append(",,");
+			else
+				text.append(',').append(reference).append(',');
+
+			if (kind == END)
+				text.append(terminations[termination].name().toLowerCase());
+
+			text.append(',').append(chunk.getFloat());
+			text.append(',').append(chunk.getDouble());
+			text.append(',').append(chunk.getDouble()).append('\n');
+		}
+
+		return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// The chunk a tracing thread is filling, if any.
+	private static final class Holder
+	{
+		private ByteBuffer	chunk;
+	}
+
+	// A bounded ring of chunks for any number of producers and one consumer.
+	// A producer claims a slot by moving the tail on, then fills it; the
+	// consumer takes slots in order once they are filled, emptying each one
+	// before moving the head past it.
+	private static final class Ring
+	{
+		private final AtomicReferenceArray<ByteBuffer>	slots;
+		private final AtomicLong						head;
+		private final AtomicLong						tail;
+
+		public Ring(int capacity)
+		{
+			slots = new AtomicReferenceArray<ByteBuffer>(capacity);
+			head = new AtomicLong();
+			tail = new AtomicLong();
+		}
+
+		// Adds a chunk, unless the ring is full.
+		public boolean	offer(ByteBuffer chunk)
+		{
+			while (true)
+			{
+				long	t = tail.get();
+
+				if (t - head.get() >= slots.length())
+					return false;
+
+				if (tail.compareAndSet(t, t + 1))
+				{
+					slots.set((int)(t % slots.length()), chunk);
+					return true;
+				}
+			}
+		}
+
+		// Takes the next chunk, or null if it isn't there yet. Call this from
+		// the consumer only.
+		public ByteBuffer	poll()
+		{
+			long		h = head.get();
+			int			i = (int)(h % slots.length());
+			ByteBuffer	chunk = slots.get(i);
+
+			if (chunk == null)
+				return null;
+
+			slots.set(i, null);
+			head.set(h + 1);
+
+			return chunk;
+		}
+	}
+}
+
+//******************************************************************************
@@ -0,0 +1,968 @@
+//******************************************************************************
+// Copyright (C) 2019 University of Oklahoma Board of Trustees.
+//******************************************************************************
+// Notes:
+//
+// The tracer advances rays through a fixed list of light elements. It holds no
+// reference to the view or to any OpenGL state, so the same stepping code is
+// used both for the per-frame beam animation on the JOGL thread and for full
+// retraces run on a background thread.
+//
+// Every ray finishes with a reason (see Ray.Termination). Rays that leave the
+// world, i.e. the bounds of all elements plus the original 1280x720 screen,
+// are clipped to it. A ray has a budget of bounces and of path length, and a
+// ray that comes back to the same point of the same mirror going the same way
+// is in a periodic orbit and is stopped. The number of hits in one step is
+// capped as well, so the cost of a step never depends on the scene.
+//
+// Each step only tests the elements that the grid finds near the step.
+//
+// Lenses and prisms are glass and are hit from outside or inside. At each
+// glass surface a ray splits into reflected and transmitted children (see
+// RayTree); tracing a ray stops at the split, and the children are traced on
+// their own. Lenses have a fixed index of 1.5, while prisms disperse light:
+// the transmitted part of a packet breaks up by wavelength (see Spectrum).
+//
+// In paraxial mode each lens is an ideal thin lens instead: one segment along
+// its middle, where the ray's slope changes as given by the ray transfer
+// (ABCD) matrix of a thin lens with the lens's focal length. Rays go through
+// without splitting. This is much cheaper than crossing the lens's curves,
+// and accurate for rays close to the lens's axis.
+//
+//******************************************************************************
+
+package edu.ou.cs.cg.assignment.lightProject;
+
+//import java.lang.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+
+//******************************************************************************
+
+/**
+ * The <CODE>Tracer</CODE> class.<P>
+ *
+ * @version %I%, %G%
+ */
+public final class Tracer
+{
+	//**********************************************************************
+	// Public Class Members
+	//**********************************************************************
+
+	public static final int		RAYS = 5;			// Rays per lightbox
+	public static final double		SPEED = 1.0 / 60.0;	// Length of a vector
+	public static final int		MAX_STEPS = 32768;	// Cap for full traces
+	public static final int		MAX_BOUNCES = 512;	// Default bounce budget
+	public static final double		MAX_LENGTH = 100000.0;	// Default length budget
+
+	//**********************************************************************
+	// Private Class Members
+	//**********************************************************************
+
+	private static final int		MAX_HITS_PER_STEP = 64;
+	private static final int		CANCEL_CHECK = 255;	// Check every 256 steps
+	private static final double	CYCLE_ANGLE = 1.0e-6;	// Radians per bin
+	private static final double	CYCLE_POSITION = 1.0e-3;	// Units per bin
+	private static final double	INDEX = 1.5;			// Lens refractive index
+	private static final double	SAME_DIRECTION = 1.0e-9;	// For packets
+	private static final double	EPSILON = 1.0e-9;		// Min step fraction
+
+	//**********************************************************************
+	// Private Members
+	//**********************************************************************
+
+	// State (internal) variables
+	private final ElementGrid				grid;
+	private final SceneNode				extra;		// Also always tested
+	private final double					factor;		// Travel factor
+	private final Rectangle2D.Double		world;		// Rays exit outside
+
+	private int							maxBounces;
+	private double							maxLength;
+	private boolean						paraxial;	// Thin lens mode
+	private boolean						recording;	// Keep the traces
+	private TraceExport					export;		// Streams paths out
+
+	// Elements near the current step (so a tracer is for one thread only)
+	private final ArrayList<LightElement>	candidates;
+	private final ArrayList<LightElement>	moved;		// From the extra node
+	private int							hitSide;	// Of the last outline hit
+	private LightElement					endedAt;	// Element a ray ended on
+
+	//**********************************************************************
+	// Constructors and Finalizer
+	//**********************************************************************
+
+	// The elements must not be modified while the tracer is in use.
+	public Tracer(List<LightElement> elements, double factor)
+	{
+		this(new ElementGrid(elements), null, factor);
+	}
+
+	// Traces the elements in the grid, plus one extra node (if not null) that
+	// may have moved since the grid was built. If the extra node is an element
+	// in an assembly, the whole top assembly is treated as having moved.
+	public Tracer(ElementGrid grid, SceneNode extra, double factor)
+	{
+		this.grid = grid;
+		this.extra = ((extra instanceof LightElement) ?
+					  ((LightElement)extra).getRoot() : extra);
+		this.factor = factor;
+
+		world = getWorld(grid, this.extra);
+
+		maxBounces = MAX_BOUNCES;
+		maxLength = MAX_LENGTH;
+		recording = true;
+		export = null;
+		candidates = new ArrayList<LightElement>();
+		moved = new ArrayList<LightElement>();
+	}
+
+	//**********************************************************************
+	// Getters and Setters
+	//**********************************************************************
+
+	public Rectangle2D.Double	getWorld()
+	{
+		return world;
+	}
+
+	// Treats lenses as ideal thin lenses (paraxial) or traces their surfaces.
+	public void	setParaxial(boolean paraxial)
+	{
+		this.paraxial = paraxial;
+	}
+
+	// Keeps the trace of every ray, or only the point it started from (e.g.
+	// when only where the rays end matters, as traces take a point a step).
+	public void	setRecording(boolean recording)
+	{
+		this.recording = recording;
+	}
+
+	// Writes the vertices of each ray traced with trace() to an export, or
+	// not if null. Only the start, the interactions and the end are written.
+	public void	setExport(TraceExport export)
+	{
+		this.export = export;
+	}
+
+	// Sets how many bounces and how much path length each ray may use.
+	public void	setBudget(int maxBounces, double maxLength)
+	{
+		this.maxBounces = maxBounces;
+		this.maxLength = maxLength;
+	}
+
+	//**********************************************************************
+	// Public Class Methods
+	//**********************************************************************
+
+	// Gets the world that rays are traced in: the original screen and the
+	// bounds of the elements in a grid and of an extra node (if not null),
+	// with a margin. Rays are clipped to it.
+	public static Rectangle2D.Double	getWorld(ElementGrid grid, SceneNode extra)
+	{
+		Rectangle2D.Double	world = new Rectangle2D.Double(0.0, 0.0, Camera.WIDTH,
+														   Camera.HEIGHT);
+
+		world.add(grid.getBounds());
+
+		if (extra != null)
+			world.add(extra.getBounds());
+
+		world.setRect(world.x - 1.0, world.y - 1.0,
+					  world.width + 2.0, world.height + 2.0);
+
+		return world;
+	}
+
+	// Creates the rays leaving the right side of the first lightbox, or an
+	// empty array if there is no lightbox among the elements.
+	public static Ray[]	emit(Collection<LightElement> elements)
+	{
+		return emit(elements, RAYS);
+	}
+
+	// Creates a number of rays leaving the right side of the first lightbox,
+	// spaced evenly across it, or none if there is no lightbox.
+	public static Ray[]	emit(Collection<LightElement> elements, int count)
+	{
+		return emit(elements, count, 0, count);
+	}
+
+	// Creates n of the count rays that emit(elements, count) would, starting
+	// from the first-th, e.g. to trace a great many rays a few at a time.
+	public static Ray[]	emit(Collection<LightElement> elements, int count,
+							 int first, int n)
+	{
+		for (LightElement le : elements)
+		{
+			if (!le.getType().equals("Lightbox"))
+				continue;
+
+			double		rotation = Math.toRadians(le.getRotation());
+			double		cos = Math.cos(rotation);
+			double		sin = Math.sin(rotation);
+
+			// Calc side vector from lightbox bottom right to top right
+			Point2D.Double	tr = le.toWorld(le.getShape().getTr());
+			Point2D.Double	br = le.toWorld(le.getShape().getBr());
+			double			vdx = tr.x - br.x;
+			double			vdy = tr.y - br.y;
+
+			// Calculate the CW (outward-pointing) unit perp vector for the side
+			double			nn = Math.sqrt(vdx * vdx + vdy * vdy);
+			double			ndx = vdy / nn;
+			double			ndy = -vdx / nn;
+
+			Ray[]			rays = new Ray[n];
+			double[]		packet = Spectrum.sample(Spectrum.SAMPLES);
+
+			for (int i = 0; i < rays.length; i++)
+			{
+				double	h = 25.0 - 50.0 * (first + i + 0.5) / count;
+				double	x = cos * 25.0 - sin * h + le.getCenter().x;
+				double	y = sin * 25.0 + cos * h + le.getCenter().y;
+
+				rays[i] = new Ray(x, y, ndx * SPEED, ndy * SPEED, packet);
+			}
+
+			return rays;
+		}
+
+		return new Ray[0];
+	}
+
+	//**********************************************************************
+	// Public Methods
+	//**********************************************************************
+
+	// Steps the ray until it terminates or the step cap is reached.
+	public void	trace(Ray ray, int maxSteps)
+	{
+		if (export != null && ray.exportId < 0)
+			export.start(ray, null);
+
+		endedAt = null;
+
+		for (int i = 0; i < maxSteps; i++)
+		{
+			if (!step(ray))
+				break;
+
+			// Give up now and then if the ray's tree is no longer wanted
+			if (((i & CANCEL_CHECK) == 0) && (ray.tree != null) &&
+				ray.tree.isCancelled())
+				break;
+		}
+
+		if (export != null)
+		{
+			export.end(ray, endedAt);
+
+			for (Ray child : ray.getChildren())
+				export.start(child, ray);
+		}
+	}
+
+	// Update the location of the light point by one animation frame. Returns
+	// false if the ray has terminated.
+	public boolean	step(Ray ray)
+	{
+		if (ray.isStopped())
+			return false;
+
+		step(ray, ray.point, ray.vector, ray.trace);
+
+		return !ray.isStopped();
+	}
+
+	//**********************************************************************
+	// Private Methods (Stepping)
+	//**********************************************************************
+
+	private void	step(Ray ray, Point2D.Double lp, Point2D.Double vector,
+						 ArrayDeque<Point2D.Double> trace)
+	{
+		// Factored direction vector
+		double ddx = vector.x * factor;
+		double ddy = vector.y * factor;
+
+		// Method variables
+		int j;
+		int hits = 0;
+		String hitType = "NA";
+		LightElement hitElement = null;
+
+		pointCalc: while (true)
+		{
+			// Calculate which side the point will reach first. These variables
+			// store that side's vertices and the parametric time to hit it.
+			Point2D.Double		pp1 = new Point2D.Double();
+			Point2D.Double		pp2 = new Point2D.Double();
+
+			double				tmin = Double.MAX_VALUE;
+
+			// Temp used to store previous tmin value
+			double 				temp;
+
+			// Adds a point to the trace if there are none
+			if(trace.isEmpty())
+			{
+				trace.add(new Point2D.Double(lp.x, lp.y));
+			}
+
+			// Get the tmins of all objects near the step
+			findCandidates(lp, ddx, ddy);
+
+			for(LightElement element : candidates)
+			{
+				temp = tmin;
+
+				switch(element.getType())
+				{
+					// Check the sides of the lenses, from either side, or
+					// only the middle of the lenses in paraxial mode
+					case "Convex":
+					case "Concave":
+						if(paraxial)
+						{
+							ElementShape shape = element.getShape();
+							Point2D.Double bm = getMiddle(shape.getBl(), shape.getBr());
+							Point2D.Double tm = getMiddle(shape.getTl(), shape.getTr());
+
+							tmin = crossSegment(element.toWorld(bm), element.toWorld(tm),
+												lp, ddx, ddy, pp1, pp2, tmin);
+							break;
+						}
+						tmin = crossOutline(element, lp, ddx, ddy, pp1, pp2, tmin);
+						break;
+					// Check the sides of the lightbox and mirrors
+					case "Mirror":
+					case "Lightbox":
+						Point2D.Double[] box = element.getWorldOutline();
+
+						for(j = 0; j < box.length; j++)
+						{
+							tmin = getTMin(box[j], box[(j + 1) % box.length],
+											ddx, ddy, pp1, pp2, tmin, lp, vector);
+						}
+						break;
+					// Check the sides of the prism or detector, from either side
+					case "Prism":
+					case "Detector":
+						tmin = crossOutline(element, lp, ddx, ddy, pp1, pp2, tmin);
+						break;
+				}
+
+				// Sets the hit type to the lowest tmin object
+				if(tmin < temp)
+				{
+					hitType = element.getType();
+					hitElement = element;
+				}
+			}
+
+			// Increment normally if greater than 1.0
+			if((tmin / factor) > 1.0)
+			{
+				advance(ray, ddx, ddy, true);
+
+				break;
+			}
+			else if(++hits > MAX_HITS_PER_STEP)
+			{
+				ray.terminate(Ray.Termination.BUDGET);
+				break;
+			}
+			else
+			{
+				switch(hitType)
+				{
+					// Light algorithm for mirrors
+					case "Mirror":
+						// If it is under 1.0, there will be at least one reflection.
+						// Translate the point to the reflection point along the side.
+						advance(ray, ddx * (tmin / factor), ddy * (tmin / factor), true);
+
+						// Calculate the CW (outward-pointing) perp vector for the side.
+						double		vdx = pp2.x - pp1.x;	// Calc side vector
+						double		vdy = pp2.y - pp1.y;	// from p1 to p2
+						double		ndx = vdy;				// Calc perp vector:
+						double		ndy = -vdx;				// negate x and swap
+
+						// Need a NORMALIZED perp vector for the reflection calculation.
+						double		nn = Math.sqrt(ndx * ndx + ndy * ndy);
+
+						ndx = ndx / nn;	// Divide each coordinate by the length to
+						ndy = ndy / nn;	// make a UNIT vector normal to the side.
+
+						// Calculate v_reflected.
+						double		dot = dot(vector.x * 2, vector.y * 2, 0.0, ndx, ndy, 0.0);
+						double		vreflectedx = ddx - 2.0 * dot * ndx;
+						double		vreflectedy = ddy - 2.0 * dot * ndy;
+
+						// Reflect the update vector, and reduce it to compensate for
+						// the distance the point moved to reach the side.
+						ddx = vreflectedx * (1.0 - tmin / factor);
+						ddy = vreflectedy * (1.0 - tmin / factor);
+
+						// Also reflect the reference vector. It will change direction
+						// but remain the same length.
+						double		dot2 = dot(vector.x, vector.y, 0.0, ndx, ndy, 0.0);
+
+						vector.x -= 2.0 * dot2 * ndx;
+						vector.y -= 2.0 * dot2 * ndy;
+
+						if(export != null && !ray.isStopped())
+						{
+							export.interact(ray, TraceExport.REFLECT, hitElement);
+						}
+
+						if(!bounce(ray, hitElement))
+						{
+							break pointCalc;
+						}
+						break;
+					// Light algorithm for the lightbox
+					case "Lightbox":
+						// Move lightpoint to the edge of the lightbox and stop it
+						advance(ray, ddx * (tmin / factor), ddy * (tmin / factor), true);
+						vector.x = 0.0;
+						vector.y = 0.0;
+						ray.terminate(Ray.Termination.ABSORBED);
+						endedAt = hitElement;
+						break pointCalc;
+					// Light algorithm for detectors
+					case "Detector":
+						// Move lightpoint to the face, record it and stop it
+						advance(ray, ddx * (tmin / factor), ddy * (tmin / factor), true);
+						detect(ray, hitElement);
+						vector.x = 0.0;
+						vector.y = 0.0;
+						ray.terminate(Ray.Termination.DETECTED);
+						endedAt = hitElement;
+						break pointCalc;
+					// Light algorithm for the lenses and prisms
+					case "Convex":
+					case "Concave":
+					case "Prism":
+						advance(ray, ddx * (tmin / factor), ddy * (tmin / factor), true);
+
+						if(ray.isStopped())
+						{
+							break pointCalc;
+						}
+
+						if(paraxial && !hitType.equals("Prism"))
+						{
+							thinLens(ray, hitElement);
+						}
+						else
+						{
+							refract(ray, hitElement);
+						}
+
+						// A split or out of budget, or else turned or bent
+						if(ray.isStopped())
+						{
+							endedAt = hitElement;
+						}
+						else if(export != null)
+						{
+							export.interact(ray, ((paraxial && !hitType.equals("Prism")) ?
+												  TraceExport.REFRACT : TraceExport.REFLECT),
+											hitElement);
+						}
+						break pointCalc;
+					// For unimplemented objects
+					default:
+						if(!advance(ray, ddx, ddy, true))
+						{
+							break pointCalc;
+						}
+				}
+			}
+
+			if(ray.isStopped())
+			{
+				break;
+			}
+		}
+	}
+
+	// Records a ray that reached a detector in the reading of its tree: where
+	// along the detector it hit, and its angle to the faces' normal.
+	private void	detect(Ray ray, LightElement element)
+	{
+		if (ray.tree == null)
+			return;
+
+		ElementShape	shape = element.getShape();
+		Point2D.Double	center = element.getCenter();
+		double			angle = Math.toRadians(element.getRotation());
+		double			cos = Math.cos(angle);
+		double			sin = Math.sin(angle);
+
+		// Rotate the hit point and direction into the detector's frame
+		double			px = ray.point.x - center.x;
+		double			py = ray.point.y - center.y;
+		double			ly = -sin * px + cos * py;
+		double			lvx = cos * ray.vector.x + sin * ray.vector.y;
+		double			lvy = -sin * ray.vector.x + cos * ray.vector.y;
+
+		double			bottom = shape.getBr().y;
+		double			top = shape.getTr().y;
+
+		ray.tree.detect(element.getDetector(), ray.getWeight(),
+						(ly - bottom) / (top - bottom),
+						Math.toDegrees(Math.atan2(lvy, Math.abs(lvx))));
+	}
+
+	// Splits the ray where it meets the hit side of a glass element into
+	// reflected and transmitted children, weighted by the Fresnel
+	// equations (unpolarized). Each wavelength of the packet is refracted by
+	// its own index; those that leave in the same direction stay together in
+	// one transmitted child. With total internal reflection for the whole
+	// packet there is only the reflected part, so the ray just turns.
+	private void	refract(Ray ray, LightElement element)
+	{
+		Point2D.Double	vector = ray.vector;
+		double			speed = Math.sqrt(vector.x * vector.x + vector.y * vector.y);
+		double			dx = vector.x / speed;
+		double			dy = vector.y / speed;
+
+		// Unit normal of the side, pointing out of the element
+		ElementShape	shape = element.getShape();
+		double			angle = Math.toRadians(element.getRotation());
+		double			lnx = shape.getNormalX(hitSide);
+		double			lny = shape.getNormalY(hitSide);
+		double			ndx = Math.cos(angle) * lnx - Math.sin(angle) * lny;
+		double			ndy = Math.sin(angle) * lnx + Math.cos(angle) * lny;
+
+		// Entering if moving against the outward normal, else leaving
+		double			cosi = -(dx * ndx + dy * ndy);
+		boolean		entering = (cosi >= 0.0);
+
+		if (!entering)
+		{
+			ndx = -ndx;
+			ndy = -ndy;
+			cosi = -cosi;
+		}
+
+		double[]		packet = ray.getWavelengths();
+		double			rx = dx + 2.0 * cosi * ndx;
+		double			ry = dy + 2.0 * cosi * ndy;
+		double			reflected = 0.0;
+
+		// Transmitted directions, the summed transmittance, and the members
+		// of each group of wavelengths
+		ArrayList<double[]>	groups = new ArrayList<double[]>();
+		int[]					member = new int[packet.length];
+
+		for (int i = 0; i < packet.length; i++)
+		{
+			double	index = getIndex(element, packet[i]);
+			double	eta = (entering ? 1.0 / index : index);
+			double	sin2t = eta * eta * (1.0 - cosi * cosi);
+
+			member[i] = -1;
+
+			if (sin2t >= 1.0)
+			{
+				reflected += 1.0;
+				continue;
+			}
+
+			double	cost = Math.sqrt(1.0 - sin2t);
+			double	rs = (eta * cosi - cost) / (eta * cosi + cost);
+			double	rp = (cosi - eta * cost) / (cosi + eta * cost);
+			double	r = 0.5 * (rs * rs + rp * rp);
+			double	tx = eta * dx + (eta * cosi - cost) * ndx;
+			double	ty = eta * dy + (eta * cosi - cost) * ndy;
+
+			reflected += r;
+
+			for (int g = 0; g < groups.size() && member[i] < 0; g++)
+				if (Math.abs(groups.get(g)[0] - tx) < SAME_DIRECTION &&
+					Math.abs(groups.get(g)[1] - ty) < SAME_DIRECTION)
+					member[i] = g;
+
+			if (member[i] < 0)
+			{
+				member[i] = groups.size();
+				groups.add(new double[] { tx, ty, 0.0, 0.0 });
+			}
+
+			groups.get(member[i])[2] += 1.0 - r;
+			groups.get(member[i])[3] += 1.0;
+		}
+
+		if (groups.isEmpty())
+		{
+			vector.x = rx * speed;
+			vector.y = ry * speed;
+			bounce(ray, null);
+			return;
+		}
+
+		if (!bounce(ray, null))
+			return;
+
+		double			share = ray.getWeight() / packet.length;
+
+		for (int g = 0; g < groups.size(); g++)
+		{
+			double[]	group = groups.get(g);
+			double[]	wavelengths = packet;
+
+			if (group[3] < packet.length)
+			{
+				wavelengths = new double[(int)group[3]];
+
+				for (int i = 0, k = 0; i < packet.length; i++)
+					if (member[i] == g)
+						wavelengths[k++] = packet[i];
+			}
+
+			ray.spawn(group[0] * speed, group[1] * speed, share * group[2],
+					  wavelengths);
+		}
+
+		ray.spawn(rx * speed, ry * speed, share * reflected, packet);
+		ray.terminate(Ray.Termination.SPLIT);
+	}
+
+	// Bends the ray where it crosses the middle of a lens as an ideal thin
+	// lens would. In the lens's frame, with the axis along the ray's travel,
+	// the ray's height h and slope m go to h and m - h / f.
+	private void	thinLens(Ray ray, LightElement element)
+	{
+		Point2D.Double	vector = ray.vector;
+		double			speed = Math.sqrt(vector.x * vector.x + vector.y * vector.y);
+		double			angle = Math.toRadians(element.getRotation());
+
+		// Axis (across the lens) and up (along it) unit vectors
+		double			ax = Math.cos(angle);
+		double			ay = Math.sin(angle);
+		double			ux = -ay;
+		double			uy = ax;
+
+		Point2D.Double	c = element.getCenter();
+		double			h = (ray.point.x - c.x) * ux + (ray.point.y - c.y) * uy;
+		double			da = (vector.x * ax + vector.y * ay) / speed;
+		double			du = (vector.x * ux + vector.y * uy) / speed;
+		double			side = ((da < 0.0) ? -1.0 : 1.0);
+
+		double			m = du / Math.abs(da) - h / element.getFocalLength();
+		double			nn = Math.sqrt(1.0 + m * m);
+
+		vector.x = (side * ax + m * ux) / nn * speed;
+		vector.y = (side * ay + m * uy) / nn * speed;
+
+		bounce(ray, null);
+	}
+
+	// Index of refraction of an element's glass at a wavelength in nm. Only
+	// the prisms are dispersive.
+	private static double	getIndex(LightElement element, double nm)
+	{
+		if (element.getType().equals("Prism"))
+			return Spectrum.cauchy(Spectrum.FLINT_A, Spectrum.FLINT_B, nm);
+
+		return INDEX;
+	}
+
+	// Collects the elements whose bounds are near the step from lp by (ddx,
+	// ddy). The margin covers the step going slightly past the hit side.
+	private void	findCandidates(Point2D.Double lp, double ddx, double ddy)
+	{
+		double	m = Math.abs(ddx) + Math.abs(ddy) + 1.0;
+		double	minX = Math.min(lp.x, lp.x + ddx) - m;
+		double	minY = Math.min(lp.y, lp.y + ddy) - m;
+		double	maxX = Math.max(lp.x, lp.x + ddx) + m;
+		double	maxY = Math.max(lp.y, lp.y + ddy) + m;
+
+		candidates.clear();
+		grid.query(minX, minY, maxX, maxY, candidates);
+
+		if (extra == null)
+			return;
+
+		moved.clear();
+		extra.collect(minX, minY, maxX, maxY, moved);
+
+		for (LightElement le : moved)
+			if (!candidates.contains(le))
+				candidates.add(le);
+	}
+
+	// Moves the light point, adding to the ray's length and (optionally) its
+	// trace. A ray that leaves the world is clipped to it and exits; one that
+	// runs out of length stops where it is. Returns false if the ray ended.
+	private boolean	advance(Ray ray, double dx, double dy, boolean record)
+	{
+		Point2D.Double	lp = ray.point;
+		double			t = exitTime(lp.x, lp.y, dx, dy);
+
+		lp.x += dx * t;
+		lp.y += dy * t;
+		ray.length += Math.sqrt(dx * dx + dy * dy) * t;
+
+		if (recording && (record || t < 1.0))
+			ray.trace.add(new Point2D.Double(lp.x, lp.y));
+
+		if (t < 1.0 || Double.isNaN(lp.x) || Double.isNaN(lp.y))
+			ray.terminate(Ray.Termination.EXITED);
+		else if (ray.length > maxLength)
+			ray.terminate(Ray.Termination.BUDGET);
+
+		return !ray.isStopped();
+	}
+
+	// Fraction of the move (dx, dy) from (x, y) that stays inside the world
+	// (Liang-Barsky clipping against each side in turn).
+	private double	exitTime(double x, double y, double dx, double dy)
+	{
+		double	t = 1.0;
+
+		if (dx < 0.0)
+			t = Math.min(t, (world.getMinX() - x) / dx);
+		else if (dx > 0.0)
+			t = Math.min(t, (world.getMaxX() - x) / dx);
+
+		if (dy < 0.0)
+			t = Math.min(t, (world.getMinY() - y) / dy);
+		else if (dy > 0.0)
+			t = Math.min(t, (world.getMaxY() - y) / dy);
+
+		return Math.max(0.0, t);
+	}
+
+	// Counts an interaction. At a mirror (if given), also checks if the ray
+	// has hit the same point of it going the same way before, which means it
+	// is caught in a periodic orbit. Returns false if the ray ended.
+	private boolean	bounce(Ray ray, LightElement mirror)
+	{
+		if (++ray.bounces > maxBounces)
+		{
+			ray.terminate(Ray.Termination.BUDGET);
+			return false;
+		}
+
+		if (mirror != null)
+		{
+			Visit	visit = new Visit(mirror, ray.point, ray.vector);
+
+			if (ray.visits == null)
+				ray.visits = new HashSet<Object>();
+
+			if (!ray.visits.add(visit))
+			{
+				ray.terminate(Ray.Termination.CYCLE);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	//**********************************************************************
+	// Utility Functions
+	//**********************************************************************
+
+	// Gets the tmin of object within the path of the lightpoint
+	private double getTMin(Point2D.Double p1, Point2D.Double p2, double ddx, double ddy,
+			Point2D.Double pp1, Point2D.Double pp2, double tmin, Point2D.Double lp,
+			Point2D.Double vector)
+	{
+		// Calculate the CW (outward-pointing) perp vector for the pair.
+		double			vdx = p2.x - p1.x;		// Calc side vector
+		double			vdy = p2.y - p1.y;		// from p1 to p2
+		double			ndx = vdy;			// Calc perp vector:
+		double			ndy = -vdx;				// negate x and swap
+
+		// Check if point is inbetween
+		double vdn = Math.sqrt(vdx * vdx + vdy * vdy);
+		double nvdx = vdx / vdn;
+		double nvdy = vdy / vdn;
+		double pdx = lp.x + ddx - p1.x;
+		double pdy = lp.y + ddy - p1.y;
+		double dd = dot(nvdx, nvdy, 0.0, pdx, pdy, 0.0);
+		if(!(dd >= 0 && dd <= vdn))
+		{
+			return tmin;
+		}
+
+		// See where the point intersects
+		double			wdx = p1.x - lp.x;		// Calc test vector
+		double			wdy = p1.y - lp.y;		// from q to p1
+
+		// Calculate the top part of the t_hit equation.
+		double			dnw = dot(ndx, ndy, 0.0, wdx, wdy, 0.0);
+
+		// Check if the point is on the outside of the polygon. The dot
+		// product will be 0 if the point is on a side, or slightly positive if
+		// it is beyond it (which can happen due to roundoff error).
+		if (dnw < 0.0)
+		{
+			// Calculate the bottom part of the t_hit equation.
+			double	dnv = dot(ndx, ndy, 0.0, vector.x * 2, vector.y * 2, 0.0);
+
+			// If the dot product is zero, the direction of motion is
+			// parallel to the side. Disqualify it as a hit candidate
+			// (even if the point is exactly ON the side).
+			double	thit = ((dnv != 0.0) ? (dnw / dnv) : 0.0);
+
+			// Remember the side with the smallest positive t_hit.
+			// It's the side that the point will reach first.
+			if ((0.0 < thit) && (thit < tmin))
+			{
+				pp1.setLocation(p1.x, p1.y);
+				pp2.setLocation(p2.x, p2.y);
+				return thit;
+			}
+		}
+		return tmin;
+	}
+
+	// Finds the first side of a lens or prism that the step from lp by (ddx,
+	// ddy) crosses, from inside or outside. The step is moved into the shape's
+	// local space, so the shared outline is used as is. Returns the step
+	// fraction times the factor (like getTMin()) if it is less than tmin, with
+	// the side in pp1-pp2 (in world space) and its index in hitSide.
+	private double	crossOutline(LightElement element, Point2D.Double lp,
+								 double ddx, double ddy, Point2D.Double pp1,
+								 Point2D.Double pp2, double tmin)
+	{
+		Point2D.Double[]	outline = element.getShape().getOutline();
+		Point2D.Double		c = element.getCenter();
+		double				angle = Math.toRadians(-element.getRotation());
+		double				cos = Math.cos(angle);
+		double				sin = Math.sin(angle);
+		Point2D.Double		q = new Point2D.Double(
+			cos * (lp.x - c.x) - sin * (lp.y - c.y),
+			sin * (lp.x - c.x) + cos * (lp.y - c.y));
+		double				qdx = cos * ddx - sin * ddy;
+		double				qdy = sin * ddx + cos * ddy;
+		int				side = -1;
+
+		for (int i = 0; i < outline.length; i++)
+		{
+			double	t = crossSegment(outline[i], outline[(i + 1) % outline.length],
+									 q, qdx, qdy, pp1, pp2, tmin);
+
+			if (t < tmin)
+			{
+				tmin = t;
+				side = i;
+			}
+		}
+
+		if (side >= 0)
+		{
+			hitSide = side;
+			pp1.setLocation(element.toWorld(outline[side]));
+			pp2.setLocation(element.toWorld(outline[(side + 1) % outline.length]));
+		}
+		return tmin;
+	}
+
+	// Checks if the step from lp by (ddx, ddy) crosses the segment from a to
+	// b before tmin (as for crossOutline()).
+	private double	crossSegment(Point2D.Double a, Point2D.Double b,
+								 Point2D.Double lp, double ddx, double ddy,
+								 Point2D.Double pp1, Point2D.Double pp2,
+								 double tmin)
+	{
+		double	ex = b.x - a.x;
+		double	ey = b.y - a.y;
+		double	den = ddx * ey - ddy * ex;
+
+		if (den == 0.0)
+			return tmin;
+
+		double	wx = a.x - lp.x;
+		double	wy = a.y - lp.y;
+		double	f = (wx * ey - wy * ex) / den;		// Along the step
+		double	u = (wx * ddy - wy * ddx) / den;	// Along the side
+
+		if ((EPSILON < f) && (f * factor < tmin) && (0.0 <= u) && (u <= 1.0))
+		{
+			pp1.setLocation(a.x, a.y);
+			pp2.setLocation(b.x, b.y);
+			return f * factor;
+		}
+		return tmin;
+	}
+
+	// Midpoint of two points
+	private static Point2D.Double getMiddle(Point2D.Double a, Point2D.Double b)
+	{
+		return new Point2D.Double(0.5 * (a.x + b.x), 0.5 * (a.y + b.y));
+	}
+
+	// Rotates a point of an element about the element's center
+	public static Point2D.Double getTransformedPoint(Point2D.Double p, LightElement le)
+	{
+		double nx = p.x - le.getCenter().x;
+		double ny = p.y - le.getCenter().y;
+		double rotation = le.getRotation();
+		double x = Math.cos(Math.toRadians(rotation))*nx -
+				Math.sin(Math.toRadians(rotation))*ny + le.getCenter().x;
+		double y = Math.sin(Math.toRadians(rotation))*nx +
+				Math.cos(Math.toRadians(rotation))*ny + le.getCenter().y;
+
+		return new Point2D.Double(x, y);
+	}
+
+	// Dot product method
+	private static double dot(double vx, double vy, double vz, double wx, double wy, double wz)
+	{
+		return (vx * wx + vy * wy + vz * wz);
+	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+
+	// A hit on a mirror, with the point and outgoing direction binned so that
+	// revisits compare equal despite roundoff.
+	private static final class Visit
+	{
+		private final LightElement	mirror;
+		private final long			x;
+		private final long			y;
+		private final long			angle;
+
+		public Visit(LightElement mirror, Point2D.Double p, Point2D.Double v)
+		{
+			this.mirror = mirror;
+			x = Math.round(p.x / CYCLE_POSITION);
+			y = Math.round(p.y / CYCLE_POSITION);
+			angle = Math.round(Math.atan2(v.y, v.x) / CYCLE_ANGLE);
+		}
+
+		public boolean	equals(Object o)
+		{
+			if (!(o instanceof Visit))
+				return false;
+
+			Visit	v = (Visit)o;
+
+			return (mirror == v.mirror && x == v.x && y == v.y && angle == v.angle);
+		}
+
+		public int	hashCode()
+		{
+			return Objects.hash(System.identityHashCode(mirror), x, y, angle);
+		}
+	}
+}
+
+//******************************************************************************
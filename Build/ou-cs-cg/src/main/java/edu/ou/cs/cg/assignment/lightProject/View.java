@@ -20,9 +20,13 @@ package edu.ou.cs.cg.assignment.lightProject;
 //import java.lang.*;
 import java.awt.*;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.awt.GLJPanel;
 import com.jogamp.opengl.glu.*;
@@ -49,6 +53,13 @@ public final class View
 	private static final int			DEFAULT_FRAMES_PER_SECOND = 60;
 	private static final DecimalFormat	FORMAT = new DecimalFormat("0.000");
 
+	// Level of detail, in pixels on screen
+	private static final double		POINT_PIXELS = 3.0;	// Smaller is a point
+	private static final double		QUAD_PIXELS = 12.0;	// Smaller is a quad
+	private static final double		CURVE_ERROR = 0.5;	// Max curve error
+	private static final int			MAX_CURVE_SEGMENTS = 64;
+	private static final double		LENSE_HEIGHT = 60.0;	// In scene units
+
 	//**********************************************************************
 	// Public Class Members
 	//**********************************************************************
@@ -61,13 +72,14 @@ public final class View
 	//**********************************************************************
 
 	// State (internal) variables
-	private final GLJPanel				canvas;
+	private final GLAutoDrawable		canvas;
 	private int						w;			// Canvas width
 	private int						h;			// Canvas height
 
 	private TextRenderer				renderer;
+	private GLU						glu;
 
-	private final FPSAnimator			animator;
+	private final FPSAnimator			animator;	// Null when replaying headless
 	private int						counter;	// Frame counter
 
 	private final Model				model;
@@ -75,17 +87,94 @@ public final class View
 	private final KeyHandler			keyHandler;
 	private final MouseHandler			mouseHandler;
 	
-	// These are the traces for the lightbeams
-	private final List<ArrayDeque<Point2D.Double>> hitPoints;
+	// These are the lightbeams, with their lightpoints, vectors and traces.
+	// The rays are all the nodes of the tree, listed for the status line.
+	private volatile RayTree tree;
+	private volatile List<Ray> rays;
+	
+	// Samples the lightbox as an area source, a few batches of rays a frame.
+	// The sampled paths are those received since the scene last changed.
+	private AreaSource areaSource;
+	private List<BeamPath> sampled;
+	
+	// What the detectors recorded from the shown rays, and how many rays
+	// were emitted for them. The area source adds each batch's readings.
+	private Map<Detector, DetectorReading> detected;
+	private int emitted;
+	
+	// Accumulates the light of the played paths in the background, and the
+	// texture showing the last map it finished
+	private final LiveHeatMap heatMap;
+	private List<BeamPath> heatPaths;		// Last requested
+	private LiveHeatMap.Image heatImage;	// Last finished, null until one is
+	private int heatTexture;				// Zero until made
+	private boolean heatUploaded;			// Pixels are in the texture
+	
+	// Plays the paths of the traced rays back, without tracing again
+	private final Playback playback;
+	private long playedAt;			// Time of the last frame, in ns
+	
+	// Retraces the beams in the background while elements are moved
+	private final LiveTracer liveTracer;
+	private int tracedVersion;
+	
+	// The scene version the shown beams were traced at (or -1), and how, so
+	// they can be kept with the version in the history for undo and redo.
+	// The kept version is the last one they were kept with or taken from.
+	private int requestedVersion;
+	private boolean requestedParaxial;
+	private double requestedFactor;
+	private int shownVersion;
+	private boolean shownParaxial;
+	private double shownFactor;
+	private History.Version keptVersion;
 	
-	// The vectors for the lightpoints
-	private Point2D.Double[] vectors;
+	// Traces the scene with a ghost of the element being placed at the
+	// cursor, in the background. The requested preview is the latest one
+	// asked for; the shown preview is the latest one that finished.
+	private final LiveTracer previewTracer;
+	private Preview requested;
+	private Preview previewed;
+	
+	// Searches for the poses of the selected elements that deliver the most
+	// light to the detectors, on another thread. The best pose so far is
+	// drawn with its beams.
+	private volatile Optimizer optimizer;
+	private Optimizer.Candidate optimized;
+	private List<BeamPath> optimizedPaths;
+	private long optimizedAt;		// Start time, in ns
+	
+	// Compares paraxial mode with exact mode in the background
+	private final AtomicBoolean measuring;
+	private int measuredVersion;
+	private volatile String paraxialStatus;
+	
+	// Camera for this frame, and the lookup used to cull elements outside it
+	private Camera camera;
+	private ElementGrid grid;
+	private int gridVersion;
+	
+	// Records the input, or replays a recording (see InputLog and Replay).
+	// A headless replay sets the clock of each frame; otherwise it is -1
+	// and frames go by the system clock.
+	private InputLog.Recorder recorder;
+	private volatile Replay replay;
+	private long clock;
+	private long requestedAt;		// Time of the last trace request, in ns
 
 	//**********************************************************************
 	// Constructors and Finalizer
 	//**********************************************************************
 
 	public View(GLJPanel canvas)
+	{
+		this(canvas, true, true);
+	}
+
+	// Makes a view of any drawable, e.g. an offscreen one, which is only
+	// drawn when something calls its display() if there is no animation.
+	// A view that isn't persistent neither recovers nor autosaves its scene.
+	public View(GLAutoDrawable canvas, boolean animate, boolean persistent)
 	{
 		this.canvas = canvas;
 
@@ -94,35 +183,68 @@ public final class View
 		canvas.addGLEventListener(this);
 
 		// Initialize model (scene data and parameter manager)
-		model = new Model(this);
+		model = new Model(this, persistent);
 		
-		hitPoints = new ArrayList<>(5);
+		tree = new RayTree(new ArrayList<LightElement>());
+		rays = tree.getRays();
 		
-		for(int i = 0; i < 5; i++)
-		{
-			hitPoints.add(new ArrayDeque<Point2D.Double>());
-		}
+		playback = new Playback();
+		playedAt = System.nanoTime();
 		
-		vectors = new Point2D.Double[11];
-		for(int i = 0; i < vectors.length; i++)
-		{
-			vectors[i] = new Point2D.Double(1.0 / DEFAULT_FRAMES_PER_SECOND, 0.0);
-		}
+		areaSource = null;
+		sampled = new ArrayList<BeamPath>();
+		detected = tree.getReadings();
+		emitted = 0;
+		
+		heatMap = new LiveHeatMap();
+		heatPaths = null;
+		heatImage = null;
+		heatTexture = 0;
+		heatUploaded = false;
+		
+		liveTracer = new LiveTracer();
+		tracedVersion = model.getVersion();
+		shownVersion = -1;
+		keptVersion = null;
+		
+		previewTracer = new LiveTracer();
+		requested = null;
+		previewed = null;
+		
+		measuring = new AtomicBoolean(false);
+		measuredVersion = -1;
+		paraxialStatus = "";
+		
+		camera = model.getCamera();
+		grid = new ElementGrid(model.getLightElements());
+		gridVersion = model.getVersion();
+		
+		recorder = null;
+		replay = null;
+		clock = -1L;
+		requestedAt = 0L;
 
 		// Initialize controller (interaction handlers)
 		keyHandler = new KeyHandler(this, model);
 		mouseHandler = new MouseHandler(this, model);
 
 		// Initialize animation
-		animator = new FPSAnimator(canvas, DEFAULT_FRAMES_PER_SECOND);
-		animator.start();
+		if (animate)
+		{
+			animator = new FPSAnimator(canvas, DEFAULT_FRAMES_PER_SECOND);
+			animator.start();
+		}
+		else
+		{
+			animator = null;
+		}
 	}
 
 	//**********************************************************************
 	// Getters and Setters
 	//**********************************************************************
 
-	public GLJPanel	getCanvas()
+	public GLAutoDrawable	getCanvas()
 	{
 		return canvas;
 	}
@@ -137,66 +259,214 @@ public final class View
 		return h;
 	}
 	
+	// Starts searching for the best poses of the elements at some indices in
+	// a snapshot of the scene, seeded so that the same scene gives the same
+	// search. Only use it on the JOGL thread.
+	public void startOptimizer(List<LightElement> scene, int[] indices,
+								boolean positions, long seed)
+	{
+		final Optimizer o = new Optimizer(scene, indices, positions, getFactor(),
+										  model.isParaxial(), seed);
+		
+		optimizer = o;
+		optimized = null;
+		optimizedAt = System.nanoTime();
+		
+		Thread thread = new Thread(new Runnable() {
+				public void run() {
+					while(!o.isDone())
+					{
+						o.step();
+					}
+				}
+			}, "Optimizer");
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	// Stops the search, and gets the best candidate it found, or null if
+	// there was no search. Only use it on the JOGL thread.
+	public Optimizer.Candidate stopOptimizer()
+	{
+		Optimizer o = optimizer;
+		
+		if(o == null)
+		{
+			return null;
+		}
+		
+		o.cancel();
+		optimizer = null;
+		optimized = null;
+		optimizedPaths = null;
+		return o.getBest();
+	}
+	
+	// Get the playback of the beams (only use it on the JOGL thread)
+	public Playback getPlayback()
+	{
+		return playback;
+	}
+	
+	public KeyHandler getKeyHandler()
+	{
+		return keyHandler;
+	}
+	
+	public MouseHandler getMouseHandler()
+	{
+		return mouseHandler;
+	}
+	
+	// Check if a trace of the scene or of the preview is waiting or running
+	public boolean isTracing()
+	{
+		return (liveTracer.isBusy() || previewTracer.isBusy());
+	}
+	
+	// Sets the time of the coming frames, in ns, or -1 for the system clock
+	public void setClock(long clock)
+	{
+		this.clock = clock;
+	}
+	
 	//**********************************************************************
 	// Public methods
 	//**********************************************************************
 	
-	// Clears the trace and resets the vector
+	// Clears the traces and puts the lightpoints back at the lightbox. The
+	// scene is traced again the next time the light is on.
 	public void clearLight()
 	{
-		// Clear all traces
-		for(ArrayDeque<Point2D.Double> hp : hitPoints)
+		// Drop any retrace still running, its beams are out of date
+		liveTracer.cancel();
+		tracedVersion = -1;
+		shownVersion = -1;
+		
+		if(areaSource != null)
 		{
-			hp.clear();
+			areaSource.cancel();
+			areaSource = null;
 		}
+		sampled = new ArrayList<BeamPath>();
 		
-		ArrayDeque<Model.LightElement> elements = new ArrayDeque<Model.LightElement>(model.getLightElements());
+		tree = new RayTree(model.getLightElements());
+		rays = tree.getRays();
+		detected = tree.getReadings();
+		emitted = tree.getRoots().length;
+		playback.clear();
+	}
+
+	// Uses the beams of the preview if they were traced for the element just
+	// placed, against the scene version before it was placed. Returns false
+	// if there is no such preview, in which case nothing changes.
+	public boolean adoptPreview(LightElement le, int version)
+	{
+		Preview p = previewed;
 		
-		boolean noLightBox = true;
-		for(Model.LightElement le : elements)
+		// The preview traces the fixed rays, not an area source
+		if(p == null || model.isAreaSource() || p.version != version || p.paraxial != model.isParaxial() ||
+			!p.ghost.getType().equals(le.getType()) ||
+			!p.ghost.getCenter().equals(le.getCenter()) ||
+			p.ghost.getRotation() != le.getRotation())
 		{
-			if(le.getType().equals("Lightbox"))
-			{
-				double rotation = le.getRotation();
-				
-				// Get transformed points
-				Point2D.Double tr = getTransformedPoint(le.getTr(), le);
-				Point2D.Double br = getTransformedPoint(le.getBr(), le);
-				
-				// Calculate the CW (outward-pointing) perp vector for the side.
-				// Calc side vector from lightbox bottom right to top right
-				double vdx = tr.x - br.x;
-				double vdy = tr.y - br.y;
-				
-				double		ndx = vdy;				// Calc perp vector:
-				double		ndy = -vdx;				// negate x and swap
-
-				// Need a NORMALIZED perp vector
-				double		nn = Math.sqrt(ndx * ndx + ndy * ndy);
+			return false;
+		}
+		
+		showTrace(p.tree, p.paths);
+		tracedVersion = model.getVersion();
+		shownVersion = tracedVersion;
+		shownParaxial = p.paraxial;
+		shownFactor = getFactor();
+		
+		// The preview already showed the whole beams
+		playback.finish();
+		
+		requested = null;
+		previewed = null;
+		return true;
+	}
 
-				ndx = ndx / nn;	// Divide each coordinate by the length to
-				ndy = ndy / nn;	// make a UNIT vector normal to the side.
-				
-				// Set the direction vectors for the lightpoints
-				for(Point2D.Double v : vectors)
-				{
-					v.setLocation(ndx / DEFAULT_FRAMES_PER_SECOND, ndy / DEFAULT_FRAMES_PER_SECOND);
-				}
-				
-				noLightBox = false;
-				break;
-			}
+	// Starts recording the input to the canvas, or stops and saves it. The
+	// recording starts from the scene as it is once the changes of earlier
+	// input have been made. Only use it on the AWT event thread.
+	public void toggleRecording()
+	{
+		if(!(canvas instanceof Component))
+		{
+			return;
+		}
+		
+		if(recorder == null)
+		{
+			recorder = new InputLog.Recorder((Component)canvas);
+			model.captureState(recorder);
+			System.out.println("Recording input (press R again to stop)");
+			return;
+		}
+		
+		InputLog log = recorder.stop();
+		int count = recorder.getEventCount();
+		
+		recorder = null;
+		
+		if(log == null)
+		{
+			System.err.println("Stopped recording before it started");
+			return;
+		}
+		
+		try
+		{
+			log.write(Paths.get(InputLog.FILE));
+			System.out.println("Recorded " + count + " events to " + InputLog.FILE);
+		}
+		catch(IOException ex)
+		{
+			System.err.println("Couldn't save the recording: " + ex.getMessage());
+		}
+	}
+	
+	// Replays the saved recording in real time, or stops the replay that is
+	// playing. Only use it on the AWT event thread.
+	public void toggleReplay()
+	{
+		Replay r = replay;
+		
+		if(r != null && !r.isDone())
+		{
+			r.cancel();
+			return;
 		}
 		
-		// Set vectors to default values if no lightbox is in scene
-		if(noLightBox)
+		try
 		{
-			for(Point2D.Double v : vectors)
+			InputLog log = InputLog.read(Paths.get(InputLog.FILE));
+			
+			if(log.getState().width != w || log.getState().height != h)
 			{
-				v.setLocation(1.0 / DEFAULT_FRAMES_PER_SECOND, 0.0);
+				System.err.println("The recording was made at " + log.getState().width + "x" +
+								   log.getState().height + ", so the mouse may land elsewhere");
 			}
+			
+			r = new Replay(log);
+			startReplay(r);
+			r.play(this);
+		}
+		catch(IOException ex)
+		{
+			System.err.println("Couldn't replay the recording: " + ex.getMessage());
 		}
 	}
+	
+	// Puts the scene back as the replay's recording started, and measures
+	// the frames and traces for it from then on
+	public void startReplay(Replay r)
+	{
+		replay = r;
+		model.restoreState(r.getLog().getState());
+	}
 
 	//**********************************************************************
 	// Override Methods (GLEventListener)
@@ -209,21 +479,38 @@ public final class View
 
 		renderer = new TextRenderer(new Font("Monospaced", Font.PLAIN, 12),
 									true, true);
+		glu = GLU.createGLU();
 
 		initPipeline(drawable);
 	}
 
 	public void	dispose(GLAutoDrawable drawable)
 	{
+		GL2	gl = drawable.getGL().getGL2();
+
+		if (heatTexture != 0)
+		{
+			gl.glDeleteTextures(1, new int[] { heatTexture }, 0);
+			heatTexture = 0;
+		}
+
+		if (optimizer != null)
+			optimizer.cancel();
+
 		renderer = null;
 	}
 
 	public void	display(GLAutoDrawable drawable)
 	{
+		long	start = System.nanoTime();
+
 		updatePipeline(drawable);
 
 		update(drawable);
 		render(drawable);
+
+		if (replay != null)
+			replay.addFrame(System.nanoTime() - start);
 	}
 
 	public void	reshape(GLAutoDrawable drawable, int x, int y, int w, int h)
@@ -240,12 +527,188 @@ public final class View
 	{
 		counter++;									// Advance animation counter
 		
-		Point2D.Double[] lps = model.getLightPoints();
+		measureParaxial();
+		updatePreview();
+		updateOptimizer();
+		
+		if(!model.getLight())
+		{
+			return;
+		}
+		
+		updateBeams();
+		updateHeatMap();
+	}
+	
+	// Move the beam fronts, and pick up any beams traced in the background
+	private void	updateBeams()
+	{
+		// Move the beam fronts along the traced paths, as far as the old
+		// stepping moved them in the same time
+		long now = ((clock >= 0L) ? clock : System.nanoTime());
+		
+		playback.advance(Tracer.SPEED * getFactor() * DEFAULT_FRAMES_PER_SECOND *
+						 Math.min(now - playedAt, 100000000L) / 1.0e9);
+		playedAt = now;
+		
+		if(model.isAreaSource())
+		{
+			updateAreaSource();
+			return;
+		}
+		
+		// Trace the whole scene in the background when the light is turned on,
+		// and again when elements have been moved or rotated since the last
+		// frame. Only the latest pose is traced.
+		int version = model.getVersion();
+		
+		// A version stepped to by undo or redo may already have its beams.
+		// The playback stays where it was, so whole beams stay whole.
+		History.Version historyVersion = model.getHistoryVersion();
+		
+		if(version != tracedVersion)
+		{
+			History.Trace kept = ((historyVersion != null) ?
+								  model.getHistory().getTrace(historyVersion) : null);
+			
+			tracedVersion = version;
+			
+			if(kept != null && kept.paraxial == model.isParaxial() && kept.factor == getFactor())
+			{
+				liveTracer.cancel();
+				showTrace(kept.tree, kept.paths);
+				shownVersion = version;
+				shownParaxial = kept.paraxial;
+				shownFactor = kept.factor;
+				keptVersion = historyVersion;
+			}
+			else
+			{
+				requestedAt = System.nanoTime();
+				requestedVersion = version;
+				requestedParaxial = model.isParaxial();
+				requestedFactor = getFactor();
+				liveTracer.request(model.snapshotLightElements(), requestedFactor,
+									requestedParaxial);
+			}
+		}
+		
+		RayTree traced = liveTracer.poll();
+		
+		if(traced != null)
+		{
+			if(replay != null)
+			{
+				replay.addTrace(System.nanoTime() - requestedAt, traced.getNodeCount());
+			}
+			
+			showTrace(traced, BeamPath.build(traced));
+			shownVersion = requestedVersion;
+			shownParaxial = requestedParaxial;
+			shownFactor = requestedFactor;
+		}
+		
+		// Keep the beams with the version once they are traced for it
+		if(historyVersion != null && historyVersion != keptVersion && shownVersion == version)
+		{
+			model.getHistory().setTrace(historyVersion,
+										new History.Trace(tree, playback.getPaths(),
+														  shownParaxial, shownFactor));
+			keptVersion = historyVersion;
+		}
+	}
+	
+	// Show the beams of a trace, keeping the playback's position
+	private void	showTrace(RayTree traced, List<BeamPath> paths)
+	{
+		tree = traced;
+		rays = traced.getRays();
+		detected = traced.getReadings();
+		emitted = traced.getRoots().length;
+		playback.setPaths(paths);
+	}
+
+	// Ask for the light of the played paths to be added to the heat map, in
+	// the background, whenever they change. The map covers the world the
+	// rays are clipped to, which takes in the selected element wherever it
+	// has been dragged. The finished map is picked up when drawn.
+	private void	updateHeatMap()
+	{
+		List<BeamPath> paths = playback.getPaths();
+		
+		if(!model.isHeatMap() || paths == heatPaths)
+		{
+			return;
+		}
+		
+		LightElement selected = model.getLightElements().peekLast();
+		
+		updateGrid();
+		heatMap.request(paths, Tracer.getWorld(grid, (selected == null) ?
+											   null : selected.getRoot()));
+		heatPaths = paths;
+	}
+	
+	// Add the batches of area source rays traced since the last frame, and
+	// start sampling again when the scene changes. The old rays stay up until
+	// the first new batch comes in.
+	private void	updateAreaSource()
+	{
+		int version = model.getVersion();
+		
+		if(version != tracedVersion)
+		{
+			tracedVersion = version;
+			
+			if(areaSource != null)
+			{
+				areaSource.cancel();
+			}
+			
+			areaSource = new AreaSource(model.snapshotLightElements(), getFactor(),
+										model.isParaxial(), model.getSourceSeed());
+			sampled = null;
+		}
+		
+		List<RayTree> trees = areaSource.poll(AreaSource.BUDGET);
+		
+		if(trees.isEmpty())
+		{
+			return;
+		}
+		
+		if(sampled == null)
+		{
+			sampled = new ArrayList<BeamPath>();
+			rays = new ArrayList<Ray>();
+			detected = new HashMap<Detector, DetectorReading>();
+			emitted = 0;
+		}
 		
-		for(int i = 0; i < lps.length; i++)
+		for(RayTree traced : trees)
 		{
-			updatePointWithReflection(lps[i], i);			
+			List<BeamPath> paths = BeamPath.build(traced);
+			
+			for(Map.Entry<Detector, DetectorReading> e : traced.getReadings().entrySet())
+			{
+				DetectorReading reading = detected.get(e.getKey());
+				
+				if(reading == null)
+				{
+					detected.put(e.getKey(), reading = new DetectorReading());
+				}
+				reading.add(e.getValue());
+			}
+			emitted += traced.getRoots().length;
+			
+			sampled.addAll(paths);
+			
+			for(BeamPath path : paths)
+			{
+				rays.add(path.getRay());
+			}
 		}
+		playback.setPaths(new ArrayList<BeamPath>(sampled));
 	}
 
 	private void	render(GLAutoDrawable drawable)
@@ -278,11 +741,13 @@ public final class View
 	private void	updatePipeline(GLAutoDrawable drawable)
 	{
 		GL2			gl = drawable.getGL().getGL2();
-		GLU			glu = GLU.createGLU();
+
+		camera = model.getCamera();
 
 		gl.glMatrixMode(GL2.GL_PROJECTION);		// Prepare for matrix xform
 		gl.glLoadIdentity();						// Set to identity matrix
-		glu.gluOrtho2D(0, 1280, 0, 720);	// 2D translate and scale
+		glu.gluOrtho2D(camera.getLeft(), camera.getRight(),
+					   camera.getBottom(), camera.getTop());	// 2D translate and scale
 	}
 
 	//**********************************************************************
@@ -317,35 +782,471 @@ public final class View
 		}
 
 		renderer.draw(drawingMode, 2, 16);
+		renderer.draw(getRayStatus(), 2, 30);
+		renderer.draw(getPlaybackStatus(), 2, 44);
+		
+		int y = 58;
+		
+		if(model.isParaxial())
+		{
+			renderer.draw(paraxialStatus, 2, y);
+			y += 14;
+		}
+		
+		String detectorStatus = getDetectorStatus();
+		
+		if(detectorStatus != null)
+		{
+			renderer.draw(detectorStatus, 2, y);
+			y += 14;
+		}
+		
+		String optimizerStatus = getOptimizerStatus();
+		
+		if(optimizerStatus != null)
+		{
+			renderer.draw(optimizerStatus, 2, y);
+		}
 
 		renderer.endRendering();
 	}
 
+	// Trace the scene with a ghost of the element being placed at the cursor,
+	// whenever the cursor, the element type or the scene changes. A new
+	// request cancels the trace of the old one.
+	private void	updatePreview()
+	{
+		Point2D.Double cursor = model.getCursor();
+		
+		if(!model.isPreview() || cursor == null || model.isDragging())
+		{
+			if(requested != null)
+			{
+				previewTracer.cancel();
+				requested = null;
+				previewed = null;
+			}
+			return;
+		}
+		
+		int version = model.getVersion();
+		
+		if(requested == null || requested.version != version ||
+			requested.paraxial != model.isParaxial() ||
+			!requested.ghost.getType().equals(model.getStatus()) ||
+			!requested.ghost.getCenter().equals(cursor))
+		{
+			LightElement ghost = LightElement.create(model.getStatus(), cursor.x, cursor.y);
+			
+			requested = new Preview(ghost, version, model.isParaxial());
+			previewTracer.request(getPreviewScene(ghost), getFactor(),
+								   requested.paraxial);
+		}
+		
+		RayTree traced = previewTracer.poll();
+		
+		if(traced != null)
+		{
+			requested.tree = traced;
+			requested.paths = BeamPath.build(traced);
+			previewed = requested;
+		}
+	}
+	
+	// Pick up the best pose the optimizer has found so far, and move the
+	// elements into it once the search is done
+	private void	updateOptimizer()
+	{
+		Optimizer o = optimizer;
+		
+		if(o == null)
+		{
+			return;
+		}
+		
+		Optimizer.Candidate best = o.getBest();
+		
+		if(best != optimized)
+		{
+			optimized = best;
+			optimizedPaths = BeamPath.build(best.getTree());
+		}
+		
+		if(o.isDone())
+		{
+			model.finishOptimizer();
+		}
+	}
+	
+	// Get a snapshot of the scene as it would be with the ghost placed. A
+	// lightbox is moved rather than added, as only one may exist.
+	private List<LightElement>	getPreviewScene(LightElement ghost)
+	{
+		List<LightElement> scene = model.snapshotLightElements();
+		
+		if(ghost.getType().equals("Lightbox"))
+		{
+			for(int i = 0; i < scene.size(); i++)
+			{
+				if(scene.get(i).getType().equals("Lightbox"))
+				{
+					scene.set(i, ghost);
+					return scene;
+				}
+			}
+		}
+		scene.add(ghost);
+		return scene;
+	}
+	
+	// In paraxial mode, trace the scene both ways on another thread after it
+	// changes, to show how far the thin lenses stray from the exact ones
+	private void	measureParaxial()
+	{
+		int version = model.getVersion();
+		
+		if(!model.isParaxial() || model.isDragging() || version == measuredVersion ||
+			!measuring.compareAndSet(false, true))
+		{
+			return;
+		}
+		
+		final List<LightElement> elements = model.snapshotLightElements();
+		final double factor = getFactor();
+		
+		measuredVersion = version;
+		paraxialStatus = "Paraxial lenses: measuring divergence...";
+		
+		Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try
+					{
+						ElementGrid grid = new ElementGrid(elements);
+						RayTree exact = new RayTree(elements);
+						RayTree thin = new RayTree(elements);
+						long t0 = System.nanoTime();
+						
+						exact.trace(grid, null, factor, false);
+						
+						long t1 = System.nanoTime();
+						
+						thin.trace(grid, null, factor, true);
+						
+						long t2 = System.nanoTime();
+						
+						paraxialStatus = "Paraxial lenses: divergence " +
+							FORMAT.format(RayTree.getDivergence(exact, thin)) +
+							", " + FORMAT.format((t2 - t1) / 1.0e6) + " ms vs " +
+							FORMAT.format((t1 - t0) / 1.0e6) + " ms exact";
+					}
+					finally
+					{
+						measuring.set(false);
+					}
+				}
+			}, "ParaxialCheck");
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Describes what each detector in the scene recorded, in the order they
+	// were placed, e.g. "Detectors: #1 12 hits, 0.84 (16.8%)", where the
+	// percentage is the share of the emitted light. Null if there are none.
+	private String	getDetectorStatus()
+	{
+		StringBuilder s = new StringBuilder("Detectors:");
+		int n = 0;
+		
+		for(LightElement le : model.getLightElements())
+		{
+			if(le.getDetector() == null)
+			{
+				continue;
+			}
+			
+			DetectorReading reading = detected.get(le.getDetector());
+			long count = ((reading != null) ? reading.getCount() : 0L);
+			double intensity = ((reading != null) ? reading.getIntensity() : 0.0);
+			double share = ((emitted > 0) ? intensity / emitted : 0.0);
+			
+			s.append((n++ > 0) ? "; #" : " #").append(n).append(" ");
+			s.append(count).append(" hits, ");
+			s.append(FORMAT.format(intensity));
+			s.append(" (" + FORMAT.format(100.0 * share) + "%)");
+		}
+		return ((n > 0) ? s.toString() : null);
+	}
+	
+	// Describes the search for the best poses, e.g. "Optimizer: generation
+	// 40 of 250, 1312 poses (2400/s), 63.2% delivered, step 0.25". Null if
+	// there is no search.
+	private String	getOptimizerStatus()
+	{
+		Optimizer o = optimizer;
+		
+		if(o == null)
+		{
+			return null;
+		}
+		
+		double seconds = Math.max(1.0e-3, (System.nanoTime() - optimizedAt) / 1.0e9);
+		
+		return "Optimizer: generation " + o.getGeneration() + " of " +
+			Optimizer.GENERATIONS + ", " + o.getEvaluations() + " poses (" +
+			FORMAT.format(o.getEvaluations() / seconds) + "/s), " +
+			FORMAT.format(100.0 * o.getBest().getDelivered()) + "% delivered, step " +
+			FORMAT.format(o.getScale());
+	}
+	
+	// Describes the playback, e.g. "Playback: 40% at 2x, paused"
+	private String	getPlaybackStatus()
+	{
+		double end = playback.getEnd();
+		int percent = (int)Math.round((end > 0.0) ? 100.0 * playback.getPosition() / end : 0.0);
+		
+		return "Playback: " + percent + "% at " + FORMAT.format(playback.getRate()) + "x" +
+			(playback.isPaused() ? ", paused" : "");
+	}
+	
+	// Counts the rays by how they ended, e.g. "Rays: 2 active, 3 exited",
+	// followed by the size of the tree and the children it left out
+	private String	getRayStatus()
+	{
+		EnumMap<Ray.Termination, Integer> counts =
+			new EnumMap<Ray.Termination, Integer>(Ray.Termination.class);
+		
+		for(Ray ray : rays)
+		{
+			Integer n = counts.get(ray.getTermination());
+			
+			counts.put(ray.getTermination(), (n == null) ? 1 : n + 1);
+		}
+		
+		StringBuilder s = new StringBuilder("Rays:");
+		
+		for(Map.Entry<Ray.Termination, Integer> e : counts.entrySet())
+		{
+			s.append((s.length() > 5) ? ", " : " ");
+			s.append(e.getValue()).append(" ");
+			s.append(e.getKey().name().toLowerCase());
+		}
+		
+		if(model.isAreaSource())
+		{
+			s.append(" (area source, " + getSampledCount() + " of " +
+					 AreaSource.MAX_RAYS + " sampled, seed " + model.getSourceSeed() + ")");
+			return s.toString();
+		}
+		
+		s.append(" (" + tree.getNodeCount() + " nodes, ");
+		s.append(tree.getCulledCount() + " culled, ");
+		s.append(tree.getDroppedCount() + " over budget)");
+		return s.toString();
+	}
+
 	private void	drawMain(GL2 gl)
 	{
 		drawCursor(gl);							// Crosshairs at mouse point
 		
+		// Cull the elements outside the camera before drawing anything
+		List<LightElement> elements = getVisibleElements();
+		LightElement selected = model.getLightElements().peekLast();
+		
 		// Light project draw methods
-		drawLight(gl);			// Draw the light beam
-		drawLightBox(gl);		// Draw the lightbox
-		drawMirrors(gl);		// Draw the mirrors
-		drawPrisms(gl);			// Draw the prisms
-		drawConvex(gl);			// Draw convex lenses
-		drawConcave(gl);		// Draw concave lenses
+		drawHeatMap(gl);							// Draw where light goes
+		drawLight(gl);								// Draw the light beam
+		drawLightBox(gl, elements, selected);		// Draw the lightbox
+		drawMirrors(gl, elements, selected);		// Draw the mirrors
+		drawPrisms(gl, elements, selected);			// Draw the prisms
+		drawDetectors(gl, elements, selected);		// Draw the detectors
+		drawLenses(gl, elements, selected, "Convex");	// Draw convex lenses
+		drawLenses(gl, elements, selected, "Concave");	// Draw concave lenses
+		drawAssembly(gl, selected);					// Box the selected group
+		drawPreview(gl);							// Ghost and its beams
+		drawOptimizer(gl);							// Best pose and its beams
 		
 		// Debugging method that draws the lightpoint
 		drawObject(gl);
 	}
 	
+	// Draw the heat map as a texture over the area it covers
+	private void	drawHeatMap(GL2 gl)
+	{
+		if(!model.isHeatMap() || !model.getLight())
+		{
+			return;
+		}
+		
+		// Swap in a newly finished map, handing the old one back
+		LiveHeatMap.Image image = heatMap.poll();
+		
+		if(image != null)
+		{
+			if(heatImage != null)
+			{
+				heatMap.release(heatImage);
+			}
+			heatImage = image;
+			heatUploaded = false;
+		}
+		
+		if(heatImage == null)
+		{
+			return;
+		}
+		
+		if(heatTexture == 0)
+		{
+			int[] id = new int[1];
+			
+			gl.glGenTextures(1, id, 0);
+			heatTexture = id[0];
+			heatUploaded = false;
+		}
+		
+		gl.glBindTexture(GL.GL_TEXTURE_2D, heatTexture);
+		
+		if(!heatUploaded)
+		{
+			gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
+			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
+			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL.GL_CLAMP_TO_EDGE);
+			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL.GL_CLAMP_TO_EDGE);
+			gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, heatImage.columns,
+							heatImage.rows, 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE,
+							heatImage.pixels);
+			heatUploaded = true;
+		}
+		
+		Rectangle2D.Double r = heatImage.bounds;
+		
+		gl.glEnable(GL.GL_TEXTURE_2D);
+		gl.glEnable(GL.GL_BLEND);
+		gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+		gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
+		
+		gl.glBegin(GL2.GL_QUADS);
+		
+		gl.glTexCoord2d(0.0, 0.0);
+		gl.glVertex2d(r.getMinX(), r.getMinY());
+		gl.glTexCoord2d(1.0, 0.0);
+		gl.glVertex2d(r.getMaxX(), r.getMinY());
+		gl.glTexCoord2d(1.0, 1.0);
+		gl.glVertex2d(r.getMaxX(), r.getMaxY());
+		gl.glTexCoord2d(0.0, 1.0);
+		gl.glVertex2d(r.getMinX(), r.getMaxY());
+		
+		gl.glEnd();
+		
+		gl.glDisable(GL.GL_BLEND);
+		gl.glDisable(GL.GL_TEXTURE_2D);
+		gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+	}
+	
+	// Draw the ghost of the element being placed, with faint beams showing the
+	// light as it would be with the ghost there
+	private void	drawPreview(GL2 gl)
+	{
+		Preview p = previewed;
+		
+		if(p != null)
+		{
+			drawPaths(gl, p.paths, Double.POSITIVE_INFINITY, 0.4f);
+		}
+		
+		if(requested == null)
+		{
+			return;
+		}
+		
+		gl.glEnable(GL.GL_BLEND);
+		gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+		gl.glColor4f(1.0f, 1.0f, 1.0f, 0.5f);
+		
+		gl.glBegin(GL.GL_LINE_LOOP);
+		
+		for(Point2D.Double q : requested.ghost.getWorldOutline())
+		{
+			gl.glVertex2d(q.x, q.y);
+		}
+		
+		gl.glEnd();
+		
+		gl.glDisable(GL.GL_BLEND);
+	}
+	
+	// Draw the best pose the optimizer has found so far, outlined in orange
+	private void	drawOptimizer(GL2 gl)
+	{
+		if(optimized == null)
+		{
+			return;
+		}
+		
+		drawPaths(gl, optimizedPaths, Double.POSITIVE_INFINITY, 0.6f);
+		
+		setColor(gl, 255, 165, 0);		// Orange
+		gl.glLineWidth(2.0f);
+		
+		for(LightElement le : optimized.getElements())
+		{
+			gl.glBegin(GL.GL_LINE_LOOP);
+			
+			for(Point2D.Double q : le.getWorldOutline())
+			{
+				gl.glVertex2d(q.x, q.y);
+			}
+			
+			gl.glEnd();
+		}
+		
+		gl.glLineWidth(1.0f);
+	}
+	
+	// Outline the bounds of the selected object's top assembly, if any
+	private void	drawAssembly(GL2 gl, LightElement selected)
+	{
+		if(selected == null || selected.getAssembly() == null)
+		{
+			return;
+		}
+		
+		Rectangle2D.Double r = selected.getRoot().getBounds();
+		
+		gl.glColor3f(0.5f, 0.5f, 0.5f);
+		
+		gl.glBegin(GL.GL_LINE_LOOP);
+		
+		gl.glVertex2d(r.getMinX(), r.getMinY());
+		gl.glVertex2d(r.getMaxX(), r.getMinY());
+		gl.glVertex2d(r.getMaxX(), r.getMaxY());
+		gl.glVertex2d(r.getMinX(), r.getMaxY());
+		
+		gl.glEnd();
+	}
+	
 	// Debugging method to make the location of the lightpoint known
 	private void	drawObject(GL2 gl)
 	{
-		Point2D.Double[] objects = model.getLightPoints();
-
+		if(!model.getLight()) {
+			return;
+		}
+		
+		double s = playback.getPosition();
+		
 		gl.glColor3f(1.0f, 0.0f, 0.0f);
 
-		for(Point2D.Double lp : objects)
+		for(BeamPath path : playback.getPaths())
 		{
+			if(s < path.getStart() || s > path.getEnd())
+			{
+				continue;
+			}
+			
+			Point2D.Double lp = path.pointAt(s);
+			
 			gl.glBegin(GL.GL_POINTS);
 			
 			gl.glVertex2d(lp.x, lp.y);
@@ -354,6 +1255,54 @@ public final class View
 		}
 	}
 
+	// Rebuild the grid after the scene has changed. While an element is being
+	// dragged the grid is left alone; the selected element is the only one
+	// that moves then, and it is always checked directly.
+	private void	updateGrid()
+	{
+		if(gridVersion != model.getVersion() && !model.isDragging())
+		{
+			grid = new ElementGrid(model.getLightElements());
+			gridVersion = model.getVersion();
+		}
+	}
+
+	// Find the elements inside the camera using the grid
+	private List<LightElement>	getVisibleElements()
+	{
+		Deque<LightElement> lightElements = model.getLightElements();
+		
+		updateGrid();
+		
+		Rectangle2D.Double visible = camera.getVisibleRect();
+		List<LightElement> found = new ArrayList<LightElement>();
+		LightElement selected = lightElements.peekLast();
+		
+		grid.query(visible, found);
+		
+		if(selected == null)
+		{
+			return found;
+		}
+		
+		// The selected element (with its assembly) may have moved since the
+		// grid was built, so leave out where the grid has it, in one pass,
+		// and look it up where it is now
+		SceneNode unit = selected.getRoot();
+		List<LightElement> elements = new ArrayList<LightElement>(found.size());
+		
+		for(LightElement le : found)
+		{
+			if(le.getRoot() != unit)
+			{
+				elements.add(le);
+			}
+		}
+		unit.collect(visible.getMinX(), visible.getMinY(),
+					 visible.getMaxX(), visible.getMaxY(), elements);
+		return elements;
+	}
+
 	// Draw a cursor
 	private void	drawCursor(GL2 gl)
 	{
@@ -377,13 +1326,17 @@ public final class View
 	}
 	
 	// Draw the lightbox
-	private void drawLightBox(GL2 gl)
+	private void drawLightBox(GL2 gl, List<LightElement> elements, LightElement selected)
 	{
-		ArrayDeque<Model.LightElement> elements = new ArrayDeque<Model.LightElement>(model.getLightElements());
+		if(50.0 * getPixelScale() < POINT_PIXELS)
+		{
+			drawPoints(gl, elements, "Lightbox", selected);
+			return;
+		}
 		
 		setColor(gl, 93, 201, 244);		// Cyan
 		
-		for(Model.LightElement le : elements)
+		for(LightElement le : elements)
 		{
 			if(le.getType().equals("Lightbox"))
 			{
@@ -403,7 +1356,7 @@ public final class View
 				
 				gl.glPopMatrix();
 				
-				if(le.equals(elements.peekLast()))
+				if(le == selected)
 				{
 					gl.glPushMatrix();
 					
@@ -427,8 +1380,6 @@ public final class View
 					
 					gl.glPopMatrix();
 				}
-				
-				break;
 			}
 		}
 		
@@ -441,34 +1392,105 @@ public final class View
 			return;
 		}
 		
-		gl.glColor3f(1.0f, 1.0f, 1.0f);
+		// Fade the many rays of an area source so that they add up to about
+		// as much light as the fixed rays
+		float alpha = 1.0f;
+		
+		if(model.isAreaSource())
+		{
+			alpha = (float)Math.min(1.0, Tracer.RAYS / Math.sqrt(Math.max(1, getSampledCount())));
+		}
+		drawPaths(gl, playback.getPaths(), playback.getPosition(), alpha);
+	}
+	
+	// Get the number of area source rays emitted so far that have been traced
+	private int getSampledCount()
+	{
+		int count = 0;
 		
+		for(BeamPath path : playback.getPaths())
+		{
+			if(path.getRay().getDepth() == 0)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	// Draw the paths up to the arc length s, scaling their opacity by alpha.
+	// The part of each path up to s is found by binary search.
+	private void drawPaths(GL2 gl, List<BeamPath> paths, double s, float alpha)
+	{
+		// Color the beams by wavelength once they have been dispersed, and
+		// fade them by their share of the emitted light
+		gl.glEnable(GL.GL_BLEND);
+		gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
 		gl.glLineWidth(2.0f);
 		
-		for(ArrayDeque<Point2D.Double> hp : hitPoints)
+		for(BeamPath path : paths)
 		{
-			gl.glBegin(GL.GL_LINE_STRIP);
+			if(s <= path.getStart())
+			{
+				continue;
+			}
 			
-			for(Point2D.Double p : hp)
+			Ray ray = path.getRay();
+			float[] rgb = Spectrum.toRGB(ray.getWavelengths());
+			
+			gl.glColor4f(rgb[0], rgb[1], rgb[2],
+						 alpha * (float)Math.sqrt(ray.getWeight()));
+			
+			// Draw runs of visible segments, skipping those outside the camera
+			int last = path.indexAt(s);
+			Point2D.Double prev = null;
+			boolean strip = false;
+			
+			for(int i = 0; i <= last + 1 && i < path.size(); i++)
 			{
-				gl.glVertex2d(p.x, p.y);
+				Point2D.Double p = ((i <= last) ?
+					new Point2D.Double(path.getX(i), path.getY(i)) : path.pointAt(s));
+				
+				if(prev != null && camera.mayShowSegment(prev.x, prev.y, p.x, p.y))
+				{
+					if(!strip)
+					{
+						gl.glBegin(GL.GL_LINE_STRIP);
+						gl.glVertex2d(prev.x, prev.y);
+						strip = true;
+					}
+					gl.glVertex2d(p.x, p.y);
+				}
+				else if(strip)
+				{
+					gl.glEnd();
+					strip = false;
+				}
+				prev = p;
 			}
 			
-			gl.glEnd();
+			if(strip)
+			{
+				gl.glEnd();
+			}
 		}
 		
 		gl.glLineWidth(1.0f);
-		
+		gl.glDisable(GL.GL_BLEND);
 	}
 	
 	// Draw the mirrors
-	private void drawMirrors(GL2 gl)
+	private void drawMirrors(GL2 gl, List<LightElement> elements, LightElement selected)
 	{
-		ArrayDeque<Model.LightElement> elements = new ArrayDeque<Model.LightElement>(model.getLightElements());
+		if(60.0 * getPixelScale() < POINT_PIXELS)
+		{
+			drawPoints(gl, elements, "Mirror", selected);
+			return;
+		}
 		
 		setColor(gl, 199, 199, 199);	// Light gray
 		
-		for(Model.LightElement le : elements)
+		for(LightElement le : elements)
 		{
 			if(le.getType().equals("Mirror"))
 			{
@@ -488,7 +1510,7 @@ public final class View
 				
 				gl.glPopMatrix();
 				
-				if(le.equals(elements.peekLast()))
+				if(le == selected)
 				{
 					gl.glPushMatrix();
 					
@@ -516,106 +1538,111 @@ public final class View
 		}
 	}
 	
-	// Draw the prisms
-	private void drawPrisms(GL2 gl)
+	// Draw the detectors, lit along their length by where they were hit
+	private void drawDetectors(GL2 gl, List<LightElement> elements, LightElement selected)
 	{
-		ArrayDeque<Model.LightElement> elements = new ArrayDeque<Model.LightElement>(model.getLightElements());
+		if(60.0 * getPixelScale() < POINT_PIXELS)
+		{
+			drawPoints(gl, elements, "Detector", selected);
+			return;
+		}
 		
-		setColor(gl, 199, 199, 199);	// Light gray
+		double step = 60.0 / Detector.POSITION_BINS;
 		
-		for(Model.LightElement le : elements)
+		for(LightElement le : elements)
 		{
-			if(le.getType().equals("Prism"))
+			if(!le.getType().equals("Detector"))
 			{
-				gl.glPushMatrix();
-				
-				gl.glTranslated(le.getCenter().x, le.getCenter().y, 0.0);
-				gl.glRotated(le.getRotation(), 0.0, 0.0, 1.0);
-				
-				gl.glBegin(GL2.GL_POLYGON);
-				
-				gl.glVertex2d(-25.0, -25.0);
-				gl.glVertex2d(25.0, -25.0);
-				gl.glVertex2d(0.0, 25.0);
-				
-				gl.glEnd();
-				
-				gl.glPopMatrix();
+				continue;
+			}
+			
+			DetectorReading reading = detected.get(le.getDetector());
+			long[] bins = ((reading != null) ? reading.getPositionHistogram() :
+						   new long[Detector.POSITION_BINS]);
+			long max = 1L;
+			
+			for(long b : bins)
+			{
+				max = Math.max(max, b);
+			}
+			
+			gl.glPushMatrix();
+			
+			gl.glTranslated(le.getCenter().x, le.getCenter().y, 0.0);
+			gl.glRotated(le.getRotation(), 0.0, 0.0, 1.0);
+			
+			// Shade each bin from dark to bright green by its share of hits
+			gl.glBegin(GL2.GL_QUADS);
+			
+			for(int i = 0; i < bins.length; i++)
+			{
+				double t = (double)bins[i] / max;
 				
-				if(le.equals(elements.peekLast()))
-				{
-					gl.glPushMatrix();
-					
-					gl.glTranslated(le.getCenter().x, le.getCenter().y, 0.0);
-					gl.glRotated(le.getRotation(), 0.0, 0.0, 1.0);
-					
-					gl.glColor3f(1.0f, 1.0f, 1.0f);
-					
-					gl.glLineWidth(2.0f);
-					
-					gl.glBegin(GL.GL_LINE_LOOP);
-					
-					gl.glVertex2d(-25.0, -25.0);
-					gl.glVertex2d(25.0, -25.0);
-					gl.glVertex2d(0.0, 25.0);
-					
-					gl.glEnd();
-					
-					gl.glLineWidth(1.0f);
-					
-					gl.glPopMatrix();
-				}
+				setColor(gl, (int)(40 + 60 * t), (int)(60 + 195 * t), (int)(40 + 60 * t));
+				gl.glVertex2d(-3.0, -30.0 + i * step);
+				gl.glVertex2d(3.0, -30.0 + i * step);
+				gl.glVertex2d(3.0, -30.0 + (i + 1) * step);
+				gl.glVertex2d(-3.0, -30.0 + (i + 1) * step);
+			}
+			
+			gl.glEnd();
+			
+			if(le == selected)
+			{
+				gl.glColor3f(1.0f, 1.0f, 1.0f);
+				gl.glLineWidth(2.0f);
 			}
+			else
+			{
+				setColor(gl, 199, 199, 199);	// Light gray
+			}
+			
+			gl.glBegin(GL.GL_LINE_LOOP);
+			
+			gl.glVertex2d(-3.0, -30.0);
+			gl.glVertex2d(3.0, -30.0);
+			gl.glVertex2d(3.0, 30.0);
+			gl.glVertex2d(-3.0, 30.0);
+			
+			gl.glEnd();
+			
+			gl.glLineWidth(1.0f);
+			
+			gl.glPopMatrix();
 		}
 	}
 	
-	// Draw the convex lenses
-	private void drawConvex(GL2 gl)
+	// Draw the prisms
+	private void drawPrisms(GL2 gl, List<LightElement> elements, LightElement selected)
 	{
-		ArrayDeque<Model.LightElement> elements = new ArrayDeque<Model.LightElement>(model.getLightElements());
+		if(50.0 * getPixelScale() < POINT_PIXELS)
+		{
+			drawPoints(gl, elements, "Prism", selected);
+			return;
+		}
 		
 		setColor(gl, 199, 199, 199);	// Light gray
 		
-		int i;
-
-		Point2D.Double[] rCurve;
-		Point2D.Double[] lCurve;
-		
-		for(Model.LightElement le : elements)
+		for(LightElement le : elements)
 		{
-			if(le.getType().equals("Convex"))
+			if(le.getType().equals("Prism"))
 			{
-				rCurve = le.getDefaultRCurve();
-				lCurve = le.getDefaultLCurve();
-				
 				gl.glPushMatrix();
 				
 				gl.glTranslated(le.getCenter().x, le.getCenter().y, 0.0);
 				gl.glRotated(le.getRotation(), 0.0, 0.0, 1.0);
 				
 				gl.glBegin(GL2.GL_POLYGON);
-			
-				gl.glVertex2d(-5.0, -30.0);
-				gl.glVertex2d(5.0, -30.0);
 				
-				for(i = 0; i < 11; i++)
-				{
-					gl.glVertex2d(rCurve[i].x, rCurve[i].y);
-				}
-				
-				gl.glVertex2d(5.0, 30.0);
-				gl.glVertex2d(-5.0, 30.0);
-				
-				for(i = 0; i < 11; i++)
-				{
-					gl.glVertex2d(lCurve[i].x, lCurve[i].y);
-				}
+				gl.glVertex2d(-25.0, -25.0);
+				gl.glVertex2d(25.0, -25.0);
+				gl.glVertex2d(0.0, 25.0);
 				
 				gl.glEnd();
 				
 				gl.glPopMatrix();
 				
-				if(le.equals(elements.peekLast()))
+				if(le == selected)
 				{
 					gl.glPushMatrix();
 					
@@ -628,21 +1655,9 @@ public final class View
 					
 					gl.glBegin(GL.GL_LINE_LOOP);
 					
-					gl.glVertex2d(-5.0, -30.0);
-					gl.glVertex2d(5.0, -30.0);
-					
-					for(i = 0; i < 11; i++)
-					{
-						gl.glVertex2d(rCurve[i].x, rCurve[i].y);
-					}
-					
-					gl.glVertex2d(5.0, 30.0);
-					gl.glVertex2d(-5.0, 30.0);
-					
-					for(i = 0; i < 11; i++)
-					{
-						gl.glVertex2d(lCurve[i].x, lCurve[i].y);
-					}
+					gl.glVertex2d(-25.0, -25.0);
+					gl.glVertex2d(25.0, -25.0);
+					gl.glVertex2d(0.0, 25.0);
 					
 					gl.glEnd();
 					
@@ -654,409 +1669,158 @@ public final class View
 		}
 	}
 	
-	// Draw the concave lenses
-	private void drawConcave(GL2 gl)
+	// Draw the convex or concave lenses. The detail follows the size of the
+	// lenses on screen: tiny lenses are points, small ones are plain quads,
+	// and larger ones have faces with just enough segments to stay within
+	// CURVE_ERROR pixels of the true curves.
+	private void drawLenses(GL2 gl, List<LightElement> elements, LightElement selected,
+							String type)
 	{
-		ArrayDeque<Model.LightElement> elements = new ArrayDeque<Model.LightElement>(model.getLightElements());
+		double size = LENSE_HEIGHT * getPixelScale();
 		
-		int i;
+		if(size < POINT_PIXELS)
+		{
+			drawPoints(gl, elements, type, selected);
+			return;
+		}
 		
-		Point2D.Double[] rCurve;
-		Point2D.Double[] lCurve;
+		Point2D.Double[] rCurve = null;
+		Point2D.Double[] lCurve = null;
 		
 		setColor(gl, 199, 199, 199);	// Light gray
 		
-		for(Model.LightElement le : elements)
+		for(LightElement le : elements)
 		{
-			if(le.getType().equals("Concave"))
+			if(!le.getType().equals(type))
 			{
-				rCurve = le.getDefaultRCurve();
-				lCurve = le.getDefaultLCurve();
-				
-				gl.glPushMatrix();
-				
-				gl.glTranslated(le.getCenter().x, le.getCenter().y, 0.0);
-				gl.glRotated(le.getRotation(), 0.0, 0.0, 1.0);
-				
-				gl.glBegin(GL2.GL_TRIANGLE_FAN);
-				
-				gl.glVertex2d(0.0, 0.0);
-				
-				gl.glVertex2d(-10.0, -30.0);
-				gl.glVertex2d(10.0, -30.0);
+				continue;
+			}
+			
+			// Every lens of a type has the same faces, so tessellate them once
+			if(rCurve == null)
+			{
+				rCurve = tessellate(le.getDefaultRCtrl(), size < QUAD_PIXELS);
+				lCurve = tessellate(le.getDefaultLCtrl(), size < QUAD_PIXELS);
+			}
+			
+			gl.glPushMatrix();
+			
+			gl.glTranslated(le.getCenter().x, le.getCenter().y, 0.0);
+			gl.glRotated(le.getRotation(), 0.0, 0.0, 1.0);
+			
+			gl.glBegin(GL2.GL_TRIANGLE_FAN);
+			
+			gl.glVertex2d(0.0, 0.0);
+			drawLenseOutline(gl, rCurve, lCurve);
+			gl.glVertex2d(rCurve[0].x, rCurve[0].y);
+			
+			gl.glEnd();
+			
+			if(le == selected)
+			{
+				gl.glColor3f(1.0f, 1.0f, 1.0f);
 				
-				for(i = 0; i < 11; i++)
-				{
-					gl.glVertex2d(rCurve[i].x, rCurve[i].y);
-				}
+				gl.glLineWidth(2.0f);
 				
-				gl.glVertex2d(10.0, 30.0);
-				gl.glVertex2d(-10.0, 30.0);
+				gl.glBegin(GL.GL_LINE_LOOP);
 				
-				for(i = 0; i < 11; i++)
-				{
-					gl.glVertex2d(lCurve[i].x, lCurve[i].y);
-				}
+				drawLenseOutline(gl, rCurve, lCurve);
 				
 				gl.glEnd();
 				
-				gl.glPopMatrix();
+				gl.glLineWidth(1.0f);
 				
-				if(le.equals(elements.peekLast()))
-				{
-					gl.glPushMatrix();
-					
-					gl.glTranslated(le.getCenter().x, le.getCenter().y, 0.0);
-					gl.glRotated(le.getRotation(), 0.0, 0.0, 1.0);
-					
-					gl.glColor3f(1.0f, 1.0f, 1.0f);
-					
-					gl.glLineWidth(2.0f);
-					
-					gl.glBegin(GL.GL_LINE_LOOP);
-					
-					gl.glVertex2d(-10.0, -30.0);
-					gl.glVertex2d(10.0, -30.0);
-					
-					for(i = 0; i < 11; i++)
-					{
-						gl.glVertex2d(rCurve[i].x, rCurve[i].y);
-					}
-					
-					gl.glVertex2d(10.0, 30.0);
-					gl.glVertex2d(-10.0, 30.0);
-					
-					for(i = 0; i < 11; i++)
-					{
-						gl.glVertex2d(lCurve[i].x, lCurve[i].y);
-					}
-					
-					gl.glEnd();
-					
-					gl.glLineWidth(1.0f);
-					
-					gl.glPopMatrix();
-				}
+				setColor(gl, 199, 199, 199);	// Light gray
 			}
+			
+			gl.glPopMatrix();
 		}
 	}
 	
-	// Update the location of the light point
-	private void updatePointWithReflection(Point2D.Double lp, int index)
+	// Draw the vertices around a lens: the right face from bottom to top,
+	// then the left face from top to bottom
+	private void drawLenseOutline(GL2 gl, Point2D.Double[] rCurve, Point2D.Double[] lCurve)
 	{
-		// Check if a lightbox has been set
-		if((lp.x == 0.0 && lp.y == 0.0) || !model.getLight())
+		for(Point2D.Double p : rCurve)
 		{
-			return;
+			gl.glVertex2d(p.x, p.y);
 		}
 		
-		// Travel factor and factored direction vector
-		double factor = w * 0.2;
-		double ddx = vectors[index].x * factor;
-		double ddy = vectors[index].y * factor;
-		
-		//System.out.println(factor);
-		
-		// Get the list of objects in scene
-		ArrayDeque<Model.LightElement> elements = new ArrayDeque<Model.LightElement>(model.getLightElements());
+		for(Point2D.Double p : lCurve)
+		{
+			gl.glVertex2d(p.x, p.y);
+		}
+	}
+	
+	// Draw elements that are too small to see as single points
+	private void drawPoints(GL2 gl, List<LightElement> elements, String type,
+							LightElement selected)
+	{
+		setColor(gl, 199, 199, 199);	// Light gray
 		
-		// Method variables
-		int number = elements.size();
-		int i;
-		int j;
-		String hitType = "NA";
+		gl.glPointSize(2.0f);
+		gl.glBegin(GL.GL_POINTS);
 		
-		pointCalc: while (true)
+		for(LightElement le : elements)
 		{
-			// Calculate which side the point will reach first. These variables
-			// store that side's vertices and the parametric time to hit it.
-			Point2D.Double		pp1 = new Point2D.Double();
-			Point2D.Double		pp2 = new Point2D.Double();
-			
-			double				tmin = Double.MAX_VALUE;
-			
-			// Temp used to store previous tmin value
-			double 				temp;
-			
-			// Adds a point to the trace if there are none
-			if(hitPoints.get(index).isEmpty())
+			if(le.getType().equals(type))
 			{
-				hitPoints.get(index).add(new Point2D.Double(lp.x, lp.y));
-			}
-			
-			// Get the tmins of all objects
-			for(i = 0; i < number; i++)
-			{
-				Model.LightElement element = elements.peekFirst();
-				temp = tmin;
-				
-				switch(element.getType()) 
+				if(le == selected)
 				{
-					// Check the sides of the lenses
-					case "Convex":
-					case "Concave":
-						Point2D.Double[] rCurve = element.getRCurve();
-						Point2D.Double[] lCurve = element.getLCurve();
-						tmin = getTMin(getTransformedPoint(element.getBl(), element),
-										getTransformedPoint(element.getBr(), element),
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getBr(), element),
-										getTransformedPoint(rCurve[0], element),
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						for(j = 0; j < rCurve.length - 1; j++)
-						{
-							tmin = getTMin(getTransformedPoint(rCurve[j], element),
-											getTransformedPoint(rCurve[j + 1], element),
-											ddx, ddy, pp1, pp2, tmin, lp, index);
-						}
-						tmin = getTMin(getTransformedPoint(rCurve[10], element),
-										getTransformedPoint(element.getTr(), element),
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getTr(), element),
-										getTransformedPoint(element.getTl(), element),
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getTl(), element),
-										getTransformedPoint(lCurve[0], element),
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						for(j = 0; j < lCurve.length - 1; j++)
-						{
-							tmin = getTMin(getTransformedPoint(lCurve[j], element),
-											getTransformedPoint(lCurve[j + 1], element),
-											ddx, ddy, pp1, pp2, tmin, lp, index);
-						}
-						tmin = getTMin(getTransformedPoint(lCurve[10], element),
-										getTransformedPoint(element.getBl(), element),
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						break;
-					// Check the sides of the lightbox and mirrors
-					case "Mirror":
-					case "Lightbox":
-						tmin = getTMin(getTransformedPoint(element.getBl(), element), 
-										getTransformedPoint(element.getBr(), element), 
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getBr(), element), 
-										getTransformedPoint(element.getTr(), element), 
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getTr(), element), 
-										getTransformedPoint(element.getTl(), element), 
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getTl(), element), 
-										getTransformedPoint(element.getBl(), element), 
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						break;
-					// Check the sides of the prism
-					case "Prism":
-						tmin = getTMin(getTransformedPoint(element.getBl(), element), 
-										getTransformedPoint(element.getBr(), element), 
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getBr(), element), 
-										getTransformedPoint(element.getT(), element), 
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						tmin = getTMin(getTransformedPoint(element.getT(), element), 
-										getTransformedPoint(element.getBl(), element), 
-										ddx, ddy, pp1, pp2, tmin, lp, index);
-						break;
-				}
-				
-				// Sets the hit type to the lowest tmin object
-				if(tmin < temp)
-				{
-					hitType = new String(element.getType());
+					gl.glColor3f(1.0f, 1.0f, 1.0f);
 				}
-				elements.offerLast(elements.pollFirst());
-			}
-			
-			//System.out.printf("%f \n", tmin);
-
-			// Increment normally if greater than 1.0
-			if((tmin / factor) > 1.0)
-			{
-				lp.x += ddx;
-				lp.y += ddy;
-				hitPoints.get(index).add(new Point2D.Double(lp.x, lp.y));
-				
-				break;
-			}
-			else
-			{
-				//System.out.println(hitType);
-				switch(hitType)
+				gl.glVertex2d(le.getCenter().x, le.getCenter().y);
+				if(le == selected)
 				{
-					// Light algorithm for mirrors
-					case "Mirror":
-						// If it is under 1.0, there will be at least one reflection.
-						// Translate the point to the reflection point along the side.
-						lp.x += ddx * (tmin / factor);
-						lp.y += ddy * (tmin / factor);
-						hitPoints.get(index).offerLast(new Point2D.Double(lp.x, lp.y));
-
-						// Calculate the CW (outward-pointing) perp vector for the side.
-						double		vdx = pp2.x - pp1.x;	// Calc side vector
-						double		vdy = pp2.y - pp1.y;	// from p1 to p2
-						double		ndx = vdy;				// Calc perp vector:
-						double		ndy = -vdx;				// negate x and swap
-
-						// Need a NORMALIZED perp vector for the reflection calculation.
-						double		nn = Math.sqrt(ndx * ndx + ndy * ndy);
-
-						ndx = ndx / nn;	// Divide each coordinate by the length to
-						ndy = ndy / nn;	// make a UNIT vector normal to the side.
-
-						// Calculate v_reflected.
-						double		dot = dot(vectors[index].x * 2, vectors[index].y * 2, 0.0, ndx, ndy, 0.0);
-						double		vreflectedx = ddx - 2.0 * dot * ndx;
-						double		vreflectedy = ddy - 2.0 * dot * ndy;
-
-						// Reflect the update vector, and reduce it to compensate for
-						// the distance the point moved to reach the side.
-						ddx = vreflectedx * (1.0 - tmin / factor);
-						ddy = vreflectedy * (1.0 - tmin / factor);
-
-						// Also reflect the reference vector. It will change direction
-						// but remain the same length.
-						double		dot2 = dot(vectors[index].x, vectors[index].y, 0.0, ndx, ndy, 0.0);
-
-						vectors[index].x -= 2.0 * dot2 * ndx;
-						vectors[index].y -= 2.0 * dot2 * ndy;
-						break;
-					// Light algorithm for the lightbox
-					case "Lightbox":
-						// Move lightpoint to the edge of the lightbox and stop it
-						lp.x += ddx * (tmin / factor);
-						lp.y += ddy * (tmin / factor);
-						vectors[index].x = 0.0;
-						vectors[index].y = 0.0;
-						hitPoints.get(index).offerLast(new Point2D.Double(lp.x, lp.y));
-						break pointCalc;
-					// Light algorithm for the lenses
-					case "Convex":
-					case "Concave":
-						double Tx = 0; 
-						double Ty = 0; 
-						
-						lp.x += ddx;
-						lp.y += ddy;
-						
-						vdx = pp2.x - pp1.x;	// Calc side vector
-						vdy = pp2.y - pp1.y;	// from p1 to p2
-						ndx = vdy;				// Calc perp vector:
-						ndy = -vdx;				// negate x and swap
-							
-						// Need a NORMALIZED perp vector for the reflection calculation.
-						nn = Math.sqrt(ndx * ndx + ndy * ndy);
-
-						ndx = ndx / nn;	// Divide each coordinate by the length to
-						ndy = ndy / nn;	// make a UNIT vector normal to the side.
-							
-						double delta1 = 0; 
-						double delta2 = 0; 
-						
-						dot2 = dot(vectors[index].x, vectors[index].y, 0.0, ndx, ndy, 0.0);
-						
-						delta1 = Math.acos(dot2 / (Math.sqrt(ddx*ddx + ddy*ddy)) + 
-									Math.sqrt(ndx*ndx + ndy* ndy));
-						
-						delta2 = Math.asin(Math.sin(delta1) / 1.5); 
-
-						double ior = Math.sin(delta2) / Math.sin(delta1);
-					 
-						Tx = ior * (ddx + Math.cos(delta1)*ndx) - (ndx * Math.cos(delta2));
-						Ty = ior * (ddy + Math.cos(delta1)*ndy) - (ndy * Math.cos(delta2));
-
-						nn = Math.sqrt(Tx * Tx + Ty * Ty) ;
-	
-						Tx = Tx / nn;
-						Ty = Ty / nn;
-
-						vectors[index].x = Tx / DEFAULT_FRAMES_PER_SECOND;
-						vectors[index].y = Ty / DEFAULT_FRAMES_PER_SECOND;
-
-						break pointCalc;
-					// For unimplemented objects
-					default:
-						lp.x += ddx;
-						lp.y += ddy;
-						hitPoints.get(index).add(new Point2D.Double(lp.x, lp.y));
+					setColor(gl, 199, 199, 199);
 				}
 			}
 		}
+		
+		gl.glEnd();
+		gl.glPointSize(1.0f);
 	}
 	
 	//**********************************************************************
 	// Private Methods (Utility Functions)
 	//**********************************************************************
 	
-	// Gets the tmin of object within the path of the lightpoint
-	private double getTMin(Point2D.Double p1, Point2D.Double p2, double ddx, double ddy, 
-			Point2D.Double pp1, Point2D.Double pp2, double tmin, Point2D.Double lp, int index)
+	// Pixels per scene unit with the current camera and canvas size
+	private double getPixelScale()
 	{
-		// Calculate the CW (outward-pointing) perp vector for the pair.
-		double			vdx = p2.x - p1.x;		// Calc side vector
-		double			vdy = p2.y - p1.y;		// from p1 to p2
-		double			ndx = vdy;			// Calc perp vector:
-		double			ndy = -vdx;				// negate x and swap
-		
-		// Check if point is inbetween
-		double vdn = Math.sqrt(vdx * vdx + vdy * vdy);
-		double nvdx = vdx / vdn;
-		double nvdy = vdy / vdn;
-		double pdx = lp.x + ddx - p1.x;
-		double pdy = lp.y + ddy - p1.y;
-		double dd = dot(nvdx, nvdy, 0.0, pdx, pdy, 0.0);
-		if(!(dd >= 0 && dd <= vdn))
-		{
-			return tmin;
-		}
-
-		// See where the point intersects
-		double			wdx = p1.x - lp.x;		// Calc test vector
-		double			wdy = p1.y - lp.y;		// from q to p1
-
-		// Calculate the top part of the t_hit equation.
-		double			dnw = dot(ndx, ndy, 0.0, wdx, wdy, 0.0);
-
-		// Check if the point is on the outside of the polygon. The dot
-		// product will be 0 if the point is on a side, or slightly positive if
-		// it is beyond it (which can happen due to roundoff error).
-		if (dnw < 0.0)
-		{
-			// Calculate the bottom part of the t_hit equation.
-			double	dnv = dot(ndx, ndy, 0.0, vectors[index].x * 2, vectors[index].y * 2, 0.0);
-
-			// If the dot product is zero, the direction of motion is
-			// parallel to the side. Disqualify it as a hit candidate
-			// (even if the point is exactly ON the side).
-			double	thit = ((dnv != 0.0) ? (dnw / dnv) : 0.0);
-
-			// Remember the side with the smallest positive t_hit.
-			// It's the side that the point will reach first.
-			if ((0.0 < thit) && (thit < tmin))
-			{
-				pp1.setLocation(p1.x, p1.y);
-				pp2.setLocation(p2.x, p2.y);
-				return thit;
-			}
-		}
-		return tmin;
+		return camera.getZoom() * Math.min(w / Camera.WIDTH, h / Camera.HEIGHT);
 	}
 	
-	private Point2D.Double getTransformedPoint(Point2D.Double p, Model.LightElement le)
+	// Tessellates a quadratic Bezier curve (3 control points) into as few
+	// segments as keep it within CURVE_ERROR pixels of the true curve. The
+	// error of n even segments is at most |p0 - 2p1 + p2| / (4n^2). A flat
+	// curve is just its end points, which gives a quad for the whole lens.
+	private Point2D.Double[] tessellate(Point2D.Double[] ctrl, boolean flat)
 	{
-		double nx = p.x - le.getCenter().x;
-		double ny = p.y - le.getCenter().y;
-		double rotation = le.getRotation();
-		double x = Math.cos(Math.toRadians(rotation))*nx - 
-				Math.sin(Math.toRadians(rotation))*ny + le.getCenter().x;
-		double y = Math.sin(Math.toRadians(rotation))*nx + 
-				Math.cos(Math.toRadians(rotation))*ny + le.getCenter().y;
-
-		return new Point2D.Double(x, y);
+		double ddx = ctrl[0].x - 2.0 * ctrl[1].x + ctrl[2].x;
+		double ddy = ctrl[0].y - 2.0 * ctrl[1].y + ctrl[2].y;
+		double dd = Math.sqrt(ddx * ddx + ddy * ddy) * getPixelScale();
+		int n = (flat ? 1 : (int)Math.ceil(Math.sqrt(dd / (4.0 * CURVE_ERROR))));
+		
+		n = Math.max(1, Math.min(MAX_CURVE_SEGMENTS, n));
+		
+		Point2D.Double[] curve = new Point2D.Double[n + 1];
+		
+		for(int i = 0; i <= n; i++)
+		{
+			double t = (double)i / n;
+			
+			curve[i] = new Point2D.Double(
+					(1-t)*(1-t)*ctrl[0].x + 2*t*(1-t)*ctrl[1].x + t*t*ctrl[2].x,
+					(1-t)*(1-t)*ctrl[0].y + 2*t*(1-t)*ctrl[1].y + t*t*ctrl[2].y);
+		}
+		return curve;
 	}
 	
-	// Dot product method
-	private double dot(double vx, double vy, double vz, double wx, double wy, double wz)
+	// Travel factor for one frame of the beam animation
+	private double getFactor()
 	{
-		return (vx * wx + vy * wy + vz * wz);
+		return w * 0.2;
 	}
 	
 	// Sets color, normalizing r, g, b, a values from max 255 to 1.0.
@@ -1070,6 +1834,27 @@ public final class View
 	{
 		setColor(gl, r, g, b, 255);
 	}
+
+	//**********************************************************************
+	// Inner Classes
+	//**********************************************************************
+	
+	// A speculative trace of the scene with a ghost element added
+	private static final class Preview
+	{
+		private final LightElement ghost;
+		private final int version;			// Scene version without the ghost
+		private final boolean paraxial;
+		private RayTree tree;				// Set once traced
+		private List<BeamPath> paths;
+		
+		public Preview(LightElement ghost, int version, boolean paraxial)
+		{
+			this.ghost = ghost;
+			this.version = version;
+			this.paraxial = paraxial;
+		}
+	}
 }
 
 //******************************************************************************